@@ -0,0 +1,135 @@
+package org.jzy3d.spectro.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import net.bluecow.spectro.Clip;
+
+/**
+ * Shared plumbing for the Spectro-Edit micro benchmarks: a source of realistic clips that doesn't
+ * depend on any sound files being present, and a simple warmup-then-measure timing loop.
+ * 
+ * The benchmarks are plain main() programs so they can be run straight from the IDE. Numbers are
+ * only meaningful relative to each other on the same machine.
+ */
+public class BenchmarkSupport {
+
+  private static final float SAMPLE_RATE = 44100f;
+
+  /**
+   * Creates a clip of the given length containing a few drifting harmonic tones, short percussive
+   * bursts every half second and a bed of quiet noise. This gives frame data with roughly the same
+   * dynamic range and sparsity as a real recording.
+   */
+  public static Clip syntheticClip(double seconds)
+      throws IOException, UnsupportedAudioFileException {
+    int nSamples = (int) (seconds * SAMPLE_RATE);
+    byte[] pcm = new byte[nSamples * 2];
+    Random random = new Random(42);
+    double[] fundamentals = {110.0, 220.0, 329.6, 440.0};
+    for (int i = 0; i < nSamples; i++) {
+      double t = i / SAMPLE_RATE;
+      double v = 0.0;
+      for (int k = 0; k < fundamentals.length; k++) {
+        double f = fundamentals[k] * (1.0 + 0.01 * Math.sin(t * (k + 1)));
+        for (int h = 1; h <= 4; h++) {
+          v += 0.08 / h * Math.sin(2 * Math.PI * f * h * t);
+        }
+      }
+      double sinceBurst = t % 0.5;
+      if (sinceBurst < 0.02) {
+        v += 0.5 * (1.0 - sinceBurst / 0.02) * (random.nextDouble() * 2.0 - 1.0);
+      }
+      v += 0.01 * random.nextGaussian();
+      int s = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v * 20000));
+      pcm[2 * i] = (byte) (s >> 8);
+      pcm[2 * i + 1] = (byte) s;
+    }
+
+    File wav = File.createTempFile("spectro-bench", ".wav");
+    try {
+      writeWav(wav, pcm);
+      return Clip.newInstance(wav);
+    } finally {
+      wav.delete();
+    }
+  }
+
+  /**
+   * Writes a WAV file of the given length containing a melody of short notes with harmonics, a
+   * percussive burst here and there and a bed of quiet noise, all chosen by the given seed, so
+   * every seed gives a different recording.
+   */
+  public static void writeSyntheticWav(File file, double seconds, long seed) throws IOException {
+    int nSamples = (int) (seconds * SAMPLE_RATE);
+    byte[] pcm = new byte[nSamples * 2];
+    Random random = new Random(seed);
+    double f = 0.0;
+    double phase = 0.0;
+    int noteEnd = 0;
+    int burstStart = -1;
+    for (int i = 0; i < nSamples; i++) {
+      if (i >= noteEnd) {
+        f = 110.0 * Math.pow(2.0, random.nextInt(36) / 12.0);
+        noteEnd = i + (int) (SAMPLE_RATE * (0.1 + 0.4 * random.nextDouble()));
+        if (random.nextInt(4) == 0) {
+          burstStart = i;
+        }
+      }
+      phase += 2 * Math.PI * f / SAMPLE_RATE;
+      double v = 0.0;
+      for (int h = 1; h <= 4; h++) {
+        v += 0.2 / h * Math.sin(phase * h);
+      }
+      double sinceBurst = (i - burstStart) / SAMPLE_RATE;
+      if (burstStart >= 0 && sinceBurst < 0.02) {
+        v += 0.5 * (1.0 - sinceBurst / 0.02) * (random.nextDouble() * 2.0 - 1.0);
+      }
+      v += 0.01 * random.nextGaussian();
+      int s = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v * 20000));
+      pcm[2 * i] = (byte) (s >> 8);
+      pcm[2 * i + 1] = (byte) s;
+    }
+    writeWav(file, pcm);
+  }
+
+  /**
+   * Writes 16-bit big-endian mono samples to a WAV file.
+   */
+  private static void writeWav(File file, byte[] pcm) throws IOException {
+    AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, true);
+    AudioInputStream in =
+        new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / 2);
+    AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+  }
+
+  /**
+   * Runs the given task a number of times to warm up, then times it and prints the average
+   * milliseconds per run.
+   * 
+   * @return The average time per run, in milliseconds.
+   */
+  public static double time(String name, int warmups, int runs, Runnable task) {
+    for (int i = 0; i < warmups; i++) {
+      task.run();
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      task.run();
+    }
+    double ms = (System.nanoTime() - start) / 1e6 / runs;
+    System.out.println(String.format("%-40s %10.3f ms/op", name, ms));
+    return ms;
+  }
+
+  /**
+   * Keeps the JIT from discarding work whose result would otherwise be unused.
+   */
+  public static volatile long blackhole;
+}
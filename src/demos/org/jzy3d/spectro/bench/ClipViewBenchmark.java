@@ -0,0 +1,92 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.UndoableEdit;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipDataChangeEvent;
+import net.bluecow.spectro.ClipDataChangeListener;
+import net.bluecow.spectro.ClipView;
+import net.bluecow.spectro.Frame;
+
+/**
+ * Times taking ten seconds of a one minute clip at its own resolution as a view and as a sub clip,
+ * then edits the view and undoes the edit through the clip's undo listeners, checking that both
+ * sides see the change in the right place.
+ */
+public class ClipViewBenchmark {
+
+  private static UndoableEdit lastEdit;
+
+  private static Rectangle lastParentChange;
+
+  private static Rectangle lastViewChange;
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    final Rectangle region = new Rectangle(1000, 0, 861, clip.getFrameFreqSamples());
+
+    BenchmarkSupport.time("view", 3, 20, new Runnable() {
+      @Override
+      public void run() {
+        ClipView view = clip.view(region);
+        BenchmarkSupport.blackhole += view.getFrameCount();
+        view.dispose();
+      }
+    });
+    BenchmarkSupport.time("sub clip", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole +=
+            clip.subClip(region.x, region.width, clip.getFrameTimeSamples(), clip.getOverlap())
+                .getFrameCount();
+      }
+    });
+
+    clip.addUndoableEditListener(new UndoableEditListener() {
+      @Override
+      public void undoableEditHappened(UndoableEditEvent e) {
+        lastEdit = e.getEdit();
+      }
+    });
+    clip.addClipDataChangeListener(new ClipDataChangeListener() {
+      @Override
+      public void clipDataChanged(ClipDataChangeEvent e) {
+        lastParentChange = e.getRegion();
+      }
+    });
+    ClipView view = clip.view(region);
+    view.addClipDataChangeListener(new ClipDataChangeListener() {
+      @Override
+      public void clipDataChanged(ClipDataChangeEvent e) {
+        lastViewChange = e.getRegion();
+      }
+    });
+
+    // silence a cell through the view
+    double before = clip.getFrame(1100).getReal(50);
+    view.beginEdit(new Rectangle(100, 50, 1, 1), "Silence");
+    view.getFrame(100).setReal(50, 0.0);
+    view.endEdit();
+    System.out.println(String.format("edit through view: clip cell %.3f -> %.3f, clip change %s,"
+        + " view change %s", before, clip.getFrame(1100).getReal(50), lastParentChange,
+        lastViewChange));
+
+    lastEdit.undo();
+    System.out.println(String.format("undo from clip's history: clip cell %.3f", clip.getFrame(
+        1100).getReal(50)));
+
+    // a change to the clip outside the view shouldn't reach it
+    lastViewChange = null;
+    clip.regionChanged(new Rectangle(0, 0, 10, 10));
+    System.out.println("change outside view reaches it: " + (lastViewChange != null));
+
+    Frame f = clip.getFrame(1200);
+    clip.beginEdit(new Rectangle(1200, 0, 1, 1), "Scale");
+    f.setReal(0, f.getReal(0) * 0.5);
+    clip.endEdit();
+    System.out.println("change inside view reaches it as " + lastViewChange);
+    view.dispose();
+  }
+}
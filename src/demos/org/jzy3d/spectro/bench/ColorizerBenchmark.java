@@ -0,0 +1,67 @@
+package org.jzy3d.spectro.bench;
+
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipPanel;
+import net.bluecow.spectro.LogarithmicColorizer;
+
+/**
+ * Compares the ways of turning frame data into pixels: the original per-pixel log1p computation,
+ * the per-pixel table lookup through the {@link net.bluecow.spectro.ValueColorizer} interface, and
+ * the bulk column call that the spectrogram rasterizer uses.
+ * 
+ * Each run colours every frame of a one minute clip into a column-major pixel buffer, which is
+ * exactly the access pattern of a full repaint.
+ */
+public class ColorizerBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    final LogarithmicColorizer colorizer =
+        (LogarithmicColorizer) ClipPanel.newInstance(clip).getColorizer();
+
+    final int width = clip.getFrameCount();
+    final int height = clip.getFrameFreqSamples();
+    final double[][] columns = new double[width][height];
+    for (int i = 0; i < width; i++) {
+      clip.getFrame(i).getReal(0, columns[i], 0, height);
+    }
+    final int[] pixels = new int[width * height];
+    System.out.println(width + " frames x " + height + " bins");
+
+    BenchmarkSupport.time("scalar, exact log1p", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int col = 0; col < width; col++) {
+          double[] column = columns[col];
+          for (int row = 0; row < height; row++) {
+            pixels[col + row * width] = colorizer.colorForExact(column[row]);
+          }
+        }
+        BenchmarkSupport.blackhole += pixels[pixels.length / 2];
+      }
+    });
+
+    BenchmarkSupport.time("scalar, lookup table", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int col = 0; col < width; col++) {
+          double[] column = columns[col];
+          for (int row = 0; row < height; row++) {
+            pixels[col + row * width] = colorizer.colorFor(column[row]);
+          }
+        }
+        BenchmarkSupport.blackhole += pixels[pixels.length / 2];
+      }
+    });
+
+    BenchmarkSupport.time("bulk column, lookup table", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int col = 0; col < width; col++) {
+          colorizer.colorFor(columns[col], 0, pixels, col, width, height);
+        }
+        BenchmarkSupport.blackhole += pixels[pixels.length / 2];
+      }
+    });
+  }
+}
@@ -0,0 +1,78 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import java.util.Random;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.Frame;
+import net.bluecow.spectro.RegionEnergy;
+import net.bluecow.spectro.SpectralOps;
+
+/**
+ * Compares {@link Clip#getEnergy(Rectangle)} with reading every cell of the region, for random
+ * regions of a one minute clip, checks that they agree, and measures a query made right after a
+ * small edit, which has to bring the index up to date first.
+ */
+public class EnergyBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    final Rectangle all = new Rectangle(0, 0, clip.getFrameCount(), clip.getFrameFreqSamples());
+    final Rectangle[] regions = new Rectangle[100];
+    Random random = new Random(1);
+    for (int i = 0; i < regions.length; i++) {
+      int w = 1 + random.nextInt(all.width);
+      int h = 1 + random.nextInt(all.height);
+      regions[i] = new Rectangle(random.nextInt(all.width - w + 1),
+          random.nextInt(all.height - h + 1), w, h);
+    }
+
+    // builds the index
+    clip.getEnergy(all);
+    double worst = 0.0;
+    for (Rectangle r : regions) {
+      double expected = scan(clip, r);
+      double actual = clip.getEnergy(r).getSumOfSquares();
+      worst = Math.max(worst, Math.abs(actual - expected) / Math.max(1e-12, expected));
+    }
+    System.out.println(String.format("largest relative error in sum of squares: %.2e", worst));
+
+    BenchmarkSupport.time("scan 100 random regions", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (Rectangle r : regions) {
+          BenchmarkSupport.blackhole += scan(clip, r);
+        }
+      }
+    });
+    BenchmarkSupport.time("index 100 random regions", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (Rectangle r : regions) {
+          BenchmarkSupport.blackhole += clip.getEnergy(r).getSumOfSquares();
+        }
+      }
+    });
+
+    final Rectangle dab = new Rectangle(1000, 200, 10, 10);
+    BenchmarkSupport.time("10x10 edit, then whole clip query", 2, 20, new Runnable() {
+      @Override
+      public void run() {
+        SpectralOps.scale(1.0001).preview(clip, dab, null);
+        RegionEnergy e = clip.getEnergy(all);
+        BenchmarkSupport.blackhole += e.getRms();
+      }
+    });
+  }
+
+  private static double scan(Clip clip, Rectangle r) {
+    double sum = 0.0;
+    for (int i = r.x; i < r.x + r.width; i++) {
+      Frame f = clip.getFrame(i);
+      for (int j = r.y; j < r.y + r.height; j++) {
+        double v = f.getReal(j);
+        sum += v * v;
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,74 @@
+package org.jzy3d.spectro.bench;
+
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.Filterbank;
+import net.bluecow.spectro.FrequencyScale;
+
+/**
+ * Times projecting every frame of a one minute clip onto the mel and constant-Q display scales,
+ * with the sparse weights the filterbank keeps compared to a dense bands-by-bins matrix, and
+ * reports the size of the resulting view compared to the clip.
+ */
+public class FilterbankBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    final int bins = clip.getFrameFreqSamples();
+    final double[][] frames = new double[clip.getFrameCount()][bins];
+    for (int i = 0; i < frames.length; i++) {
+      clip.getFrame(i).getReal(0, frames[i], 0, bins);
+    }
+
+    for (FrequencyScale scale : new FrequencyScale[] { FrequencyScale.MEL,
+        FrequencyScale.CONSTANT_Q }) {
+      final Filterbank filterbank = scale.createFilterbank(clip);
+      final int bands = filterbank.getBandCount();
+
+      // the dense equivalent, found by applying the filterbank to each frequency index alone
+      final float[][] dense = new float[bands][bins];
+      double[] unit = new double[bins];
+      float[] response = new float[bands];
+      int nonZero = 0;
+      for (int k = 0; k < bins; k++) {
+        unit[k] = 1.0;
+        filterbank.apply(unit, response);
+        unit[k] = 0.0;
+        for (int b = 0; b < bands; b++) {
+          dense[b][k] = response[b];
+          nonZero += response[b] != 0f ? 1 : 0;
+        }
+      }
+      System.out.println(String.format("%s: %d bands, %d non-zero weights of %d", scale, bands,
+          nonZero, bands * bins));
+
+      final float[] out = new float[bands];
+      BenchmarkSupport.time(scale + ", dense matrix", 2, 5, new Runnable() {
+        @Override
+        public void run() {
+          for (double[] frame : frames) {
+            for (int b = 0; b < bands; b++) {
+              float[] row = dense[b];
+              double sum = 0.0;
+              for (int k = 0; k < bins; k++) {
+                sum += row[k] * Math.abs(frame[k]);
+              }
+              out[b] = (float) sum;
+            }
+          }
+          BenchmarkSupport.blackhole += (long) out[0];
+        }
+      });
+      BenchmarkSupport.time(scale + ", sparse weights", 2, 20, new Runnable() {
+        @Override
+        public void run() {
+          for (double[] frame : frames) {
+            filterbank.apply(frame, out);
+          }
+          BenchmarkSupport.blackhole += (long) out[0];
+        }
+      });
+      System.out.println(String.format("  view %d KB, clip data %d KB",
+          4L * bands * frames.length / 1024, 8L * bins * frames.length / 1024));
+    }
+  }
+}
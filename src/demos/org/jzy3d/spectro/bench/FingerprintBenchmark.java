@@ -0,0 +1,78 @@
+package org.jzy3d.spectro.bench;
+
+import java.io.File;
+import java.util.List;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.fingerprint.FingerprintIndex;
+import net.bluecow.spectro.fingerprint.FingerprintIndexBuilder;
+import net.bluecow.spectro.fingerprint.FingerprintMatch;
+
+/**
+ * Builds a fingerprint index over a library of synthetic recordings, then times searches for
+ * snippets cut out of some of them and checks that each is found in the right recording at the
+ * right time.
+ */
+public class FingerprintBenchmark {
+
+  private static final int RECORDINGS = 40;
+
+  private static final double SECONDS = 30.0;
+
+  public static void main(String[] args) throws Exception {
+    File dir = File.createTempFile("spectro-fingerprint", "");
+    dir.delete();
+    dir.mkdir();
+    File indexFile = new File(dir, "library.idx");
+    try {
+      FingerprintIndexBuilder builder = new FingerprintIndexBuilder();
+      for (int i = 0; i < RECORDINGS; i++) {
+        File wav = new File(dir, "recording" + i + ".wav");
+        BenchmarkSupport.writeSyntheticWav(wav, SECONDS, i);
+        builder.addFile(wav);
+      }
+      long start = System.nanoTime();
+      long entries = builder.build(indexFile);
+      System.out.println(String.format("indexed %d recordings, %.0f s of audio, %d entries "
+          + "(%d KB) in %.0f ms", RECORDINGS, RECORDINGS * SECONDS, entries,
+          indexFile.length() / 1024, (System.nanoTime() - start) / 1e6));
+
+      final FingerprintIndex index = new FingerprintIndex(indexFile);
+      try {
+        int found = 0;
+        int tries = 0;
+        for (int r = 3; r < RECORDINGS; r += 7) {
+          Clip recording = Clip.newInstance(new File(dir, "recording" + r + ".wav"));
+          int startFrame = 300 + 37 * r;
+          final Clip snippet = recording.subClip(startFrame, 250, recording.getFrameFreqSamples(),
+              recording.getOverlap());
+          double seconds = startFrame * recording.getFrameTimeSamples()
+              / (double) recording.getOverlap() / recording.getSamplingRate();
+          List<FingerprintMatch> matches = index.search(snippet, 3);
+          FingerprintMatch best = matches.isEmpty() ? null : matches.get(0);
+          boolean right = best != null && best.getFile().endsWith("recording" + r + ".wav")
+              && Math.abs(best.getSeconds() - seconds) < 0.05;
+          System.out.println(String.format("snippet of recording%d at %.2fs: %s%s", r, seconds,
+              best, right ? "" : "  WRONG"));
+          tries++;
+          found += right ? 1 : 0;
+          if (r == 3) {
+            BenchmarkSupport.time("search for a 3 s snippet", 3, 20, new Runnable() {
+              @Override
+              public void run() {
+                BenchmarkSupport.blackhole += index.search(snippet, 3).size();
+              }
+            });
+          }
+        }
+        System.out.println(found + " of " + tries + " snippets found");
+      } finally {
+        index.close();
+      }
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+}
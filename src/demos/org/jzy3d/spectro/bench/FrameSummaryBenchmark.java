@@ -0,0 +1,60 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.Frame;
+import net.bluecow.spectro.FrameSummaryIndex;
+import net.bluecow.spectro.SpectralOps;
+
+/**
+ * Compares finding every frame above a level with the clip's {@link FrameSummaryIndex} against
+ * reading the frames, on a one minute clip, and checks that the index catches up with an edit.
+ */
+public class FrameSummaryBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    final FrameSummaryIndex index = clip.getFrameSummaries();
+    final double level = index.getLevel(index.getFrameCount() / 2) - 3.0;
+
+    BenchmarkSupport.time("frames above level, reading frames", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        double threshold = Math.pow(10.0, level / 10.0) * clip.getFrameFreqSamples();
+        int count = 0;
+        for (int i = 0; i < clip.getFrameCount(); i++) {
+          Frame f = clip.getFrame(i);
+          double energy = 0.0;
+          for (int j = 0; j < clip.getFrameFreqSamples(); j++) {
+            energy += f.getReal(j) * f.getReal(j);
+          }
+          if (energy > threshold) {
+            count++;
+          }
+        }
+        BenchmarkSupport.blackhole += count;
+      }
+    });
+    BenchmarkSupport.time("frames above level, index", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        int count = 0;
+        for (int i = index.findNextFrameAbove(0, level); i >= 0;
+            i = index.findNextFrameAbove(i + 1, level)) {
+          count++;
+        }
+        BenchmarkSupport.blackhole += count;
+      }
+    });
+
+    Rectangle region = new Rectangle(100, 0, 50, clip.getFrameFreqSamples());
+    SpectralOps.scale(0.0).apply(clip, region);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (index.getEnergy(149) != 0.0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    System.out.println("energy of frame 149 after silencing it: " + index.getEnergy(149)
+        + ", flatness: " + index.getFlatness(149) + " (should be 0), next frame above level "
+        + "from 100: " + index.findNextFrameAbove(100, level));
+  }
+}
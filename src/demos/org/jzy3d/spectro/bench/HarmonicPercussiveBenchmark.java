@@ -0,0 +1,90 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.HarmonicPercussiveSeparator;
+import net.bluecow.spectro.HarmonicPercussiveSeparator.Layer;
+
+/**
+ * Times separating a clip into harmonic and percussive layers, compared with taking the same
+ * medians by sorting every window, and reports how much of the tones and of the bursts ends up in
+ * each layer.
+ */
+public class HarmonicPercussiveBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip shortClip = BenchmarkSupport.syntheticClip(5.0);
+    final HarmonicPercussiveSeparator separator = new HarmonicPercussiveSeparator();
+    BenchmarkSupport.time("5 s, sorting every window", 1, 3, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole += sortedMedians(shortClip, 17, 17);
+      }
+    });
+    BenchmarkSupport.time("5 s, sliding medians", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole +=
+            separator.separate(shortClip, Layer.HARMONIC).getFrameCount();
+      }
+    });
+
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    BenchmarkSupport.time("60 s, sliding medians", 1, 5, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole += separator.separate(clip, Layer.HARMONIC).getFrameCount();
+      }
+    });
+
+    Clip harmonic = clip.extractLayer(Layer.HARMONIC);
+    Clip percussive = clip.extractLayer(Layer.PERCUSSIVE);
+    int height = clip.getFrameFreqSamples();
+    // the tones sit in the bottom of the spectrum; the burst at 10 s covers all of it
+    Rectangle tones = new Rectangle(1000, 0, 25, height / 8);
+    Rectangle burst = new Rectangle(861, height / 2, 2, height / 2);
+    report("tones", clip, harmonic, percussive, tones);
+    report("burst", clip, harmonic, percussive, burst);
+  }
+
+  private static void report(String name, Clip clip, Clip harmonic, Clip percussive,
+      Rectangle region) {
+    double total = clip.getEnergy(region).getSumOfSquares();
+    System.out.println(String.format("%s: %.1f%% harmonic, %.1f%% percussive", name,
+        100 * harmonic.getEnergy(region).getSumOfSquares() / total,
+        100 * percussive.getEnergy(region).getSumOfSquares() / total));
+  }
+
+  /**
+   * Takes the median across time and across frequency of every cell by copying out and sorting its
+   * window, and returns a checksum of them.
+   */
+  private static double sortedMedians(Clip clip, int timeWindow, int freqWindow) {
+    int frames = clip.getFrameCount();
+    int bins = clip.getFrameFreqSamples();
+    double[][] data = new double[frames][bins];
+    for (int i = 0; i < frames; i++) {
+      clip.getFrame(i).getReal(0, data[i], 0, bins);
+    }
+    double[] window = new double[Math.max(timeWindow, freqWindow)];
+    double sum = 0.0;
+    for (int i = 0; i < frames; i++) {
+      for (int j = 0; j < bins; j++) {
+        for (int k = 0; k < timeWindow; k++) {
+          int t = Math.max(0, Math.min(frames - 1, i - timeWindow / 2 + k));
+          window[k] = Math.abs(data[t][j]);
+        }
+        Arrays.sort(window, 0, timeWindow);
+        sum += window[timeWindow / 2];
+        for (int k = 0; k < freqWindow; k++) {
+          int f = Math.max(0, Math.min(bins - 1, j - freqWindow / 2 + k));
+          window[k] = Math.abs(data[i][f]);
+        }
+        Arrays.sort(window, 0, freqWindow);
+        sum += window[freqWindow / 2];
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,66 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipDataEdit;
+import net.bluecow.spectro.NoiseProfile;
+import net.bluecow.spectro.RegionOp;
+import net.bluecow.spectro.SpectralOps;
+
+/**
+ * Captures a noise profile from a band of a one minute clip that holds only the background noise,
+ * then times removing the noise from the whole clip. Reports how much the noise band and the band
+ * holding the tones were reduced by, and how big the resulting undoable edit is.
+ */
+public class NoiseReductionBenchmark {
+
+  private static ClipDataEdit lastEdit;
+
+  private static int edits;
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    clip.addUndoableEditListener(new UndoableEditListener() {
+      @Override
+      public void undoableEditHappened(UndoableEditEvent e) {
+        lastEdit = (ClipDataEdit) e.getEdit();
+        edits++;
+      }
+    });
+    int height = clip.getFrameFreqSamples();
+    final Rectangle all = new Rectangle(0, 0, clip.getFrameCount(), height);
+    // between two of the bursts, so only the noise is there
+    Rectangle noiseBand = new Rectangle(1000, height / 2, 25, height / 2);
+    Rectangle toneBand = new Rectangle(0, 0, clip.getFrameCount(), height / 8);
+
+    final Rectangle sample = new Rectangle(5, height / 2, 35, height / 2);
+    BenchmarkSupport.time("capture profile", 3, 20, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole += NoiseProfile.capture(clip, sample).getFrameCount();
+      }
+    });
+    NoiseProfile profile = NoiseProfile.capture(clip, sample);
+    final RegionOp op = SpectralOps.subtractNoise(profile, 1.5, 0.05);
+
+    double noiseBefore = clip.getEnergy(noiseBand).getRms();
+    double toneBefore = clip.getEnergy(toneBand).getRms();
+    op.apply(clip, all);
+    System.out.println(String.format("noise band %.1f dB, tone band %.1f dB, %d edit of %d KB",
+        20 * Math.log10(clip.getEnergy(noiseBand).getRms() / noiseBefore),
+        20 * Math.log10(clip.getEnergy(toneBand).getRms() / toneBefore), edits,
+        lastEdit.getMemoryUsage() / 1024));
+    lastEdit.undo();
+
+    BenchmarkSupport.time("noise reduction on whole clip", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        op.apply(clip, all);
+        lastEdit.undo();
+        lastEdit.die();
+      }
+    });
+  }
+}
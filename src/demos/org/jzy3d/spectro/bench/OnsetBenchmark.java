@@ -0,0 +1,46 @@
+package org.jzy3d.spectro.bench;
+
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.OnsetDetector;
+
+/**
+ * Measures the throughput of {@link OnsetDetector} on a long input, made by streaming the frames of
+ * a one minute clip through one detector ten times over, and reports how much faster than real time
+ * that is. Also checks the onsets found while the clip was read against the percussive bursts the
+ * synthetic clip has every half second.
+ */
+public class OnsetBenchmark {
+
+  private static final int REPEATS = 10;
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    int[] onsets = clip.getOnsets();
+    System.out.println(onsets.length + " onsets found while reading (expected about "
+        + (int) (clip.getFrameCount() * clip.getFrameTimeSamples() / clip.getOverlap()
+            / clip.getSamplingRate() * 2) + ")");
+
+    final int frames = clip.getFrameCount();
+    final double[][] data = new double[frames][clip.getFrameFreqSamples()];
+    for (int i = 0; i < frames; i++) {
+      clip.getFrame(i).getReal(0, data[i], 0, data[i].length);
+    }
+    double ms = BenchmarkSupport.time("detect onsets, " + REPEATS + " minutes", 1, 5, new Runnable() {
+      @Override
+      public void run() {
+        OnsetDetector detector = new OnsetDetector(clip.getFrameFreqSamples());
+        for (int r = 0; r < REPEATS; r++) {
+          for (int i = 0; i < frames; i++) {
+            detector.addFrame(data[i]);
+          }
+        }
+        detector.finish();
+        BenchmarkSupport.blackhole += detector.getOnsetCount();
+      }
+    });
+    double framesPerSecond = frames * REPEATS / (ms / 1000.0);
+    double seconds = REPEATS * 60.0;
+    System.out.println(String.format("%.0f frames/s, %.0fx real time", framesPerSecond,
+        seconds / (ms / 1000.0)));
+  }
+}
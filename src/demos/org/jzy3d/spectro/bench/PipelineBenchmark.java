@@ -0,0 +1,100 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.UndoableEdit;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipDataChangeEvent;
+import net.bluecow.spectro.ClipDataChangeListener;
+import net.bluecow.spectro.RegionOp;
+import net.bluecow.spectro.SpectralOps;
+import net.bluecow.spectro.SpectralPipeline;
+
+/**
+ * Compares applying threshold, scale and horizontal flip to a whole one minute clip as three
+ * separate operations with running them as one {@link SpectralPipeline}, and checks that both
+ * give the same result. Each run includes the undoable edits, which are discarded straight away.
+ */
+public class PipelineBenchmark {
+
+  private static UndoableEdit lastEdit;
+
+  private static int edits;
+
+  private static int changeEvents;
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    clip.addUndoableEditListener(new UndoableEditListener() {
+      @Override
+      public void undoableEditHappened(UndoableEditEvent e) {
+        lastEdit = e.getEdit();
+        edits++;
+      }
+    });
+    clip.addClipDataChangeListener(new ClipDataChangeListener() {
+      @Override
+      public void clipDataChanged(ClipDataChangeEvent e) {
+        changeEvents++;
+      }
+    });
+    final Rectangle all = new Rectangle(0, 0, clip.getFrameCount(), clip.getFrameFreqSamples());
+    final RegionOp[] ops = new RegionOp[] {
+        SpectralOps.threshold(0.01, false),
+        SpectralOps.scale(1.0001),
+        SpectralOps.flipHorizontally(all) };
+    SpectralPipeline pipeline = new SpectralPipeline("Threshold, Scale and Flip");
+    for (RegionOp op : ops) {
+      pipeline = pipeline.then(op);
+    }
+    final SpectralPipeline fused = pipeline;
+    System.out.println(ops.length + " operations in " + fused.getStageCount() + " stages");
+
+    // check the pipeline gives the same result as the operations one at a time
+    UndoableEdit[] undo = new UndoableEdit[ops.length];
+    for (int i = 0; i < ops.length; i++) {
+      ops[i].apply(clip, all);
+      undo[i] = lastEdit;
+    }
+    double[] separate = column(clip, 100);
+    for (int i = ops.length - 1; i >= 0; i--) {
+      undo[i].undo();
+    }
+    fused.apply(clip, all);
+    double[] together = column(clip, 100);
+    lastEdit.undo();
+    System.out.println("same result: " + Arrays.equals(separate, together));
+
+    edits = 0;
+    changeEvents = 0;
+    BenchmarkSupport.time("separate operations", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (RegionOp op : ops) {
+          op.apply(clip, all);
+          lastEdit.die();
+        }
+      }
+    });
+    System.out.println("  " + edits / 12 + " edits, " + changeEvents / 12 + " change events per run");
+
+    edits = 0;
+    changeEvents = 0;
+    BenchmarkSupport.time("pipeline", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        fused.apply(clip, all);
+        lastEdit.die();
+      }
+    });
+    System.out.println("  " + edits / 12 + " edits, " + changeEvents / 12 + " change events per run");
+  }
+
+  private static double[] column(Clip clip, int frame) {
+    double[] data = new double[clip.getFrameFreqSamples()];
+    clip.getFrame(frame).getReal(0, data, 0, data.length);
+    return data;
+  }
+}
@@ -0,0 +1,39 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.PitchTrack;
+import net.bluecow.spectro.SpectralOps;
+
+/**
+ * Measures how long it takes to track the pitch of a whole one minute clip, and to bring the track
+ * up to date after a small edit, which only tracks the frames the edit touched again.
+ */
+public class PitchTrackBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    long start = System.nanoTime();
+    PitchTrack track = clip.getPitchTrack();
+    double ms = (System.nanoTime() - start) / 1e6;
+    int voiced = 0;
+    for (int i = 0; i < track.getFrameCount(); i++) {
+      if (track.isVoiced(i)) {
+        voiced++;
+      }
+    }
+    System.out.println(String.format("tracked %d frames in %.1f ms (%.0f frames/s), %d voiced, "
+        + "frame 1000 is %.1f Hz (%s)", track.getFrameCount(), ms,
+        track.getFrameCount() / (ms / 1000.0), voiced, track.getFrequency(1000),
+        track.getNoteName(1000)));
+
+    final Rectangle dab = new Rectangle(1000, 10, 10, 10);
+    BenchmarkSupport.time("10x10 edit, then fetch track", 2, 20, new Runnable() {
+      @Override
+      public void run() {
+        SpectralOps.scale(1.0001).preview(clip, dab, null);
+        BenchmarkSupport.blackhole += clip.getPitchTrack().getNote(1005);
+      }
+    });
+  }
+}
@@ -0,0 +1,101 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.UndoableEdit;
+import net.bluecow.spectro.CellOp;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.Frame;
+import net.bluecow.spectro.RegionOp;
+
+/**
+ * Compares the region tools' original hand-rolled loops (a single thread calling
+ * getFrame()/setReal() cell by cell) with the same operations run through {@link RegionOp}, on a
+ * region covering a whole one minute clip. Each run includes beginning and ending the undoable
+ * edit; the edits are discarded straight away so the undo history doesn't pile up.
+ */
+public class RegionOpBenchmark {
+
+  private static UndoableEdit lastEdit;
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    clip.addUndoableEditListener(new UndoableEditListener() {
+      @Override
+      public void undoableEditHappened(UndoableEditEvent e) {
+        lastEdit = e.getEdit();
+      }
+    });
+    final Rectangle all = new Rectangle(0, 0, clip.getFrameCount(), clip.getFrameFreqSamples());
+    System.out.println(all.width + " frames x " + all.height + " bins, "
+        + Runtime.getRuntime().availableProcessors() + " processors");
+
+    BenchmarkSupport.time("scale, hand-rolled loop", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        clip.beginEdit(all, "Scale Region");
+        for (int i = all.x; i < all.x + all.width; i++) {
+          Frame frame = clip.getFrame(i);
+          for (int j = all.y; j < all.y + all.height; j++) {
+            frame.setReal(j, frame.getReal(j) * 1.0001);
+          }
+        }
+        clip.endEdit();
+        lastEdit.die();
+      }
+    });
+
+    final CellOp scale = new CellOp("Scale Region") {
+      @Override
+      protected double processCell(double value) {
+        return value * 1.0001;
+      }
+    };
+    BenchmarkSupport.time("scale, CellOp", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        scale.apply(clip, all);
+        lastEdit.die();
+      }
+    });
+
+    BenchmarkSupport.time("vertical flip, hand-rolled loop", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        clip.beginEdit(all, "Flip Region Vertically");
+        for (int i = 0; i < all.width; i++) {
+          Frame frame = clip.getFrame(all.x + i);
+          for (int j = 0; j < all.height / 2; j++) {
+            int bottom = all.y + all.height - 1 - j;
+            int top = all.y + j;
+            double tmp = frame.getReal(bottom);
+            frame.setReal(bottom, frame.getReal(top));
+            frame.setReal(top, tmp);
+          }
+        }
+        clip.endEdit();
+        lastEdit.die();
+      }
+    });
+
+    final RegionOp vflip = new RegionOp("Flip Region Vertically") {
+      @Override
+      protected void processFrame(int frame, Source source, double[] data) {
+        for (int j = 0; j < data.length / 2; j++) {
+          int top = data.length - 1 - j;
+          double tmp = data[top];
+          data[top] = data[j];
+          data[j] = tmp;
+        }
+      }
+    };
+    BenchmarkSupport.time("vertical flip, RegionOp", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        vflip.apply(clip, all);
+        lastEdit.die();
+      }
+    });
+  }
+}
@@ -0,0 +1,64 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import net.bluecow.spectro.Clip;
+
+/**
+ * Times re-analysing ten seconds of a one minute clip at a higher resolution, the way the magnify
+ * tool does, first from the samples the clip keeps and then (after an edit has made those stale)
+ * by synthesizing the frames back into samples. Reports how far apart the two results are.
+ */
+public class SubClipBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    final int start = 1000;
+    final int frames = 861;
+
+    BenchmarkSupport.time("sub clip from kept samples", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole += clip.subClip(start, frames, 4096, 4).getFrameCount();
+      }
+    });
+    Clip fromSamples = clip.subClip(start, frames, clip.getFrameTimeSamples(), clip.getOverlap());
+
+    // any edit, even one that changes nothing, means the samples no longer match the frames
+    Rectangle cell = new Rectangle(0, 0, 1, 1);
+    clip.beginEdit(cell, "Nothing");
+    clip.endEdit();
+
+    BenchmarkSupport.time("sub clip by resynthesis", 2, 10, new Runnable() {
+      @Override
+      public void run() {
+        BenchmarkSupport.blackhole += clip.subClip(start, frames, 4096, 4).getFrameCount();
+      }
+    });
+    Clip resynthesized =
+        clip.subClip(start, frames, clip.getFrameTimeSamples(), clip.getOverlap());
+
+    // at the clip's own resolution, a sub clip should have the same frames as the clip; the
+    // resynthesized one starts a frame early
+    System.out.println(String.format("difference from the clip's frames: %.2e from kept samples, "
+        + "%.2e by resynthesis", difference(clip, start, fromSamples, 0),
+        difference(clip, start, resynthesized, 1)));
+  }
+
+  /**
+   * Returns the relative RMS difference between the middle frames of a sub clip and the frames of
+   * the clip they came from.
+   */
+  private static double difference(Clip clip, int start, Clip sub, int offset) {
+    double diff = 0.0;
+    double total = 0.0;
+    for (int i = 100; i < 200; i++) {
+      for (int j = 0; j < clip.getFrameFreqSamples(); j++) {
+        double a = clip.getFrame(start + i).getReal(j);
+        double b = sub.getFrame(i + offset).getReal(j);
+        diff += (a - b) * (a - b);
+        total += a * a;
+      }
+    }
+    return Math.sqrt(diff / total);
+  }
+}
@@ -0,0 +1,101 @@
+package org.jzy3d.spectro.bench;
+
+import java.awt.Rectangle;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipDataEdit;
+import net.bluecow.spectro.Frame;
+
+/**
+ * Measures how much heap the undo snapshots of typical edits are charged, compared to the 16 bytes
+ * per cell of storing the before and after data as plain doubles, how long it takes to undo and
+ * redo them, and how long it takes to begin and end an edit covering the whole clip. Each of the
+ * big edits works on its own part of the clip, so it doesn't share blocks with the others.
+ */
+public class UndoBenchmark {
+
+  private static ClipDataEdit lastEdit;
+
+  public static void main(String[] args) throws Exception {
+    final Clip clip = BenchmarkSupport.syntheticClip(60.0);
+    clip.addUndoableEditListener(new UndoableEditListener() {
+      @Override
+      public void undoableEditHappened(UndoableEditEvent e) {
+        lastEdit = (ClipDataEdit) e.getEdit();
+      }
+    });
+    int height = clip.getFrameFreqSamples();
+
+    // a paintbrush stroke's worth of dabs, one edit each
+    long paintBytes = 0;
+    long paintCells = 0;
+    for (int x = 100; x < 600; x += 2) {
+      Rectangle dab = new Rectangle(x, 200 + (x % 50), 10, 10);
+      clip.beginEdit(dab, "Brush stroke");
+      fill(clip, dab, 0.0, false);
+      clip.endEdit();
+      paintBytes += lastEdit.getMemoryUsage();
+      paintCells += dab.width * dab.height;
+    }
+    report("paintbrush dabs", paintCells, paintBytes);
+
+    measure(clip, "threshold 1000 frames", new Rectangle(1000, 0, 1000, height / 2), 0.0, true);
+    measure(clip, "scale 1000 frames by 0.5", new Rectangle(2000, 0, 1000, height / 2), 0.5,
+        false);
+    measure(clip, "scale 1000 frames by 0.8", new Rectangle(3000, 0, 1000, height / 2), 0.8,
+        false);
+
+    final Rectangle all = new Rectangle(0, 0, clip.getFrameCount(), height);
+    BenchmarkSupport.time("begin + end edit on whole clip", 3, 20, new Runnable() {
+      @Override
+      public void run() {
+        clip.beginEdit(all, "Nothing");
+        clip.endEdit();
+        lastEdit.die();
+      }
+    });
+  }
+
+  /**
+   * Applies an edit to the given region, reports its snapshot size, then times undo and redo.
+   *
+   * @param threshold If true, cells smaller than 1.0 are zeroed; otherwise all cells are scaled.
+   */
+  private static void measure(Clip clip, String name, Rectangle region, double amount,
+      boolean threshold) {
+    clip.beginEdit(region, name);
+    fill(clip, region, amount, threshold);
+    clip.endEdit();
+    final ClipDataEdit edit = lastEdit;
+    report(name, (long) region.width * region.height, edit.getMemoryUsage());
+
+    BenchmarkSupport.time(name + ", undo + redo", 3, 20, new Runnable() {
+      @Override
+      public void run() {
+        edit.undo();
+        edit.redo();
+      }
+    });
+  }
+
+  private static void fill(Clip clip, Rectangle r, double amount, boolean threshold) {
+    for (int i = r.x; i < r.x + r.width; i++) {
+      Frame f = clip.getFrame(i);
+      for (int j = r.y; j < r.y + r.height; j++) {
+        if (threshold) {
+          if (Math.abs(f.getReal(j)) < 1.0) {
+            f.setReal(j, 0.0);
+          }
+        } else {
+          f.setReal(j, f.getReal(j) * amount);
+        }
+      }
+    }
+  }
+
+  private static void report(String name, long cells, long bytes) {
+    System.out.println(String.format("%-40s %10d bytes (%.2f bytes/cell, was 16)", name, bytes,
+        (double) bytes / cells));
+  }
+}
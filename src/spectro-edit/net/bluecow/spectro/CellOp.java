@@ -0,0 +1,39 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * A {@link RegionOp} whose new value for each cell depends only on that cell's old value.
+ */
+public abstract class CellOp extends RegionOp {
+
+  protected CellOp(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the new value for a cell.
+   *
+   * @param value The cell's value before the operation.
+   */
+  protected abstract double processCell(double value);
+
+  @Override
+  protected final void processFrame(int frame, Source source, double[] data) {
+    for (int i = 0; i < data.length; i++) {
+      data[i] = processCell(data[i]);
+    }
+  }
+}
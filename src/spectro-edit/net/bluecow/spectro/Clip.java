@@ -20,13 +20,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
 import javax.swing.undo.UndoableEditSupport;
 
 /**
@@ -74,10 +79,76 @@ public class Clip {
    */
   private ClipDataEdit currentEdit;
 
-  private final UndoableEditSupport undoEventSupport = new UndoableEditSupport();
+  private final ClipEditSupport undoEventSupport = new ClipEditSupport();
 
   private final String name;
 
+  /**
+   * Guards the data of {@link #frames} against concurrent reads and writes.
+   */
+  private final FrameLocks frameLocks;
+
+  /**
+   * Block sums for {@link #getEnergy(Rectangle)}. Created the first time it's needed.
+   */
+  private EnergyIndex energyIndex;
+
+  /**
+   * Per-frame statistics, computed when the clip is read (or, for a view, the first time they're
+   * needed) and kept up to date as it changes. Guarded by this.
+   */
+  private FrameSummaryIndex frameSummaries;
+
+  /**
+   * The frame numbers of the onsets, found while the clip was read (or, for a view, the first time
+   * they're asked for) and kept up to date as it changes. Guarded by {@link #onsetsLock}.
+   */
+  private int[] onsets;
+
+  /**
+   * Held while the onsets are brought up to date. Separate from this clip's own monitor so that
+   * looking for onsets doesn't hold up anything else.
+   */
+  private final Object onsetsLock = new Object();
+
+  /**
+   * The frames that have changed since the onsets were last brought up to date. Guarded by itself.
+   */
+  private final BitSet onsetsDirty = new BitSet();
+
+  /**
+   * Marks the frames of each change as needing their onsets looked at again.
+   */
+  private final ClipDataChangeListener onsetChangeHandler = new ClipDataChangeListener() {
+    @Override
+    public void clipDataChanged(ClipDataChangeEvent e) {
+      Rectangle r = e.getRegion();
+      int start = Math.max(0, r.x);
+      int end = Math.min(frames.size(), r.x + r.width);
+      if (start < end) {
+        synchronized (onsetsDirty) {
+          onsetsDirty.set(start, end);
+        }
+      }
+    }
+  };
+
+  /**
+   * The pitch of every frame. Created the first time it's needed.
+   */
+  private PitchTrack pitchTrack;
+
+  /**
+   * The samples this clip was made from, or null if the clip wasn't made from samples or has been
+   * changed since. Guarded by this.
+   */
+  private short[] pcm;
+
+  /**
+   * The change sequence number {@link #pcm} matches the frames at.
+   */
+  private long pcmSequence;
+
   /**
    * Creates a new Clip based on the acoustical information in the given audio file.
    * <p>
@@ -101,83 +172,127 @@ public class Clip {
    * 
    * @param name The name of this clip. Could be the file name it was read from, or something
    *        supplied by the user.
-   * @param in The audio data to read. Must have the following characteristics:
-   *        <ul>
-   *        <li>Contains bytes in the format that an AudioInputStream in the format specified by
-   *        {@link #AUDIO_FORMAT}
-   *        <li>Supports mark() and reset(). (This can be accomplished by wrapping your stream in a
-   *        BufferedInputStream)
-   *        </ul>
+   * @param in The audio data to read. Must contain bytes in the format that an AudioInputStream in
+   *        the format specified by {@link #AUDIO_FORMAT} would.
    * @throws IOException If reading the input stream fails for any reason.
    */
   private Clip(String name, InputStream in, int frameSize, int overlap) throws IOException {
+    this(name, readSamples(in), frameSize, overlap);
+  }
+
+  /**
+   * Creates a new clip from the given samples, which the clip keeps so it can be analysed again
+   * at a different resolution without resynthesizing them (see
+   * {@link #subClip(int, int, int, int)}).
+   * 
+   * @param name The name of this clip.
+   * @param pcm The samples, which now belong to this clip.
+   */
+  private Clip(String name, short[] pcm, int frameSize, int overlap) {
     this.name = name;
     this.frameSize = frameSize;
     this.overlap = overlap;
+    this.pcm = pcm;
     WindowFunction windowFunc = new VorbisWindowFunction(frameSize);
-    byte[] buf = new byte[frameSize * 2]; // 16-bit mono samples
-    int n;
-    in.mark(buf.length * 2);
-    while ((n = readFully(in, buf)) != -1) {
-      logger.finest("Read " + n + " bytes");
-      if (n != buf.length) {
-        // this should only happen at the end of the input file (last frame)
-        logger.warning("Only read " + n + " of " + buf.length + " bytes at frame " + frames.size());
-
-        // pad with silence or there will be audible junk at end of clip
-        for (int i = n; i < buf.length; i++) {
-          buf[i] = 0;
-        }
+    OnsetDetector onsetDetector = new OnsetDetector(frameSize);
+    double[] frameData = new double[frameSize];
+    int hop = frameSize / overlap;
+    for (int start = 0; start < pcm.length; start += hop) {
+      int n = Math.min(frameSize, pcm.length - start);
+      if (n != frameSize) {
+        // this should only happen at the end of the input (last frames)
+        logger.warning("Only have " + n + " of " + frameSize + " samples at frame "
+            + frames.size());
       }
+
+      // pad with silence or there will be audible junk at end of clip
       double[] samples = new double[frameSize];
-      for (int i = 0; i < frameSize; i++) {
-        int hi = buf[2 * i];// & 0xff; // need sign extension
-        int low = buf[2 * i + 1] & 0xff;
-        int sampVal = ((hi << 8) | low);
-        samples[i] = (sampVal / spectralScale);
+      for (int i = 0; i < n; i++) {
+        samples[i] = pcm[start + i] / spectralScale;
       }
 
-      frames.add(new Frame(samples, windowFunc));
-      in.reset();
-      long bytesToSkip = (frameSize * 2) / overlap;
-      long bytesSkipped;
-      if ((bytesSkipped = in.skip(bytesToSkip)) != bytesToSkip) {
-        logger.info("Skipped " + bytesSkipped + " bytes, but wanted " + bytesToSkip + " at frame "
-            + frames.size());
-      }
-      in.mark(buf.length * 2);
+      Frame frame = new Frame(samples, windowFunc);
+      frames.add(frame);
+      frame.getReal(0, frameData, 0, frameSize);
+      onsetDetector.addFrame(frameData);
     }
 
-    logger.info(String.format("Read %d frames from %s (%d bytes). frameSize=%d overlap=%d\n",
-        frames.size(), name, frames.size() * buf.length, frameSize, overlap));
+    onsetDetector.finish();
+    onsets = onsetDetector.getOnsets();
+    frameLocks = new FrameLocks(frames.size());
+    frameSummaries = new FrameSummaryIndex(this);
+    pcmSequence = getLastChangeSequence();
+    addClipDataChangeListener(onsetChangeHandler);
+    logger.info(String.format("Read %d frames from %s (%d samples). frameSize=%d overlap=%d\n",
+        frames.size(), name, pcm.length, frameSize, overlap));
   }
 
   /**
-   * Fills the given buffer by reading the given input stream repeatedly until the buffer is full.
-   * The only conditions that will prevent buf from being filled by the time this method returns are
-   * if the input stream indicates an EOF condition or an IO error occurs.
-   * 
-   * @param in The input stream to read
-   * @param buf The buffer to fill with bytes from the input stream
-   * @return The number of bytes actually read into buf
-   * @throws IOException If an IO error occurs
-   */
-  private int readFully(InputStream in, byte[] buf) throws IOException {
-    int offset = 0;
-    int length = buf.length;
-    int bytesRead = 0;
-    while ((offset < buf.length) && ((bytesRead = in.read(buf, offset, length)) != -1)) {
-      logger.finest("read " + bytesRead + " bytes at offset " + offset);
-      length -= bytesRead;
-      offset += bytesRead;
+   * Creates a new clip from frames that have already been computed, such as one layer of another
+   * clip.
+   *
+   * @param name The name of this clip.
+   * @param frames The frames of the clip, which now belong to it.
+   */
+  Clip(String name, Frame[] frames, int frameSize, int overlap) {
+    this.name = name;
+    this.frameSize = frameSize;
+    this.overlap = overlap;
+    OnsetDetector onsetDetector = new OnsetDetector(frameSize);
+    double[] frameData = new double[frameSize];
+    for (Frame frame : frames) {
+      this.frames.add(frame);
+      frame.getReal(0, frameData, 0, frameSize);
+      onsetDetector.addFrame(frameData);
     }
-    if (offset > 0) {
-      logger.fine("Returning " + offset + " bytes read into buf");
-      return offset;
-    } else {
-      logger.fine("Returning EOF");
-      return -1;
+    onsetDetector.finish();
+    onsets = onsetDetector.getOnsets();
+    frameLocks = new FrameLocks(frames.length);
+    frameSummaries = new FrameSummaryIndex(this);
+    addClipDataChangeListener(onsetChangeHandler);
+  }
+
+  /**
+   * Creates a view of the given frames of another clip. The frames themselves are shared, not
+   * copied. See {@link ClipView}.
+   */
+  Clip(String name, Clip parent, int firstFrame, int nFrames) {
+    this.name = name;
+    this.frameSize = parent.frameSize;
+    this.overlap = parent.overlap;
+    this.spectralScale = parent.spectralScale;
+    frames.addAll(parent.frames.subList(firstFrame, firstFrame + nFrames));
+    frameLocks = new FrameLocks(parent.frameLocks, firstFrame);
+
+    // the onsets and summaries are found the first time they're asked for
+    addClipDataChangeListener(onsetChangeHandler);
+  }
+
+  /**
+   * Reads all the 16-bit big-endian samples from the given input stream.
+   */
+  private static short[] readSamples(InputStream in) throws IOException {
+    short[] samples = new short[64 * 1024];
+    int count = 0;
+    byte[] buf = new byte[64 * 1024];
+    int n;
+    int hi = 0;
+    boolean haveHi = false;
+    while ((n = in.read(buf)) != -1) {
+      for (int i = 0; i < n; i++) {
+        if (!haveHi) {
+          hi = buf[i]; // need sign extension
+          haveHi = true;
+          continue;
+        }
+        if (count == samples.length) {
+          samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = (short) ((hi << 8) | (buf[i] & 0xff));
+        haveHi = false;
+      }
     }
+    return Arrays.copyOf(samples, count);
   }
 
   /**
@@ -208,12 +323,112 @@ public class Clip {
    * 
    * @param i The frame number--frame numbering starts with 0.
    * @return The <i>i</i>th frame. The returned frame is mutable; modifying its data permanently
-   *         alters the acoustic qualities of this clip.
+   *         alters the acoustic qualities of this clip. Code that modifies the frame, or reads it
+   *         while other threads might be modifying it, should lock it through
+   *         {@link #getFrameLocks()}.
    */
   public Frame getFrame(int i) {
     return frames.get(i);
   }
 
+  /**
+   * Returns the locks that guard this clip's frame data. Playback, rendering and other background
+   * readers take read locks on the frames they read; edits take write locks on the frames they
+   * modify.
+   */
+  public FrameLocks getFrameLocks() {
+    return frameLocks;
+  }
+
+  /**
+   * Returns the frame numbers of the note onsets in this clip, in ascending order. The onsets are
+   * found while the clip is read; if parts of the clip have changed since, the onsets around
+   * those parts are found again first.
+   * 
+   * @see OnsetDetector
+   */
+  public int[] getOnsets() {
+    synchronized (onsetsLock) {
+      BitSet stale;
+      synchronized (onsetsDirty) {
+        stale = (BitSet) onsetsDirty.clone();
+        onsetsDirty.clear();
+      }
+      if (onsets == null) {
+        onsets = OnsetDetector.detect(this);
+      } else {
+        int start = stale.nextSetBit(0);
+        while (start >= 0) {
+          int end = stale.nextClearBit(start);
+          onsets = OnsetDetector.update(this, onsets, start, end);
+          start = stale.nextSetBit(end);
+        }
+      }
+      return onsets.clone();
+    }
+  }
+
+  /**
+   * Returns the fundamental frequency and note of every frame of this clip, brought up to date
+   * first. The whole clip is tracked the first time; after that, only frames that have changed
+   * since the last refresh are tracked again. Don't call this on the event dispatch thread; see
+   * {@link #getCachedPitchTrack()}.
+   */
+  public PitchTrack getPitchTrack() {
+    PitchTrack track = getCachedPitchTrack();
+    track.refresh();
+    return track;
+  }
+
+  /**
+   * Returns the pitch track as it stands, without tracking anything, so this is cheap enough to
+   * call while painting. Frames that haven't been tracked yet are unvoiced, and frames that have
+   * changed keep their old pitch, until something calls {@link PitchTrack#refresh()}.
+   */
+  public synchronized PitchTrack getCachedPitchTrack() {
+    if (pitchTrack == null) {
+      pitchTrack = new PitchTrack(this);
+    }
+    return pitchTrack;
+  }
+
+  /**
+   * Returns the energy, peak, centroid and flatness of every frame of this clip.
+   */
+  public synchronized FrameSummaryIndex getFrameSummaries() {
+    if (frameSummaries == null) {
+      frameSummaries = new FrameSummaryIndex(this);
+    }
+    return frameSummaries;
+  }
+
+  /**
+   * Returns the part of this clip that tools should confine their edits to, in frames (x) and
+   * frequency indexes (y). For a clip, this is the whole clip; a {@link ClipView} can be limited
+   * to a band of frequencies.
+   */
+  public Rectangle getBounds() {
+    return new Rectangle(0, 0, getFrameCount(), getFrameFreqSamples());
+  }
+
+  /**
+   * Returns the sum, mean and RMS of the cells in the given region. The answer comes from an index
+   * of partial sums that is kept up to date as the clip changes, in time that doesn't depend on
+   * the size of the region, so this is cheap enough to call as often as the user moves the mouse.
+   * 
+   * @param region The region to measure. Parts of it outside the clip are ignored.
+   */
+  public RegionEnergy getEnergy(Rectangle region) {
+    EnergyIndex index;
+    synchronized (this) {
+      if (energyIndex == null) {
+        energyIndex = new EnergyIndex(this);
+      }
+      index = energyIndex;
+    }
+    return index.measure(region);
+  }
+
   /**
    * Returns the number of frames that overlap to produce any given time sample. An overlap of at
    * least 2 is required in order to produce a click-free result after modifying the specral
@@ -288,8 +503,13 @@ public class Clip {
       public int read() throws IOException {
         if (overlapBuffer.needsNewFrame()) {
           if (nextFrame < frames.size()) {
-            Frame f = frames.get(nextFrame++);
-            overlapBuffer.addFrame(f.asTimeData());
+            int frameNum = nextFrame++;
+            frameLocks.lockRead(frameNum, 1);
+            try {
+              overlapBuffer.addFrame(frames.get(frameNum).asTimeData());
+            } finally {
+              frameLocks.unlockRead(frameNum, 1);
+            }
           } else {
             overlapBuffer.addEmptyFrame();
             emptyFrameCount++;
@@ -344,9 +564,23 @@ public class Clip {
       throw new IllegalStateException("No edit is in progress");
     }
     currentEdit.captureNewData();
-    undoEventSupport.postEdit(currentEdit);
-    regionChanged(currentEdit.getRegion());
+    // announce the change first, so listeners to the edit can count on having been told about it
+    ClipDataEdit edit = currentEdit;
     currentEdit = null;
+    regionChanged(edit.getRegion());
+    undoEventSupport.postEdit(edit);
+  }
+
+  /**
+   * Posts an edit that was made to this clip's data without going through
+   * {@link #beginEdit(Rectangle, String)} and {@link #endEdit()}, such as a {@link StrokeEdit}, to
+   * the undo listeners. Listeners are not notified of data changes; the code that made the changes
+   * is expected to have called {@link #regionChanged(Rectangle)} as it went.
+   * 
+   * @param edit The edit to post.
+   */
+  public void postEdit(UndoableEdit edit) {
+    undoEventSupport.postEdit(edit);
   }
 
   /**
@@ -361,7 +595,10 @@ public class Clip {
    *        make sense as a sentence if the word "Undo" or "Redo" is prepended.
    */
   public void beginCompoundEdit(String presentationName) {
-    undoEventSupport.beginUpdate(); // TODO subclass support class and grab presentation name
+    if (undoEventSupport.getUpdateLevel() == 0) {
+      undoEventSupport.compoundEditName = presentationName;
+    }
+    undoEventSupport.beginUpdate();
   }
 
   /**
@@ -391,22 +628,42 @@ public class Clip {
 
   // --------------------- ClipDataChangeEvent crap -------------------------
 
-  private final List<ClipDataChangeListener> clipDataChangeListeners =
-      new ArrayList<ClipDataChangeListener>();
+  private final ClipDataChangeBus changeBus = new ClipDataChangeBus(this);
 
+  /**
+   * Adds a listener that is notified of changes on the thread that made them. Prefer
+   * {@link #addClipDataChangeListener(ClipDataChangeListener, Executor)} for anything that isn't
+   * trivially cheap.
+   */
   public void addClipDataChangeListener(ClipDataChangeListener l) {
-    clipDataChangeListeners.add(l);
+    changeBus.addListener(l, ClipDataChangeBus.DIRECT);
+  }
+
+  /**
+   * Adds a listener that is notified of changes on the given executor. Changes that pile up while
+   * the listener is waiting for the executor are merged before they are delivered.
+   * 
+   * @param l The listener to add.
+   * @param executor Where to deliver events, for example
+   *        {@link ClipDataChangeBus#EVENT_DISPATCH_THREAD} or {@link ClipDataChangeBus#BACKGROUND}.
+   */
+  public void addClipDataChangeListener(ClipDataChangeListener l, Executor executor) {
+    changeBus.addListener(l, executor);
   }
 
   public void removeClipDataChangeListener(ClipDataChangeListener l) {
-    clipDataChangeListeners.remove(l);
+    changeBus.removeListener(l);
+  }
+
+  /**
+   * Returns the sequence number of the most recent change to this clip's data.
+   */
+  public long getLastChangeSequence() {
+    return changeBus.getLastSequence();
   }
 
   private void fireClipDataChangeEvent(Rectangle region) {
-    ClipDataChangeEvent e = new ClipDataChangeEvent(this, region);
-    for (int i = clipDataChangeListeners.size() - 1; i >= 0; i--) {
-      clipDataChangeListeners.get(i).clipDataChanged(e);
-    }
+    changeBus.fire(region);
   }
 
 
@@ -424,6 +681,41 @@ public class Clip {
     undoEventSupport.removeUndoableEditListener(l);
   }
 
+  /**
+   * Undo support that groups compound edits into {@link ClipCompoundEdit}s, so they carry their
+   * presentation name and can report their memory use to the undo manager.
+   */
+  private static class ClipEditSupport extends UndoableEditSupport {
+
+    /**
+     * The presentation name for the next outermost compound edit.
+     */
+    String compoundEditName;
+
+    @Override
+    protected CompoundEdit createCompoundEdit() {
+      return new ClipCompoundEdit(compoundEditName);
+    }
+  }
+
+  /**
+   * Returns the name of this clip, which is usually the file it was read from.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Separates this clip into steady tones and percussive hits, returning the given one of the two
+   * as a new clip. This clip isn't modified. The new clip can be played, saved and edited like any
+   * other, and it adds up with the other layer to give this clip back.
+   *
+   * @see HarmonicPercussiveSeparator
+   */
+  public Clip extractLayer(HarmonicPercussiveSeparator.Layer layer) {
+    return new HarmonicPercussiveSeparator().separate(this, layer);
+  }
+
   public double getSamplingRate() {
     return AUDIO_FORMAT.getSampleRate();
   }
@@ -431,9 +723,11 @@ public class Clip {
   /**
    * Creates a new Clip instance based on the given range of frames in the current clip.
    * <p>
-   * Currently, the audio data of the sub clip is independent of the clip it was obtained from. This
-   * is not really a desirable situation (it would be better if the underlying data were shared), so
-   * don't count on this behaviour!
+   * If this clip hasn't been changed since it was read, the sub clip is analysed straight from the
+   * samples it was read from. Otherwise, the range is synthesized back into samples first, which
+   * takes longer and loses a little precision. Either way, the audio data of the sub clip is
+   * independent of the clip it was obtained from. To work on part of this clip at its own
+   * resolution without copying it, use {@link #view(Rectangle)} instead.
    * 
    * @param startFrame The first frame of this clip that should appear in the subclip
    * @param nFrames The number of frames of this clip that should appear in the subclip.
@@ -445,10 +739,22 @@ public class Clip {
    * @return
    */
   public Clip subClip(int startFrame, int nFrames, int newFrameSize, int newOverlap) {
+    // the samples covered by the given frames
+    int hop = frameSize / overlap;
+    int span = (nFrames - 1) * hop + frameSize;
+
+    short[] samples = getSourceSamples();
+    if (samples != null) {
+      int from = Math.min(samples.length, startFrame * hop);
+      int to = (int) Math.min(samples.length, (long) from + span);
+      return new Clip("Part of " + name, Arrays.copyOfRange(samples, from, to), newFrameSize,
+          newOverlap);
+    }
+
     InputStream in = null;
     try {
       // decode existing
-      in = new BufferedInputStream(getAudio(startFrame * frameSize, nFrames * frameSize));
+      in = new BufferedInputStream(getAudio(startFrame * frameSize, span));
 
       // create new clip with new settings
       Clip subClip = new Clip("Part of " + name, in, newFrameSize, newOverlap);
@@ -467,4 +773,27 @@ public class Clip {
     }
   }
 
+  /**
+   * Returns a view of the given region of this clip. The view shares this clip's frames, so it
+   * costs next to nothing to make no matter how large the region is, and changes made through
+   * either one show up in both. See {@link ClipView}.
+   *
+   * @param region The frames (x and width) the view covers, and the frequency indexes (y and
+   *        height) its bounds are limited to.
+   */
+  public ClipView view(Rectangle region) {
+    return new ClipView(this, region);
+  }
+
+  /**
+   * Returns the samples this clip was read from, or null if it has changed since (in which case
+   * they're discarded) or wasn't read from samples. The array must not be modified.
+   */
+  private synchronized short[] getSourceSamples() {
+    if (pcm != null && getLastChangeSequence() != pcmSequence) {
+      pcm = null;
+    }
+    return pcm;
+  }
+
 }
@@ -0,0 +1,98 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.io.IOException;
+import javax.swing.UIManager;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * The compound edit that a {@link Clip} posts for the edits made between
+ * {@link Clip#beginCompoundEdit(String)} and {@link Clip#endCompoundEdit()}. It carries the
+ * presentation name given to beginCompoundEdit, and reports and spills the data of the edits it
+ * contains.
+ */
+class ClipCompoundEdit extends CompoundEdit implements SpillableEdit {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String presentationName;
+
+  ClipCompoundEdit(String presentationName) {
+    this.presentationName = presentationName;
+  }
+
+  @Override
+  public String getPresentationName() {
+    return presentationName != null ? presentationName : super.getPresentationName();
+  }
+
+  @Override
+  public String getUndoPresentationName() {
+    if (presentationName == null) {
+      return super.getUndoPresentationName();
+    }
+    return UIManager.getString("AbstractUndoableEdit.undoText") + " " + presentationName;
+  }
+
+  @Override
+  public String getRedoPresentationName() {
+    if (presentationName == null) {
+      return super.getRedoPresentationName();
+    }
+    return UIManager.getString("AbstractUndoableEdit.redoText") + " " + presentationName;
+  }
+
+  @Override
+  public long getMemoryUsage() {
+    long total = 0;
+    for (UndoableEdit e : edits) {
+      if (e instanceof SpillableEdit) {
+        total += ((SpillableEdit) e).getMemoryUsage();
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public long getSpilledSize() {
+    long total = 0;
+    for (UndoableEdit e : edits) {
+      if (e instanceof SpillableEdit) {
+        total += ((SpillableEdit) e).getSpilledSize();
+      }
+    }
+    return total;
+  }
+
+  @Override
+  public void spill(SnapshotSpillFile file) throws IOException {
+    for (UndoableEdit e : edits) {
+      if (e instanceof SpillableEdit) {
+        ((SpillableEdit) e).spill(file);
+      }
+    }
+  }
+
+  @Override
+  public void moveSpilledData(SnapshotSpillFile file) throws IOException {
+    for (UndoableEdit e : edits) {
+      if (e instanceof SpillableEdit) {
+        ((SpillableEdit) e).moveSpilledData(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Delivers {@link ClipDataChangeEvent}s from a clip to its listeners. Every listener is registered
+ * with the executor its events should be delivered on: {@link #DIRECT} for the thread that made
+ * the change (the original behaviour), {@link #EVENT_DISPATCH_THREAD} for GUI components, or
+ * {@link #BACKGROUND} (or any other executor) for caches and analysis that shouldn't hold up
+ * editing.
+ * <p>
+ * Every change is stamped with a sequence number. Changes queue up per listener until its executor
+ * gets around to them; a listener that falls behind receives the queued regions merged into a few
+ * rectangles (see {@link DirtyRegionSet}), with the event covering the whole range of sequence
+ * numbers that were merged. Each listener gets its events one at a time and in order, even on a
+ * multi-threaded executor.
+ * <p>
+ * Firing changes and adding or removing listeners are safe on any thread.
+ */
+public class ClipDataChangeBus {
+
+  private static final Logger logger = Logger.getLogger(ClipDataChangeBus.class.getName());
+
+  /**
+   * Delivers events before {@link #fire(Rectangle)} returns, so the thread that made a change sees
+   * its effect on the listener. Events are delivered on the thread that fired them, or on another
+   * thread that fired at the same time and is already delivering to the listener; either way the
+   * firing thread waits until its event has been delivered. A listener that throws has the
+   * exception passed on to the thread delivering to it; events that weren't delivered because of
+   * it go out with the next change.
+   */
+  public static final Executor DIRECT = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  /**
+   * Delivers events on the Swing event dispatch thread. Delivery is always deferred, even when the
+   * change was made on the event dispatch thread.
+   */
+  public static final Executor EVENT_DISPATCH_THREAD = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      SwingUtilities.invokeLater(command);
+    }
+  };
+
+  /**
+   * Delivers events on the shared fork/join pool.
+   */
+  public static final Executor BACKGROUND = ForkJoinPool.commonPool();
+
+  private final Clip clip;
+
+  private final AtomicLong lastSequence = new AtomicLong();
+
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+  ClipDataChangeBus(Clip clip) {
+    this.clip = clip;
+  }
+
+  void addListener(ClipDataChangeListener l, Executor executor) {
+    subscriptions.add(new Subscription(l, executor));
+  }
+
+  void removeListener(ClipDataChangeListener l) {
+    for (Subscription s : subscriptions) {
+      if (s.listener == l) {
+        s.removed = true;
+        subscriptions.remove(s);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the sequence number of the most recent change.
+   */
+  long getLastSequence() {
+    return lastSequence.get();
+  }
+
+  /**
+   * Records a change to the given region and schedules delivery to every listener.
+   *
+   * @return The sequence number given to this change.
+   */
+  long fire(Rectangle region) {
+    if (region.width == 0 || region.height == 0) {
+      throw new IllegalArgumentException(
+          "Region has 0 area (width=" + region.width + ", height=" + region.height + ")");
+    }
+    long seq = lastSequence.incrementAndGet();
+    RuntimeException failure = null;
+    for (int i = subscriptions.size() - 1; i >= 0; i--) {
+      try {
+        subscriptions.get(i).post(region, seq);
+      } catch (RuntimeException ex) {
+        // a direct listener failed; the others still have to hear about the change
+        if (failure == null) {
+          failure = ex;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return seq;
+  }
+
+  /**
+   * One listener's registration, along with the changes that are waiting to be delivered to it.
+   */
+  private class Subscription implements Runnable {
+    final ClipDataChangeListener listener;
+    final Executor executor;
+    volatile boolean removed;
+
+    /**
+     * Held while delivering to a {@link #DIRECT} listener, so that only one thread delivers to it
+     * at a time and every firing thread waits for its own event to be delivered.
+     */
+    private final Object deliveryLock = new Object();
+
+    // the following are guarded by this
+    private final DirtyRegionSet pending = new DirtyRegionSet();
+    private long firstPendingSeq;
+    private long lastPendingSeq;
+    private boolean scheduled;
+
+    Subscription(ClipDataChangeListener listener, Executor executor) {
+      this.listener = listener;
+      this.executor = executor;
+    }
+
+    void post(Rectangle region, long seq) {
+      synchronized (this) {
+        if (pending.isEmpty()) {
+          firstPendingSeq = seq;
+        }
+        pending.add(region);
+        lastPendingSeq = seq;
+        if (executor != DIRECT) {
+          if (scheduled) {
+            return;
+          }
+          scheduled = true;
+        }
+      }
+      if (executor != DIRECT) {
+        executor.execute(this);
+      } else if (!Thread.holdsLock(deliveryLock)) {
+        synchronized (deliveryLock) {
+          run();
+        }
+      }
+      // otherwise the listener made this change itself, and the loop delivering to it will pick
+      // it up once the listener returns
+    }
+
+    /**
+     * Delivers everything that's pending, including changes that arrive while delivering, then
+     * returns. Only one thread runs this at a time for any given subscription: the executor's
+     * task, or for a direct listener, whichever firing thread holds the delivery lock.
+     */
+    @Override
+    public void run() {
+      for (;;) {
+        List<Rectangle> regions;
+        long firstSeq;
+        long lastSeq;
+        synchronized (this) {
+          if (pending.isEmpty() || removed) {
+            scheduled = false;
+            return;
+          }
+          regions = pending.drain();
+          firstSeq = firstPendingSeq;
+          lastSeq = lastPendingSeq;
+        }
+        if (logger.isLoggable(Level.FINEST) && lastSeq > firstSeq) {
+          logger.finest(String.format("Merged changes %d..%d into %d regions for %s", firstSeq,
+              lastSeq, regions.size(), listener));
+        }
+        for (int i = 0; i < regions.size(); i++) {
+          try {
+            listener.clipDataChanged(
+                new ClipDataChangeEvent(clip, regions.get(i), firstSeq, lastSeq));
+          } catch (RuntimeException ex) {
+            if (executor == DIRECT) {
+              requeue(regions.subList(i + 1, regions.size()), firstSeq, lastSeq);
+              throw ex;
+            }
+            logger.log(Level.WARNING, "Clip data change listener failed", ex);
+          }
+        }
+      }
+    }
+
+    /**
+     * Puts regions that were drained but not delivered back in front of whatever has been posted
+     * since.
+     */
+    private synchronized void requeue(List<Rectangle> regions, long firstSeq, long lastSeq) {
+      if (regions.isEmpty()) {
+        return;
+      }
+      if (pending.isEmpty()) {
+        lastPendingSeq = lastSeq;
+      }
+      firstPendingSeq = firstSeq;
+      for (Rectangle r : regions) {
+        pending.add(r);
+      }
+    }
+  }
+}
@@ -18,20 +18,35 @@ import java.awt.Rectangle;
 
 /**
  * The ClipDataChangeEvent is notification of a change in data contents for one or more frames of a
- * clip.
+ * clip. Every change to a clip gets a sequence number; when several changes were merged into one
+ * event before delivery, the event covers the whole range of their sequence numbers.
  */
 public class ClipDataChangeEvent {
 
   private final Clip source;
   private final Rectangle region;
+  private final long firstSequence;
+  private final long lastSequence;
 
 
   /**
    * @param region
    */
   public ClipDataChangeEvent(Clip source, Rectangle region) {
+    this(source, region, 0L, 0L);
+  }
+
+  /**
+   * @param region The region that changed.
+   * @param firstSequence The sequence number of the earliest change this event describes.
+   * @param lastSequence The sequence number of the latest change this event describes.
+   */
+  public ClipDataChangeEvent(Clip source, Rectangle region, long firstSequence,
+      long lastSequence) {
     this.source = source;
     this.region = region;
+    this.firstSequence = firstSequence;
+    this.lastSequence = lastSequence;
     if (region.width == 0 || region.height == 0) {
       throw new IllegalArgumentException(
           "Region has 0 area (width=" + region.width + ", height=" + region.height + ")");
@@ -52,8 +67,23 @@ public class ClipDataChangeEvent {
     return new Rectangle(region);
   }
 
+  /**
+   * Returns the sequence number of the earliest change this event describes.
+   */
+  public long getFirstSequence() {
+    return firstSequence;
+  }
+
+  /**
+   * Returns the sequence number of the latest change this event describes. Events delivered to any
+   * one listener always have increasing sequence numbers.
+   */
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
   @Override
   public String toString() {
-    return "Clip Data Change @ " + region;
+    return "Clip Data Change #" + firstSequence + ".." + lastSequence + " @ " + region;
   }
 }
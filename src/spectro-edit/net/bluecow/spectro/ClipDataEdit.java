@@ -15,7 +15,8 @@
 package net.bluecow.spectro;
 
 import java.awt.Rectangle;
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.CannotRedoException;
@@ -25,8 +26,25 @@ import javax.swing.undo.UndoableEdit;
 /**
  * Captures the necessary state and behaviour to undo and redo some change to a rectangular region
  * of spectral data.
+ * <p>
+ * Snapshots don't copy any data: they hold references to the copy-on-write {@link FrameBlock}s
+ * that cover the region, which the clip's frames copy before modifying. Beginning an edit therefore
+ * costs one reference per block rather than a copy of every cell, blocks the edit doesn't touch are
+ * shared between the before and after snapshots and the live clip, and undo puts whole blocks back
+ * by reference.
+ * <p>
+ * The before blocks that the edit did change are held by nothing but the snapshot once the frames
+ * have copied them, so when the new data is captured they are compressed by {@link SnapshotCodec}
+ * relative to the corresponding after blocks, without losing any precision. Cells the edit left
+ * alone within a changed block cost a bit each, and cells whose gain it changed a few bits each;
+ * cells it replaced with unrelated values (such as zeros) still cost about 8 bytes each, because
+ * their exact old values have to be kept somewhere.
+ * <p>
+ * When the undo history outgrows its memory budget, the snapshots can be moved out of the heap with
+ * {@link #spill(SnapshotSpillFile)}. The after snapshot is then compressed on its own, the before
+ * snapshot relative to it as above, and both are read back from the file on every undo or redo.
  */
-public class ClipDataEdit extends AbstractUndoableEdit {
+public class ClipDataEdit extends AbstractUndoableEdit implements SpillableEdit {
 
   /**
    * 
@@ -38,8 +56,45 @@ public class ClipDataEdit extends AbstractUndoableEdit {
   private final Clip clip;
   private final int firstFrame;
   private final int firstFreqIndex;
-  private double[][] oldData;
-  private double[][] newData;
+  private final int nFrames;
+  private final int nFreqs;
+
+  /**
+   * The index of the first block of each frame that the region touches.
+   */
+  private final int firstBlock;
+
+  /**
+   * The number of blocks of each frame that the region touches.
+   */
+  private final int nBlocks;
+
+  /**
+   * The blocks from before the edit, indexed by [frame][block], or null if they were spilled.
+   * Entries are null where the block has been compressed into {@link #oldEncoded}.
+   */
+  private FrameBlock[][] oldBlocks;
+
+  /**
+   * The compressed blocks from before the edit, indexed by [frame][block], with null for frames
+   * (or blocks) that aren't compressed; null if none are. Each is encoded by
+   * {@link SnapshotCodec#encodeDelta(double[], double[])} relative to the after block.
+   */
+  private int[][][] oldEncoded;
+
+  /**
+   * The blocks from after the edit, or null if they haven't been captured yet or were spilled.
+   */
+  private FrameBlock[][] newBlocks;
+
+  /**
+   * The file the snapshots were spilled to, or null if they're on the heap.
+   */
+  private SnapshotSpillFile spillFile;
+  private long oldOffset;
+  private int oldLength;
+  private long newOffset;
+  private int newLength;
 
   /**
    * @param clip The clip to capture data from and apply undo/redo operations to.
@@ -59,8 +114,11 @@ public class ClipDataEdit extends AbstractUndoableEdit {
     this.clip = clip;
     this.firstFrame = firstFrame;
     this.firstFreqIndex = firstFreqIndex;
-    oldData = new double[nFrames][nFreqs];
-    capture(oldData);
+    this.nFrames = nFrames;
+    this.nFreqs = nFreqs;
+    firstBlock = firstFreqIndex >> FrameBlock.SHIFT;
+    nBlocks = ((firstFreqIndex + nFreqs - 1) >> FrameBlock.SHIFT) - firstBlock + 1;
+    oldBlocks = capture();
   }
 
   /**
@@ -80,11 +138,19 @@ public class ClipDataEdit extends AbstractUndoableEdit {
     if (anEdit instanceof ClipDataEdit) {
       ClipDataEdit other = (ClipDataEdit) anEdit;
       if (other.firstFrame == firstFrame && other.firstFreqIndex == firstFreqIndex
-          && other.oldData.length == oldData.length && other.oldData[0].length == oldData[0].length
-          && other.clip == clip) {
+          && other.nFrames == nFrames && other.nFreqs == nFreqs && other.clip == clip
+          && oldBlocks != null && other.oldBlocks != null) {
         replace = true;
-        oldData = other.oldData;
+        release(oldBlocks);
+        // the other edit's compressed blocks are relative to its own after blocks
+        oldBlocks = other.decodeOldBlocks();
+        oldEncoded = null;
+        other.oldBlocks = null;
+        other.oldEncoded = null;
         other.die();
+        if (newBlocks != null) {
+          compressOldBlocks();
+        }
       }
     }
     logger.fine("Replace edit? " + replace);
@@ -92,61 +158,250 @@ public class ClipDataEdit extends AbstractUndoableEdit {
   }
 
   /**
-   * Copies the current contents of the same clip region that was captured during the constructor
+   * Captures the current contents of the same clip region that was captured during the constructor
    * invocation. This will be the REDO data.
    */
   public void captureNewData() {
-    if (newData != null) {
+    if (newBlocks != null || spillFile != null) {
       throw new IllegalStateException("Already captured new data");
     }
-    newData = new double[oldData.length][oldData[0].length];
-    capture(newData);
-    if (Arrays.deepEquals(oldData, newData)) {
-      logger.fine("Captured new data == old data!");
+    newBlocks = capture();
+    if (logger.isLoggable(Level.FINE)) {
+      int changed = 0;
+      for (int i = 0; i < nFrames; i++) {
+        for (int j = 0; j < nBlocks; j++) {
+          if (oldBlocks[i][j] != newBlocks[i][j]) {
+            changed++;
+          }
+        }
+      }
+      if (changed == 0) {
+        logger.fine("Captured new data == old data!");
+      }
+      logger.fine(String.format("Captured %d blocks, %d changed", nFrames * nBlocks, changed));
+    }
+    compressOldBlocks();
+  }
+
+  /**
+   * Compresses the before blocks that differ from the after blocks and that nobody else holds.
+   */
+  private void compressOldBlocks() {
+    for (int i = 0; i < nFrames; i++) {
+      for (int j = 0; j < nBlocks; j++) {
+        FrameBlock old = oldBlocks[i][j];
+        if (old == null || old == newBlocks[i][j] || old.getRefCount() > 1) {
+          continue;
+        }
+        if (oldEncoded == null) {
+          oldEncoded = new int[nFrames][][];
+        }
+        if (oldEncoded[i] == null) {
+          oldEncoded[i] = new int[nBlocks][];
+        }
+        oldEncoded[i][j] = SnapshotCodec.encodeDelta(old.data, newBlocks[i][j].data);
+        old.release();
+        oldBlocks[i][j] = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the cells of one of the before blocks, decoding it if it was compressed. The returned
+   * array must not be modified.
+   *
+   * @param i The frame, relative to the start of the region.
+   * @param j The block, relative to {@link #firstBlock}.
+   */
+  private double[] oldBlockData(int i, int j) {
+    FrameBlock b = oldBlocks[i][j];
+    if (b != null) {
+      return b.data;
+    }
+    double[] reference = newBlocks[i][j].data;
+    double[] data = new double[reference.length];
+    SnapshotCodec.decodeDelta(oldEncoded[i][j], reference, data);
+    return data;
+  }
+
+  /**
+   * Returns the blocks from before the edit. Compressed blocks are decoded into new blocks, which
+   * hold one reference that belongs to the caller; pass the result to
+   * {@link #releaseDecoded(FrameBlock[][])} to drop those.
+   */
+  private FrameBlock[][] decodeOldBlocks() {
+    if (oldEncoded == null) {
+      return oldBlocks;
+    }
+    FrameBlock[][] blocks = new FrameBlock[nFrames][];
+    for (int i = 0; i < nFrames; i++) {
+      blocks[i] = oldBlocks[i].clone();
+      for (int j = 0; j < nBlocks; j++) {
+        if (blocks[i][j] == null) {
+          blocks[i][j] = new FrameBlock(oldBlockData(i, j));
+        }
+      }
+    }
+    return blocks;
+  }
+
+  /**
+   * Drops the references to the decoded blocks in the result of {@link #decodeOldBlocks()}.
+   */
+  private void releaseDecoded(FrameBlock[][] blocks) {
+    if (blocks == oldBlocks) {
+      return;
+    }
+    for (int i = 0; i < nFrames; i++) {
+      for (int j = 0; j < nBlocks; j++) {
+        if (oldBlocks[i][j] == null) {
+          blocks[i][j].release();
+        }
+      }
     }
   }
 
   @Override
   public void undo() throws CannotUndoException {
+    double[] cells = null;
+    if (oldBlocks == null) {
+      try {
+        cells = decodeOldData();
+      } catch (IOException ex) {
+        logger.log(Level.SEVERE, "Couldn't reload undo data", ex);
+        throw new CannotUndoException();
+      }
+    }
     super.undo();
     logger.fine("Undoing edit at " + getRegion());
-    apply(oldData);
+    long start = System.nanoTime();
+    if (cells == null) {
+      FrameBlock[][] blocks = decodeOldBlocks();
+      restore(blocks);
+      releaseDecoded(blocks);
+    } else {
+      apply(cells);
+    }
+    logger.fine(String.format("Undo took %.3fms", (System.nanoTime() - start) / 1e6));
     clip.regionChanged(getRegion());
   }
 
   @Override
   public void redo() throws CannotRedoException {
+    double[] cells = null;
+    if (newBlocks == null) {
+      try {
+        cells = decodeNewData();
+      } catch (IOException ex) {
+        logger.log(Level.SEVERE, "Couldn't reload redo data", ex);
+        throw new CannotRedoException();
+      }
+    }
     super.redo();
     logger.fine("Redoing edit at " + getRegion());
-    apply(newData);
+    long start = System.nanoTime();
+    if (cells == null) {
+      restore(newBlocks);
+    } else {
+      apply(cells);
+    }
+    logger.fine(String.format("Redo took %.3fms", (System.nanoTime() - start) / 1e6));
     clip.regionChanged(getRegion());
   }
 
   /**
-   * Applies the given data into the frames of {@link #clip}.
-   * 
-   * @param data The data to copy into clip.
+   * Takes references to the blocks covering this edit's region.
+   */
+  private FrameBlock[][] capture() {
+    FrameBlock[][] blocks = new FrameBlock[nFrames][nBlocks];
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(firstFrame, nFrames);
+    try {
+      for (int i = 0; i < nFrames; i++) {
+        clip.getFrame(i + firstFrame).shareBlocks(firstBlock, blocks[i]);
+      }
+    } finally {
+      locks.unlockRead(firstFrame, nFrames);
+    }
+    return blocks;
+  }
+
+  /**
+   * Puts the region's data back from the given blocks.
    */
-  private void apply(double[][] data) {
-    for (int i = 0; i < data.length; i++) {
-      Frame f = clip.getFrame(i + firstFrame);
-      for (int j = 0; j < data[0].length; j++) {
-        f.setReal(j + firstFreqIndex, data[i][j]);
+  private void restore(FrameBlock[][] blocks) {
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockWrite(firstFrame, nFrames);
+    try {
+      for (int i = 0; i < nFrames; i++) {
+        clip.getFrame(i + firstFrame).restoreBlocks(firstBlock, blocks[i], firstFreqIndex,
+            firstFreqIndex + nFreqs);
       }
+    } finally {
+      locks.unlockWrite(firstFrame, nFrames);
     }
   }
 
   /**
-   * Copies data from the clip into the given arrays.
+   * Drops this edit's references to the given blocks.
+   */
+  private static void release(FrameBlock[][] blocks) {
+    if (blocks == null) {
+      return;
+    }
+    for (FrameBlock[] frameBlocks : blocks) {
+      for (FrameBlock b : frameBlocks) {
+        if (b != null) {
+          b.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Extracts the region's cells from the given blocks, frame by frame.
+   */
+  private double[] toCells(FrameBlock[][] blocks) {
+    double[] cells = new double[nFrames * nFreqs];
+    int k = 0;
+    for (int i = 0; i < nFrames; i++) {
+      for (int j = firstFreqIndex; j < firstFreqIndex + nFreqs; j++) {
+        cells[k++] = blocks[i][(j >> FrameBlock.SHIFT) - firstBlock].data[j & FrameBlock.MASK];
+      }
+    }
+    return cells;
+  }
+
+  private double[] decodeOldData() throws IOException {
+    double[] cells = new double[nFrames * nFreqs];
+    SnapshotCodec.decodeDelta(spillFile.read(oldOffset, oldLength), decodeNewData(), cells);
+    return cells;
+  }
+
+  private double[] decodeNewData() throws IOException {
+    double[] cells = new double[nFrames * nFreqs];
+    SnapshotCodec.decode(spillFile.read(newOffset, newLength), cells);
+    return cells;
+  }
+
+  /**
+   * Applies the given data into the frames of {@link #clip}.
    * 
-   * @param data The arrays to store the clip data into.
+   * @param cells The cells to copy into clip, frame by frame.
    */
-  private void capture(double[][] data) {
-    for (int i = 0; i < data.length; i++) {
-      Frame f = clip.getFrame(i + firstFrame);
-      for (int j = 0; j < data[0].length; j++) {
-        data[i][j] = f.getReal(j + firstFreqIndex);
+  private void apply(double[] cells) {
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockWrite(firstFrame, nFrames);
+    try {
+      int k = 0;
+      for (int i = 0; i < nFrames; i++) {
+        Frame f = clip.getFrame(i + firstFrame);
+        for (int j = 0; j < nFreqs; j++) {
+          f.setReal(j + firstFreqIndex, cells[k++]);
+        }
       }
+    } finally {
+      locks.unlockWrite(firstFrame, nFrames);
     }
   }
 
@@ -156,7 +411,7 @@ public class ClipDataEdit extends AbstractUndoableEdit {
    * @return A rectangle with (x, y, w, h) == (firstFrame, firstFreqIndex, nFrames, nFreqs).
    */
   public Rectangle getRegion() {
-    return new Rectangle(firstFrame, firstFreqIndex, oldData.length, oldData[0].length);
+    return new Rectangle(firstFrame, firstFreqIndex, nFrames, nFreqs);
   }
 
   /**
@@ -168,22 +423,159 @@ public class ClipDataEdit extends AbstractUndoableEdit {
     if (r == null) {
       return false;
     } else {
-      return r.x == firstFrame && r.y == firstFreqIndex && r.width == oldData.length
-          && r.height == oldData[0].length;
+      return r.x == firstFrame && r.y == firstFreqIndex && r.width == nFrames
+          && r.height == nFreqs;
     }
   }
 
   /**
-   * Returns the old data. Modifications to the returned array will affect the stored undo data, so
-   * client code should avoid modifying it.
+   * Returns the old data, copied into a new array indexed by [frame][frequency].
    */
   public double[][] getOldData() {
-    return oldData;
+    double[][] data = new double[nFrames][nFreqs];
+    if (oldBlocks != null) {
+      for (int i = 0; i < nFrames; i++) {
+        getOldData(i + firstFrame, firstFreqIndex, data[i], nFreqs);
+      }
+    } else {
+      double[] cells;
+      try {
+        cells = decodeOldData();
+      } catch (IOException ex) {
+        throw new IllegalStateException("Couldn't reload undo data", ex);
+      }
+      for (int i = 0; i < nFrames; i++) {
+        System.arraycopy(cells, i * nFreqs, data[i], 0, nFreqs);
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Copies part of one frame of the old data into the given array.
+   * 
+   * @param frame The frame number, in clip co-ordinates. Must be within this edit's region.
+   * @param freqIndex The first frequency index to copy. Must be within this edit's region.
+   * @param dest The array to copy into, starting at position 0.
+   * @param length The number of frequency indexes to copy.
+   */
+  public void getOldData(int frame, int freqIndex, double[] dest, int length) {
+    if (oldBlocks != null) {
+      int i = frame - firstFrame;
+      int pos = 0;
+      while (pos < length) {
+        int idx = freqIndex + pos;
+        double[] block = oldBlockData(i, (idx >> FrameBlock.SHIFT) - firstBlock);
+        int offset = idx & FrameBlock.MASK;
+        int n = Math.min(length - pos, block.length - offset);
+        System.arraycopy(block, offset, dest, pos, n);
+        pos += n;
+      }
+    } else {
+      System.arraycopy(getOldData()[frame - firstFrame], freqIndex - firstFreqIndex, dest, 0,
+          length);
+    }
+  }
+
+  /**
+   * Returns the approximate number of bytes of heap taken up by this edit's snapshots. Each block
+   * is charged in proportion to how many holders share it, so blocks the edit didn't change (which
+   * are shared with the other snapshot and usually with the live clip) cost little. Snapshots that
+   * have been spilled to a file don't count.
+   */
+  @Override
+  public long getMemoryUsage() {
+    long bytes = blockBytes(oldBlocks) + blockBytes(newBlocks);
+    if (oldEncoded != null) {
+      for (int[][] frameBlocks : oldEncoded) {
+        if (frameBlocks != null) {
+          for (int[] encoded : frameBlocks) {
+            bytes += encoded == null ? 0 : 4L * encoded.length;
+          }
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static long blockBytes(FrameBlock[][] blocks) {
+    if (blocks == null) {
+      return 0L;
+    }
+    long bytes = 0;
+    for (FrameBlock[] frameBlocks : blocks) {
+      for (FrameBlock b : frameBlocks) {
+        if (b != null) {
+          bytes += 8L * b.data.length / Math.max(1, b.getRefCount());
+        }
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getSpilledSize() {
+    return spillFile == null ? 0L : 4L * (oldLength + newLength);
+  }
+
+  /**
+   * Compresses this edit's snapshots into the given file and drops its block references. Only edits
+   * whose new data has been captured can be spilled; for others, this method does nothing.
+   */
+  @Override
+  public void spill(SnapshotSpillFile file) throws IOException {
+    if (newBlocks == null || oldBlocks == null) {
+      return;
+    }
+    FrameBlock[][] blocks = decodeOldBlocks();
+    double[] oldCells = toCells(blocks);
+    releaseDecoded(blocks);
+    double[] newCells = toCells(newBlocks);
+    int[] newEncoded = SnapshotCodec.encode(newCells);
+    for (int k = 0; k < newCells.length; k++) {
+      // the old cells are decoded relative to the new cells as they come back, where -0 is +0
+      newCells[k] += 0.0;
+    }
+    int[] oldEncoded = SnapshotCodec.encodeDelta(oldCells, newCells);
+
+    oldOffset = file.write(oldEncoded);
+    newOffset = file.write(newEncoded);
+    oldLength = oldEncoded.length;
+    newLength = newEncoded.length;
+    spillFile = file;
+    release(oldBlocks);
+    release(newBlocks);
+    oldBlocks = null;
+    oldEncoded = null;
+    newBlocks = null;
+  }
+
+  @Override
+  public void moveSpilledData(SnapshotSpillFile file) throws IOException {
+    if (spillFile == null) {
+      return;
+    }
+    int[] oldEncoded = spillFile.read(oldOffset, oldLength);
+    int[] newEncoded = spillFile.read(newOffset, newLength);
+    long movedOld = file.write(oldEncoded);
+    newOffset = file.write(newEncoded);
+    oldOffset = movedOld;
+    spillFile = file;
+  }
+
+  @Override
+  public void die() {
+    super.die();
+    release(oldBlocks);
+    release(newBlocks);
+    oldBlocks = null;
+    oldEncoded = null;
+    newBlocks = null;
   }
 
   @Override
   public String toString() {
     return String.format("Clip Data Edit @ [%d, %d %d x %d]", firstFrame, firstFreqIndex,
-        oldData.length, oldData[0].length);
+        nFrames, nFreqs);
   }
 }
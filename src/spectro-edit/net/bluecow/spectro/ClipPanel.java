@@ -21,18 +21,22 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.geom.AffineTransform;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.logging.Logger;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
 import javax.swing.Scrollable;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
 import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.CannotRedoException;
@@ -60,12 +64,32 @@ public class ClipPanel extends JPanel implements Scrollable {
    */
   private final Clip clip;
 
-  private final BufferedImage img;
+  /**
+   * Renders and caches the visible part of the spectrogram image.
+   */
+  private SpectrogramRasterizer rasterizer;
+
+  /**
+   * Zoomed-out overviews of the clip data, on the current frequency scale.
+   */
+  private SpectralPyramid pyramid;
+
+  /**
+   * How frequencies are laid out from bottom to top.
+   */
+  private FrequencyScale frequencyScale = FrequencyScale.LINEAR;
+
+  /**
+   * The filterbank for {@link #frequencyScale}, which maps rows to frequency indexes, or null if
+   * the rows are the frequency indexes.
+   */
+  private Filterbank filterbank;
 
   /**
-   * The pixel data in {@link #img}.
+   * The current zoom level. Each column of pixels shows 2^zoomLevel frames; 0 means one pixel per
+   * frame.
    */
-  private final int[] imgPixels;
+  private int zoomLevel;
 
   /**
    * A rectangular frame that some tools use as a bounding box for the changes they make. The region
@@ -84,6 +108,11 @@ public class ClipPanel extends JPanel implements Scrollable {
    */
   private boolean regionMode;
 
+  /**
+   * Whether the clip's pitch track is drawn over the spectrogram.
+   */
+  private boolean pitchOverlayVisible;
+
   private final RegionMouseHandler mouseHandler = new RegionMouseHandler();
 
   private final ClipPositionHeader clipPositionHeader = new ClipPositionHeader();
@@ -95,13 +124,74 @@ public class ClipPanel extends JPanel implements Scrollable {
 
   private ValueColorizer colorizer = new LogarithmicColorizer(this);
 
+  /**
+   * The minimum time between image updates due to clip data changes, in milliseconds.
+   */
+  private static final int CHANGE_FLUSH_INTERVAL = 16;
+
+  /**
+   * Regions of the clip (in clip co-ordinates) that have changed since the image was last brought
+   * up to date with the clip data.
+   */
+  private final DirtyRegionSet dirtyRegions = new DirtyRegionSet();
+
+  /**
+   * Brings the image up to date with the dirty regions once the current burst of change events has
+   * had a chance to accumulate.
+   */
+  private final Timer changeFlushTimer = new Timer(CHANGE_FLUSH_INTERVAL, new ActionListener() {
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      flushDirtyRegions();
+    }
+  });
+
+  /**
+   * Collects changed regions rather than re-colouring them right away, so a fast paintbrush stroke
+   * (which changes a small area on every mouse event) costs one image update per timer tick instead
+   * of one per event.
+   */
   private ClipDataChangeListener clipDataChangeHandler = new ClipDataChangeListener() {
 
     @Override
     public void clipDataChanged(ClipDataChangeEvent e) {
-      Rectangle r = toScreenCoords(e.getRegion());
-      updateImage(r);
-      repaint(r);
+      dirtyRegions.add(e.getRegion());
+      if (!changeFlushTimer.isRunning()) {
+        changeFlushTimer.start();
+      }
+    }
+
+  };
+
+  /**
+   * Flushes the dirty regions as soon as an edit (or the outermost compound edit) is finished, so
+   * the final state of an edit never waits for the timer. The clip announces an edit's changes
+   * before posting it, but they reach {@link #clipDataChangeHandler} through the event queue, so
+   * the flush is queued behind them.
+   */
+  private UndoableEditListener clipEditHandler = new UndoableEditListener() {
+
+    @Override
+    public void undoableEditHappened(UndoableEditEvent e) {
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          flushDirtyRegions();
+        }
+      });
+    }
+
+  };
+
+  /**
+   * Brings the pitch track up to date after each change while the overlay is showing. Registered
+   * on a background executor, so painting never waits for the pitch of changed frames.
+   */
+  private final ClipDataChangeListener pitchTrackUpdater = new ClipDataChangeListener() {
+
+    @Override
+    public void clipDataChanged(ClipDataChangeEvent e) {
+      refreshPitchTrack();
     }
 
   };
@@ -118,7 +208,9 @@ public class ClipPanel extends JPanel implements Scrollable {
    */
   public static ClipPanel newInstance(Clip clip, PlayerThread playerThread) {
     ClipPanel cp = new ClipPanel(clip);
-    clip.addClipDataChangeListener(cp.clipDataChangeHandler);
+    clip.addClipDataChangeListener(cp.clipDataChangeHandler,
+        ClipDataChangeBus.EVENT_DISPATCH_THREAD);
+    clip.addUndoableEditListener(cp.clipEditHandler);
     playerThread.addPlaybackPositionListener(cp.clipPositionHeader);
     cp.clipPositionHeader.setPlayerThread(playerThread);
     return cp;
@@ -131,12 +223,198 @@ public class ClipPanel extends JPanel implements Scrollable {
   private ClipPanel(Clip clip) {
     this.clip = clip;
     setPreferredSize(new Dimension(clip.getFrameCount(), clip.getFrameFreqSamples()));
-    int xpix = clip.getFrameCount();
-    int ypix = clip.getFrameFreqSamples();
-    img = new BufferedImage(xpix, ypix, BufferedImage.TYPE_INT_RGB);
-    imgPixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    createPyramid();
     updateImage(null);
     setBackground(Color.BLACK);
+    changeFlushTimer.setRepeats(false);
+  }
+
+  /**
+   * Replaces the pyramid and rasterizer with new ones for the current frequency scale, and starts
+   * building the pyramid on a background thread.
+   */
+  private void createPyramid() {
+    if (rasterizer != null) {
+      rasterizer.renderAll();
+    }
+    final SpectralPyramid p = filterbank == null ? new SpectralPyramid(clip)
+        : new SpectralPyramid(clip, new FilterbankView(clip, filterbank));
+    pyramid = p;
+    rasterizer = new SpectrogramRasterizer(this, p);
+    rasterizer.setLevel(zoomLevel);
+
+    Thread pyramidBuilder = new Thread("Spectral pyramid builder") {
+      @Override
+      public void run() {
+        p.build();
+        SwingUtilities.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (pyramid == p && zoomLevel >= SpectralPyramid.FIRST_STORED_LEVEL) {
+              updateImage(null);
+              repaint();
+            }
+          }
+        });
+      }
+    };
+    pyramidBuilder.setDaemon(true);
+    pyramidBuilder.start();
+  }
+
+  /**
+   * Returns how frequencies are laid out from bottom to top.
+   */
+  public FrequencyScale getFrequencyScale() {
+    return frequencyScale;
+  }
+
+  /**
+   * Changes how frequencies are laid out from bottom to top. On a mel or constant-Q scale each row
+   * shows one band of a {@link Filterbank}, so the panel is shorter, and co-ordinates convert
+   * between rows and frequency indexes accordingly. The selected region keeps covering the same
+   * frequencies, as closely as the new rows allow. Fires a property change event for
+   * "frequencyScale".
+   */
+  public void setFrequencyScale(FrequencyScale scale) {
+    if (scale == frequencyScale) {
+      return;
+    }
+    Rectangle clipRegion = region == null ? null : toClipCoords(new Rectangle(region));
+    FrequencyScale old = frequencyScale;
+    frequencyScale = scale;
+    filterbank = scale.createFilterbank(clip);
+    if (clipRegion != null) {
+      region = toScreenCoords(clipRegion);
+      oldRegion = null;
+    }
+    createPyramid();
+    setPreferredSize(new Dimension(pyramid.getColumnCount(zoomLevel), getDisplayHeight()));
+    revalidate();
+    repaint();
+    firePropertyChange("frequencyScale", old, scale);
+  }
+
+  /**
+   * Returns the number of rows of pixels the spectrogram takes up.
+   */
+  private int getDisplayHeight() {
+    return filterbank == null ? clip.getFrameFreqSamples() : filterbank.getBandCount();
+  }
+
+  /**
+   * Converts a vertical position in rows, counting up from the bottom, to a frequency index.
+   */
+  private int rowToBin(double row) {
+    if (filterbank == null) {
+      return (int) Math.round(row);
+    }
+    int bin = (int) Math.round(filterbank.toBin(row));
+    return Math.max(0, Math.min(clip.getFrameFreqSamples(), bin));
+  }
+
+  /**
+   * Converts a frequency index to a vertical position in rows, counting up from the bottom.
+   */
+  private double binToRow(double bin) {
+    if (filterbank == null) {
+      return bin;
+    }
+    return Math.max(0.0, Math.min(getDisplayHeight(), filterbank.toBand(bin)));
+  }
+
+  /**
+   * Returns the current zoom level. At level n, each column of pixels covers 2^n frames of the
+   * clip.
+   */
+  public int getZoomLevel() {
+    return zoomLevel;
+  }
+
+  /**
+   * Returns the most zoomed-out level this panel supports, which is enough to fit the whole clip in
+   * a few dozen pixels.
+   */
+  public int getMaxZoomLevel() {
+    return pyramid.getMaxLevel();
+  }
+
+  /**
+   * Zooms this panel in or out in time. The frame at the centre of the visible area stays centred,
+   * and the selected region keeps covering the same frames (as closely as the new zoom level
+   * allows). Fires a property change event for "zoomLevel".
+   * 
+   * @param level The new zoom level, between 0 and {@link #getMaxZoomLevel()} inclusive.
+   */
+  public void setZoomLevel(int level) {
+    if (level < 0 || level > getMaxZoomLevel()) {
+      throw new IllegalArgumentException(
+          "Zoom level " + level + " is out of range 0.." + getMaxZoomLevel());
+    }
+    if (level == zoomLevel) {
+      return;
+    }
+    Rectangle visible = getVisibleRect();
+    final int centreFrame = (visible.x + visible.width / 2) << zoomLevel;
+    Rectangle clipRegion = region == null ? null : toClipCoords(new Rectangle(region));
+
+    int oldLevel = zoomLevel;
+    zoomLevel = level;
+    if (clipRegion != null) {
+      region = toScreenCoords(clipRegion);
+      oldRegion = null;
+    }
+    rasterizer.setLevel(level);
+    setPreferredSize(
+        new Dimension(pyramid.getColumnCount(level), getDisplayHeight()));
+    revalidate();
+    repaint();
+    clipPositionHeader.repaint();
+
+    final int visibleWidth = visible.width;
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        Rectangle r = getVisibleRect();
+        r.x = Math.max(0, (centreFrame >> zoomLevel) - visibleWidth / 2);
+        scrollRectToVisible(r);
+      }
+    });
+    firePropertyChange("zoomLevel", oldLevel, level);
+  }
+
+  /**
+   * Jumps to the first note onset after the current playback position, or after the centre of the
+   * visible area if this panel isn't attached to a player. The playback position moves to the
+   * onset, and the onset is scrolled to the centre of the visible area.
+   * 
+   * @return The frame number of the onset, or -1 if there are no more onsets.
+   * @see Clip#getOnsets()
+   */
+  public int showNextOnset() {
+    PlayerThread playerThread = clipPositionHeader.playerThread;
+    Rectangle visible = getVisibleRect();
+    int fromFrame;
+    if (playerThread != null) {
+      fromFrame = (int) (clipPositionHeader.playbackPosition / clip.getFrameTimeSamples()) + 1;
+    } else {
+      fromFrame = ((visible.x + visible.width / 2) << zoomLevel) + 1;
+    }
+    int[] onsets = clip.getOnsets();
+    int i = Arrays.binarySearch(onsets, fromFrame);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    if (i == onsets.length) {
+      return -1;
+    }
+    int onset = onsets[i];
+    if (playerThread != null) {
+      playerThread.setPlaybackPosition(onset * clip.getFrameTimeSamples());
+    }
+    visible.x = Math.max(0, (onset >> zoomLevel) - visible.width / 2);
+    scrollRectToVisible(visible);
+    return onset;
   }
 
   /**
@@ -150,7 +428,8 @@ public class ClipPanel extends JPanel implements Scrollable {
    * @return The given point, which has been modified.
    */
   public Point toClipCoords(Point p) {
-    p.y = clip.getFrameFreqSamples() - p.y;
+    p.x <<= zoomLevel;
+    p.y = rowToBin(getDisplayHeight() - p.y);
     return p;
   }
 
@@ -177,7 +456,12 @@ public class ClipPanel extends JPanel implements Scrollable {
    * @return The given point, which has been modified.
    */
   public Rectangle toClipCoords(Rectangle r) {
-    r.y = clip.getFrameFreqSamples() - (r.y + r.height);
+    r.x <<= zoomLevel;
+    r.width <<= zoomLevel;
+    int bottom = getDisplayHeight() - (r.y + r.height);
+    int top = getDisplayHeight() - r.y;
+    r.y = rowToBin(bottom);
+    r.height = r.height == 0 ? 0 : Math.max(1, rowToBin(top) - r.y);
     return r;
   }
 
@@ -192,14 +476,43 @@ public class ClipPanel extends JPanel implements Scrollable {
    * @return The given point, which has been modified.
    */
   public Point toScreenCoords(Point p) {
-    p.y = clip.getFrameFreqSamples() - p.y;
+    p.x >>= zoomLevel;
+    p.y = getDisplayHeight() - (int) Math.round(binToRow(p.y));
     return p;
   }
 
+  /**
+   * Converts the given rectangle (which is in clip coordinates) to screen coordinates. When zoomed
+   * out, the result covers every pixel column that shows any of the frames in the given rectangle.
+   * <p>
+   * This is the inverse operation to {@link #toClipCoords(Rectangle)}.
+   * 
+   * @param r The rectangle to convert. This rectangle object will be modified!
+   * @return The given rectangle, which has been modified.
+   */
   public Rectangle toScreenCoords(Rectangle r) {
-    // These operations are actually the same (the operation is its own
-    // inverse)
-    return toClipCoords(r);
+    int endX = ((r.x + r.width - 1) >> zoomLevel) + 1;
+    r.x >>= zoomLevel;
+    r.width = endX - r.x;
+    int bottom = (int) Math.floor(binToRow(r.y));
+    int top = (int) Math.ceil(binToRow(r.y + r.height));
+    r.y = getDisplayHeight() - top;
+    r.height = top - bottom;
+    return r;
+  }
+
+  /**
+   * Updates the overview pyramid and the image for all the clip regions that have changed since
+   * the last flush, and repaints them.
+   */
+  private void flushDirtyRegions() {
+    changeFlushTimer.stop();
+    for (Rectangle r : dirtyRegions.drain()) {
+      pyramid.update(r);
+      toScreenCoords(r);
+      updateImage(r);
+      repaint(r);
+    }
   }
 
   public ValueColorizer getColorizer() {
@@ -210,6 +523,12 @@ public class ClipPanel extends JPanel implements Scrollable {
    * Updates the image based on the existing Clip data and the settings in this panel (such as the
    * multiplier).
    * <p>
+   * Only the part of the image in the visible area of this panel is ever rendered. A full update
+   * (null region) marks the whole image out of date; visible tiles are then re-rendered on
+   * background threads, and repainted as each one completes. Requesting another full update
+   * abandons any tiles that are still pending. Updates for a specific region are done immediately
+   * on the calling thread.
+   * <p>
    * It is not necessary to call this method directly unless you are a ValueColorizer and your
    * settings have changed. Image updates due to clip data change events are handled automatically.
    * TODO have colorizers fire change events so this method can be private again
@@ -221,23 +540,9 @@ public class ClipPanel extends JPanel implements Scrollable {
     if (clip == null)
       return;
     if (region == null) {
-      region = new Rectangle(0, 0, clip.getFrameCount(), clip.getFrameFreqSamples());
+      rasterizer.renderAll();
     } else {
-      region = new Rectangle(region);
-    }
-
-    toClipCoords(region);
-
-    final int endCol = region.x + region.width;
-    final int endRow = region.y + region.height;
-
-    for (int col = region.x; col < endCol; col++) {
-      Frame f = clip.getFrame(col);
-      for (int row = region.y; row < endRow; row++) {
-        // the following is a MUCH faster equivalent to: img.setRGB(col,
-        // row, greyVal);
-        imgPixels[col + row * img.getWidth()] = colorizer.colorFor(f.getReal(row));
-      }
+      rasterizer.renderNow(toClipCoords(new Rectangle(region)));
     }
   }
 
@@ -246,39 +551,106 @@ public class ClipPanel extends JPanel implements Scrollable {
     super.paintComponent(g);
     Graphics2D g2 = (Graphics2D) g;
 
-
-
-    // Flip upside down while rendering the spectrogram
-    AffineTransform backupTransform = g2.getTransform();
-    g2.translate(0, img.getHeight());
-    g2.scale(1.0, -1.0);
-
-    // Image imgScaled = this.img.getScaledInstance(300, 100, Image.SCALE_SMOOTH);
-    // BufferedImage img = (BufferedImage)imgScaled;
-
-
     Rectangle clipBounds = g2.getClipBounds();
+    if (clipBounds == null) {
+      clipBounds = new Rectangle(0, 0, getWidth(), getHeight());
+    }
     logger.finer(String.format("Clip bounds: (%d, %d) %dx%d", clipBounds.x, clipBounds.y,
         clipBounds.width, clipBounds.height));
-    if (clipBounds.x + clipBounds.width > img.getWidth()) {
-      clipBounds.width = img.getWidth() - clipBounds.x;
-    }
-    if (clipBounds != null) {
-      g2.drawImage(img, clipBounds.x, clipBounds.y, clipBounds.x + clipBounds.width,
-          clipBounds.y + clipBounds.height, clipBounds.x, clipBounds.y,
-          clipBounds.x + clipBounds.width, clipBounds.y + clipBounds.height, Color.BLACK, null);
-    } else {
-      g2.drawImage(img, 0, 0, null);
+    rasterizer.paint(g2, clipBounds);
+
+    if (pitchOverlayVisible) {
+      paintPitchTrack(g2, clipBounds);
     }
 
-    // Now flip back for the region
-    g2.setTransform(backupTransform);
     if (region != null) {
       g2.setColor(Color.YELLOW);
       g2.drawRect(region.x, region.y, region.width, region.height);
     }
   }
 
+  /**
+   * Draws the pitch track over the given area, as a line joining the fundamentals of neighbouring
+   * voiced columns. Each column shows the first frame it covers.
+   */
+  private void paintPitchTrack(Graphics2D g2, Rectangle area) {
+    PitchTrack track = clip.getCachedPitchTrack();
+    g2.setColor(Color.CYAN);
+    int lastX = -1;
+    int lastY = 0;
+    for (int x = Math.max(0, area.x - 1); x <= area.x + area.width; x++) {
+      int frame = x << zoomLevel;
+      if (frame >= track.getFrameCount()) {
+        break;
+      }
+      if (!track.isVoiced(frame)) {
+        lastX = -1;
+        continue;
+      }
+      int y = getDisplayHeight() - (int) Math.round(binToRow(track.getFrequencyIndex(frame)));
+      if (lastX >= 0) {
+        g2.drawLine(lastX, lastY, x, y);
+      } else {
+        g2.drawLine(x, y, x, y);
+      }
+      lastX = x;
+      lastY = y;
+    }
+  }
+
+  /**
+   * Tracks the frames of the pitch track that are out of date, then repaints the columns that show
+   * them. Called on a background thread.
+   */
+  private void refreshPitchTrack() {
+    final BitSet tracked = clip.getCachedPitchTrack().refresh();
+    if (tracked.isEmpty()) {
+      return;
+    }
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        for (int start = tracked.nextSetBit(0); start >= 0; start = tracked.nextSetBit(start)) {
+          int end = tracked.nextClearBit(start);
+          Rectangle r = toScreenCoords(new Rectangle(start, 0, end - start, 1));
+
+          // the pitch can move anywhere in its column, and the line to the next columns with it
+          repaint(r.x - 1, 0, r.width + 2, getHeight());
+          start = end;
+        }
+      }
+    });
+  }
+
+  /**
+   * Shows or hides the clip's pitch track over the spectrogram. Fires a property change event for
+   * "pitchOverlayVisible".
+   * <p>
+   * The track is brought up to date on a background thread, so the overlay fills in once the
+   * frames have been tracked (the first time, the whole clip) rather than holding up painting.
+   */
+  public void setPitchOverlayVisible(boolean visible) {
+    boolean old = pitchOverlayVisible;
+    pitchOverlayVisible = visible;
+    if (visible && !old) {
+      clip.addClipDataChangeListener(pitchTrackUpdater, ClipDataChangeBus.BACKGROUND);
+      ClipDataChangeBus.BACKGROUND.execute(new Runnable() {
+        @Override
+        public void run() {
+          refreshPitchTrack();
+        }
+      });
+    } else if (!visible && old) {
+      clip.removeClipDataChangeListener(pitchTrackUpdater);
+    }
+    repaint();
+    firePropertyChange("pitchOverlayVisible", old, visible);
+  }
+
+  public boolean isPitchOverlayVisible() {
+    return pitchOverlayVisible;
+  }
+
   public Clip getClip() {
     return clip;
   }
@@ -591,7 +963,7 @@ public class ClipPanel extends JPanel implements Scrollable {
      * clip's settings and the current playback position.
      */
     private int playbackPixelPosition() {
-      return (int) (playbackPosition / clip.getFrameTimeSamples());
+      return (int) (playbackPosition / clip.getFrameTimeSamples()) >> zoomLevel;
     }
 
     /**
@@ -600,7 +972,7 @@ public class ClipPanel extends JPanel implements Scrollable {
     private final MouseListener repositionHandler = new MouseAdapter() {
       @Override
       public void mousePressed(MouseEvent e) {
-        playerThread.setPlaybackPosition(e.getX() * clip.getFrameTimeSamples());
+        playerThread.setPlaybackPosition((e.getX() << zoomLevel) * clip.getFrameTimeSamples());
       }
     };
 
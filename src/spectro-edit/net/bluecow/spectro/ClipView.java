@@ -0,0 +1,164 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+
+/**
+ * A window onto a range of frames of another clip, which works like a clip in its own right:
+ * frame 0 of the view is the first frame of the window, and it can be played, analysed, edited and
+ * undone through the usual {@link Clip} methods. Nothing is copied. The view shares the parent
+ * clip's frames and frame locks, so a slice of a huge clip costs next to nothing to make, and
+ * changes made through either one are seen by both:
+ * <ul>
+ * <li>Changes made to the parent are passed on to the view's listeners, moved into the view's
+ * frame numbering, as long as they touch the window.
+ * <li>Changes made through the view are announced by the parent, so everything watching the parent
+ * (including its other views) hears about them.
+ * <li>Edits made through the view are posted to the view's undo listeners and then to the
+ * parent's, so they land in the same undo history as edits made to the parent directly.
+ * </ul>
+ * A view can also be limited to a band of frequencies, which is reported by {@link #getBounds()}
+ * so tools confine their edits to it. The frames themselves still have every frequency index.
+ * <p>
+ * The view keeps listening to its parent until {@link #dispose()} is called, so call it when the
+ * view is no longer needed.
+ *
+ * @see Clip#view(Rectangle)
+ */
+public class ClipView extends Clip {
+
+  private final Clip parent;
+
+  /**
+   * The frame of the parent that is frame 0 of this view.
+   */
+  private final int firstFrame;
+
+  /**
+   * The part of this view tools should work in, in this view's frame numbering.
+   */
+  private final Rectangle bounds;
+
+  /**
+   * Passes changes to the parent's data on to this view's listeners.
+   */
+  private final ClipDataChangeListener parentChangeHandler = new ClipDataChangeListener() {
+    @Override
+    public void clipDataChanged(ClipDataChangeEvent e) {
+      Rectangle r = e.getRegion().intersection(
+          new Rectangle(firstFrame, 0, getFrameCount(), getFrameFreqSamples()));
+      if (!r.isEmpty()) {
+        r.translate(-firstFrame, 0);
+        fireRegionChanged(r);
+      }
+    }
+  };
+
+  /**
+   * Passes edits made through this view on to the parent's undo listeners.
+   */
+  private final UndoableEditListener editForwarder = new UndoableEditListener() {
+    @Override
+    public void undoableEditHappened(UndoableEditEvent e) {
+      parent.postEdit(e.getEdit());
+    }
+  };
+
+  /**
+   * Creates a view of the given region of the given clip.
+   *
+   * @param parent The clip to view.
+   * @param region The frames (x and width) of the parent that this view covers, and the frequency
+   *        indexes (y and height) its bounds are limited to.
+   * @throws IllegalArgumentException If the region is empty or reaches outside the parent.
+   */
+  ClipView(Clip parent, Rectangle region) {
+    super("Part of " + parent.getName(), parent, checkRegion(parent, region).x, region.width);
+    this.parent = parent;
+    this.firstFrame = region.x;
+    this.bounds = new Rectangle(0, region.y, region.width, region.height);
+    parent.addClipDataChangeListener(parentChangeHandler);
+    addUndoableEditListener(editForwarder);
+  }
+
+  private static Rectangle checkRegion(Clip parent, Rectangle region) {
+    if (region.isEmpty() || !parent.getBounds().contains(region)) {
+      throw new IllegalArgumentException("Region " + region + " is not inside the clip's bounds "
+          + parent.getBounds());
+    }
+    return region;
+  }
+
+  /**
+   * Returns the clip this is a view of.
+   */
+  public Clip getParent() {
+    return parent;
+  }
+
+  /**
+   * Returns the frame of the parent clip that is frame 0 of this view.
+   */
+  public int getFirstFrame() {
+    return firstFrame;
+  }
+
+  /**
+   * Returns the frames of this view, limited to the band of frequencies it was made with.
+   */
+  @Override
+  public Rectangle getBounds() {
+    return new Rectangle(bounds);
+  }
+
+  /**
+   * Announces the change through the parent clip, which passes it back to this view's listeners.
+   * The parts of the region outside this view are ignored.
+   */
+  @Override
+  public void regionChanged(Rectangle region) {
+    Rectangle r = region.intersection(new Rectangle(0, 0, getFrameCount(), getFrameFreqSamples()));
+    if (!r.isEmpty()) {
+      r.translate(firstFrame, 0);
+      parent.regionChanged(r);
+    }
+  }
+
+  private void fireRegionChanged(Rectangle region) {
+    super.regionChanged(region);
+  }
+
+  /**
+   * Makes the sub clip from the parent, so it's analysed straight from the parent's samples when
+   * it can be.
+   */
+  @Override
+  public Clip subClip(int startFrame, int nFrames, int newFrameSize, int newOverlap) {
+    return parent.subClip(firstFrame + startFrame, nFrames, newFrameSize, newOverlap);
+  }
+
+  /**
+   * Stops listening to the parent clip. Afterwards, this view no longer hears about changes made
+   * to the parent, and edits made through it no longer reach the parent's undo history, although
+   * its frames are still shared with the parent.
+   */
+  public void dispose() {
+    parent.removeClipDataChangeListener(parentChangeHandler);
+    removeUndoableEditListener(editForwarder);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates a set of changed rectangles so they can be dealt with in one go later on.
+ * Overlapping or touching rectangles are merged as they are added, and the set never holds more
+ * than a handful of rectangles: when it gets full, the two rectangles whose union wastes the least
+ * area are merged. A long diagonal brush stroke therefore ends up as a few rectangles along the
+ * stroke rather than one huge bounding box.
+ * <p>
+ * This class is not thread safe.
+ */
+class DirtyRegionSet {
+
+  /**
+   * The most rectangles this set will hold before merging.
+   */
+  private static final int MAX_RECTANGLES = 16;
+
+  private final List<Rectangle> rects = new ArrayList<Rectangle>();
+
+  /**
+   * Adds the given rectangle to this set. The rectangle itself is not modified or retained.
+   */
+  void add(Rectangle r) {
+    if (r.isEmpty()) {
+      return;
+    }
+    Rectangle merged = new Rectangle(r);
+    boolean mergedAny;
+    do {
+      mergedAny = false;
+      Rectangle grown = new Rectangle(merged.x - 1, merged.y - 1, merged.width + 2,
+          merged.height + 2);
+      for (int i = rects.size() - 1; i >= 0; i--) {
+        if (grown.intersects(rects.get(i))) {
+          merged.add(rects.remove(i));
+          mergedAny = true;
+        }
+      }
+    } while (mergedAny);
+    rects.add(merged);
+
+    if (rects.size() > MAX_RECTANGLES) {
+      mergeCheapestPair();
+    }
+  }
+
+  /**
+   * Merges the two rectangles whose bounding box contains the least area that isn't in either of
+   * them.
+   */
+  private void mergeCheapestPair() {
+    int bestI = 0;
+    int bestJ = 1;
+    long bestWaste = Long.MAX_VALUE;
+    for (int i = 0; i < rects.size(); i++) {
+      for (int j = i + 1; j < rects.size(); j++) {
+        Rectangle a = rects.get(i);
+        Rectangle b = rects.get(j);
+        Rectangle u = a.union(b);
+        long waste = area(u) - area(a) - area(b);
+        if (waste < bestWaste) {
+          bestWaste = waste;
+          bestI = i;
+          bestJ = j;
+        }
+      }
+    }
+    Rectangle b = rects.remove(bestJ);
+    Rectangle a = rects.remove(bestI);
+    add(a.union(b));
+  }
+
+  private static long area(Rectangle r) {
+    return (long) r.width * r.height;
+  }
+
+  boolean isEmpty() {
+    return rects.isEmpty();
+  }
+
+  /**
+   * Returns the bounding box of everything in this set, or null if the set is empty.
+   */
+  Rectangle getBounds() {
+    Rectangle bounds = null;
+    for (Rectangle r : rects) {
+      if (bounds == null) {
+        bounds = new Rectangle(r);
+      } else {
+        bounds.add(r);
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * Removes and returns all the rectangles in this set. The caller owns the returned rectangles.
+   */
+  List<Rectangle> drain() {
+    List<Rectangle> drained = new ArrayList<Rectangle>(rects);
+    rects.clear();
+    return drained;
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.BitSet;
+
+/**
+ * An index of the sums of |value| and value<sup>2</sup> over a clip's spectral data, which finds
+ * the energy of any region in time that doesn't depend on the region's size.
+ * <p>
+ * The clip is divided into blocks of {@link #BLOCK} frames by {@link #BLOCK} frequency indexes.
+ * The index keeps a summed-area table over the blocks, and for every frame and every frequency
+ * index, running totals of its cells block by block. A query splits the region into the blocks it
+ * covers entirely (one lookup in the summed-area table), the strips along its edges that cut
+ * through blocks (one lookup per frame or frequency index in the strip, so at most {@link #BLOCK}
+ * each) and the four corners where two such strips meet, which are the only cells that are read.
+ * <p>
+ * The index listens for changes to the clip and marks the blocks they touch as dirty. Dirty blocks
+ * are summed again the next time the index is queried, so the cost of keeping it up to date is
+ * proportional to the area that was edited and is never paid by the thread doing the editing. A
+ * block that changes while it's being summed is simply marked dirty again.
+ * <p>
+ * All the sums are stored in pairs, the sum of magnitudes followed by the sum of squares. This
+ * class is thread safe.
+ */
+class EnergyIndex implements ClipDataChangeListener {
+
+  /**
+   * The width and height of a block. Matches the frame lock stripes, so summing a block takes one
+   * lock.
+   */
+  static final int BLOCK = FrameLocks.STRIPE_FRAMES;
+
+  private final Clip clip;
+
+  private final int frameCount;
+
+  private final int binCount;
+
+  private final int blocksAcross;
+
+  private final int blocksHigh;
+
+  /**
+   * The sums of each block, at (blockX * blocksHigh + blockY) * 2.
+   */
+  private final double[] blockSums;
+
+  /**
+   * The summed-area table over the blocks. Entry (x, y) is the sum of the blocks left of x and
+   * below y, at (x * (blocksHigh + 1) + y) * 2.
+   */
+  private final double[] blockTable;
+
+  /**
+   * For each frame, the sum of the frame's cells in each block row, at
+   * (frame * blocksHigh + blockY) * 2.
+   */
+  private final double[] frameSums;
+
+  /**
+   * For each frame, the running total of {@link #frameSums} over the block rows below y, at
+   * (frame * (blocksHigh + 1) + y) * 2.
+   */
+  private final double[] frameTable;
+
+  /**
+   * For each frequency index, the sum of its cells in each block column, at
+   * (bin * blocksAcross + blockX) * 2.
+   */
+  private final double[] binSums;
+
+  /**
+   * For each frequency index, the running total of {@link #binSums} over the block columns left of
+   * x, at (bin * (blocksAcross + 1) + x) * 2.
+   */
+  private final double[] binTable;
+
+  /**
+   * The blocks whose sums are out of date, indexed by blockX * blocksHigh + blockY. Guarded by
+   * itself rather than by the index, so marking blocks never waits for a query.
+   */
+  private final BitSet dirty = new BitSet();
+
+  EnergyIndex(Clip clip) {
+    this.clip = clip;
+    frameCount = clip.getFrameCount();
+    binCount = clip.getFrameFreqSamples();
+    blocksAcross = (frameCount + BLOCK - 1) / BLOCK;
+    blocksHigh = (binCount + BLOCK - 1) / BLOCK;
+    blockSums = new double[blocksAcross * blocksHigh * 2];
+    blockTable = new double[(blocksAcross + 1) * (blocksHigh + 1) * 2];
+    frameSums = new double[frameCount * blocksHigh * 2];
+    frameTable = new double[frameCount * (blocksHigh + 1) * 2];
+    binSums = new double[binCount * blocksAcross * 2];
+    binTable = new double[binCount * (blocksAcross + 1) * 2];
+    dirty.set(0, blocksAcross * blocksHigh);
+    clip.addClipDataChangeListener(this);
+  }
+
+  @Override
+  public void clipDataChanged(ClipDataChangeEvent e) {
+    Rectangle r = e.getRegion().intersection(new Rectangle(0, 0, frameCount, binCount));
+    if (r.isEmpty()) {
+      return;
+    }
+    synchronized (dirty) {
+      for (int bx = r.x / BLOCK; bx <= (r.x + r.width - 1) / BLOCK; bx++) {
+        int first = bx * blocksHigh + r.y / BLOCK;
+        dirty.set(first, first + (r.y + r.height - 1) / BLOCK - r.y / BLOCK + 1);
+      }
+    }
+  }
+
+  /**
+   * Returns the statistics of the given region. Parts of the region outside the clip are ignored.
+   */
+  synchronized RegionEnergy measure(Rectangle region) {
+    Rectangle r = region.intersection(new Rectangle(0, 0, frameCount, binCount));
+    if (r.isEmpty()) {
+      return new RegionEnergy(0, 0.0, 0.0);
+    }
+    refresh();
+
+    // split each axis into a partial block, whole blocks bx0..bx1, and another partial block
+    int xEnd = r.x + r.width;
+    int yEnd = r.y + r.height;
+    int bx0 = (r.x + BLOCK - 1) / BLOCK;
+    int bx1 = xEnd / BLOCK;
+    int by0 = (r.y + BLOCK - 1) / BLOCK;
+    int by1 = yEnd / BLOCK;
+    if (bx0 >= bx1) {
+      bx0 = bx1 = 0;
+    }
+    if (by0 >= by1) {
+      by0 = by1 = 0;
+    }
+    int x0 = bx0 < bx1 ? bx0 * BLOCK : xEnd;
+    int x1 = bx0 < bx1 ? bx1 * BLOCK : xEnd;
+    int y0 = by0 < by1 ? by0 * BLOCK : yEnd;
+    int y1 = by0 < by1 ? by1 * BLOCK : yEnd;
+
+    double[] sums = new double[2];
+    if (bx0 < bx1 && by0 < by1) {
+      int stride = blocksHigh + 1;
+      for (int k = 0; k < 2; k++) {
+        sums[k] += blockTable[(bx1 * stride + by1) * 2 + k]
+            - blockTable[(bx0 * stride + by1) * 2 + k]
+            - blockTable[(bx1 * stride + by0) * 2 + k]
+            + blockTable[(bx0 * stride + by0) * 2 + k];
+      }
+    }
+    if (by0 < by1) {
+      addFrames(r.x, x0, by0, by1, sums);
+      addFrames(x1, xEnd, by0, by1, sums);
+    }
+    if (bx0 < bx1) {
+      addBins(r.y, y0, bx0, bx1, sums);
+      addBins(y1, yEnd, bx0, bx1, sums);
+    }
+    scan(r.x, r.y, x0 - r.x, y0 - r.y, sums);
+    scan(r.x, y1, x0 - r.x, yEnd - y1, sums);
+    scan(x1, r.y, xEnd - x1, y0 - r.y, sums);
+    scan(x1, y1, xEnd - x1, yEnd - y1, sums);
+    return new RegionEnergy((long) r.width * r.height, sums[0], sums[1]);
+  }
+
+  /**
+   * Adds the sums of block rows by0..by1 of frames start..end to sums.
+   */
+  private void addFrames(int start, int end, int by0, int by1, double[] sums) {
+    int stride = blocksHigh + 1;
+    for (int f = start; f < end; f++) {
+      for (int k = 0; k < 2; k++) {
+        sums[k] += frameTable[(f * stride + by1) * 2 + k] - frameTable[(f * stride + by0) * 2 + k];
+      }
+    }
+  }
+
+  /**
+   * Adds the sums of block columns bx0..bx1 of frequency indexes start..end to sums.
+   */
+  private void addBins(int start, int end, int bx0, int bx1, double[] sums) {
+    int stride = blocksAcross + 1;
+    for (int b = start; b < end; b++) {
+      for (int k = 0; k < 2; k++) {
+        sums[k] += binTable[(b * stride + bx1) * 2 + k] - binTable[(b * stride + bx0) * 2 + k];
+      }
+    }
+  }
+
+  /**
+   * Sums the dirty blocks again and brings the tables up to date.
+   */
+  private void refresh() {
+    BitSet stale;
+    synchronized (dirty) {
+      if (dirty.isEmpty()) {
+        return;
+      }
+      stale = (BitSet) dirty.clone();
+      dirty.clear();
+    }
+    BitSet columns = new BitSet(blocksAcross);
+    BitSet rows = new BitSet(blocksHigh);
+    for (int i = stale.nextSetBit(0); i >= 0; i = stale.nextSetBit(i + 1)) {
+      sumBlock(i / blocksHigh, i % blocksHigh);
+      columns.set(i / blocksHigh);
+      rows.set(i % blocksHigh);
+    }
+
+    int stride = blocksHigh + 1;
+    for (int bx = columns.nextSetBit(0); bx >= 0; bx = columns.nextSetBit(bx + 1)) {
+      for (int f = bx * BLOCK; f < Math.min(frameCount, (bx + 1) * BLOCK); f++) {
+        for (int by = 0; by < blocksHigh; by++) {
+          for (int k = 0; k < 2; k++) {
+            frameTable[(f * stride + by + 1) * 2 + k] =
+                frameTable[(f * stride + by) * 2 + k] + frameSums[(f * blocksHigh + by) * 2 + k];
+          }
+        }
+      }
+    }
+    stride = blocksAcross + 1;
+    for (int by = rows.nextSetBit(0); by >= 0; by = rows.nextSetBit(by + 1)) {
+      for (int b = by * BLOCK; b < Math.min(binCount, (by + 1) * BLOCK); b++) {
+        for (int bx = 0; bx < blocksAcross; bx++) {
+          for (int k = 0; k < 2; k++) {
+            binTable[(b * stride + bx + 1) * 2 + k] =
+                binTable[(b * stride + bx) * 2 + k] + binSums[(b * blocksAcross + bx) * 2 + k];
+          }
+        }
+      }
+    }
+    stride = blocksHigh + 1;
+    for (int bx = 0; bx < blocksAcross; bx++) {
+      for (int k = 0; k < 2; k++) {
+        double column = 0.0;
+        for (int by = 0; by < blocksHigh; by++) {
+          column += blockSums[(bx * blocksHigh + by) * 2 + k];
+          blockTable[((bx + 1) * stride + by + 1) * 2 + k] =
+              blockTable[(bx * stride + by + 1) * 2 + k] + column;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the cells of one block and updates its sums and the frame and frequency index sums
+   * within it.
+   */
+  private void sumBlock(int bx, int by) {
+    int firstFrame = bx * BLOCK;
+    int nFrames = Math.min(BLOCK, frameCount - firstFrame);
+    int firstBin = by * BLOCK;
+    int nBins = Math.min(BLOCK, binCount - firstBin);
+    double[] column = new double[nBins];
+    double[] bins = new double[nBins * 2];
+    double blockMagnitudes = 0.0;
+    double blockSquares = 0.0;
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(firstFrame, nFrames);
+    try {
+      for (int f = firstFrame; f < firstFrame + nFrames; f++) {
+        clip.getFrame(f).getReal(firstBin, column, 0, nBins);
+        double magnitudes = 0.0;
+        double squares = 0.0;
+        for (int j = 0; j < nBins; j++) {
+          double v = column[j];
+          double m = Math.abs(v);
+          double s = v * v;
+          magnitudes += m;
+          squares += s;
+          bins[j * 2] += m;
+          bins[j * 2 + 1] += s;
+        }
+        frameSums[(f * blocksHigh + by) * 2] = magnitudes;
+        frameSums[(f * blocksHigh + by) * 2 + 1] = squares;
+        blockMagnitudes += magnitudes;
+        blockSquares += squares;
+      }
+    } finally {
+      locks.unlockRead(firstFrame, nFrames);
+    }
+    for (int j = 0; j < nBins; j++) {
+      binSums[((firstBin + j) * blocksAcross + bx) * 2] = bins[j * 2];
+      binSums[((firstBin + j) * blocksAcross + bx) * 2 + 1] = bins[j * 2 + 1];
+    }
+    blockSums[(bx * blocksHigh + by) * 2] = blockMagnitudes;
+    blockSums[(bx * blocksHigh + by) * 2 + 1] = blockSquares;
+  }
+
+  /**
+   * Adds the sums over the cells of the given region, which must lie within the clip, to sums.
+   */
+  private void scan(int x, int y, int width, int height, double[] sums) {
+    if (width <= 0 || height <= 0) {
+      return;
+    }
+    double[] column = new double[height];
+    double magnitudes = 0.0;
+    double squares = 0.0;
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(x, width);
+    try {
+      for (int i = x; i < x + width; i++) {
+        clip.getFrame(i).getReal(y, column, 0, height);
+        for (double v : column) {
+          magnitudes += Math.abs(v);
+          squares += v * v;
+        }
+      }
+    } finally {
+      locks.unlockRead(x, width);
+    }
+    sums[0] += magnitudes;
+    sums[1] += squares;
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * A set of overlapping frequency bands, each a weighted average of the magnitudes of a few
+ * neighbouring frequency indexes of a frame. Bands spaced evenly on a perceptual or musical scale
+ * give a picture of a clip with room for the low notes, where the linear frequency indexes squeeze
+ * everything below 1kHz into a few dozen rows.
+ * <p>
+ * The weights are triangles centred on each band, reaching to the centres of the bands on either
+ * side, and normalised to add up to 1 so band values are on the same scale as the frame data.
+ * Where bands are closer together than the frequency indexes (the bottom of a constant-Q scale, for
+ * example), a band interpolates between the two indexes nearest its centre. Only the non-zero
+ * weights are stored.
+ */
+public class Filterbank {
+
+  /**
+   * The frequency index each band's weights start at.
+   */
+  private final int[] firstBins;
+
+  /**
+   * The weights of each band, starting at {@link #firstBins}.
+   */
+  private final float[][] weights;
+
+  /**
+   * The centre of each band, as a fractional frequency index. Strictly increasing.
+   */
+  private final double[] centres;
+
+  private final int binCount;
+
+  /**
+   * Creates a filterbank with triangular bands centred on the given frequencies.
+   *
+   * @param binCount The number of frequency indexes in the frames it will be applied to.
+   * @param samplingRate The sampling rate of the clip.
+   * @param centreHz The centre frequency of each band, in Hz, in increasing order. The first and
+   *        last entries are only the edges of the first and last bands, not bands themselves.
+   */
+  private Filterbank(int binCount, double samplingRate, double[] centreHz) {
+    this.binCount = binCount;
+    double binWidth = samplingRate / 2.0 / binCount;
+    int bands = centreHz.length - 2;
+    firstBins = new int[bands];
+    weights = new float[bands][];
+    centres = new double[bands];
+    for (int b = 0; b < bands; b++) {
+      double lower = centreHz[b] / binWidth;
+      double centre = centreHz[b + 1] / binWidth;
+      double upper = centreHz[b + 2] / binWidth;
+      centres[b] = centre;
+      int first = (int) Math.ceil(lower);
+      int last = (int) Math.floor(upper);
+      if (first == lower) {
+        first++;
+      }
+      if (last == upper) {
+        last--;
+      }
+      first = Math.max(0, first);
+      last = Math.min(binCount - 1, last);
+      float[] w;
+      if (last - first < 1) {
+        // narrower than the index spacing: interpolate between the nearest two
+        first = Math.max(0, Math.min(binCount - 2, (int) Math.floor(centre)));
+        double frac = Math.max(0.0, Math.min(1.0, centre - first));
+        w = new float[] { (float) (1.0 - frac), (float) frac };
+      } else {
+        w = new float[last - first + 1];
+        double sum = 0.0;
+        for (int k = first; k <= last; k++) {
+          double v = k <= centre ? (k - lower) / (centre - lower) : (upper - k) / (upper - centre);
+          w[k - first] = (float) v;
+          sum += v;
+        }
+        for (int k = 0; k < w.length; k++) {
+          w[k] /= sum;
+        }
+      }
+      firstBins[b] = first;
+      weights[b] = w;
+    }
+  }
+
+  /**
+   * Creates a filterbank with bands spaced evenly on the mel scale, which follows how far apart
+   * people hear pitches to be.
+   *
+   * @param binCount The number of frequency indexes in the frames it will be applied to.
+   * @param samplingRate The sampling rate of the clip.
+   * @param bands The number of bands.
+   * @param minHz The bottom edge of the lowest band.
+   * @param maxHz The top edge of the highest band.
+   */
+  public static Filterbank mel(int binCount, double samplingRate, int bands, double minHz,
+      double maxHz) {
+    double minMel = toMel(minHz);
+    double maxMel = toMel(maxHz);
+    double[] centreHz = new double[bands + 2];
+    for (int i = 0; i < centreHz.length; i++) {
+      centreHz[i] = fromMel(minMel + (maxMel - minMel) * i / (bands + 1));
+    }
+    return new Filterbank(binCount, samplingRate, centreHz);
+  }
+
+  /**
+   * Creates a filterbank with a fixed number of bands per octave, so every note of the scale gets
+   * the same height.
+   *
+   * @param binCount The number of frequency indexes in the frames it will be applied to.
+   * @param samplingRate The sampling rate of the clip.
+   * @param bandsPerOctave The number of bands in each octave; 12 gives one per semitone.
+   * @param minHz The centre of the lowest band.
+   * @param maxHz The highest band is the last one centred at or below this frequency.
+   */
+  public static Filterbank constantQ(int binCount, double samplingRate, int bandsPerOctave,
+      double minHz, double maxHz) {
+    int bands = (int) Math.floor(bandsPerOctave * Math.log(maxHz / minHz) / Math.log(2.0)) + 1;
+    double[] centreHz = new double[bands + 2];
+    for (int i = 0; i < centreHz.length; i++) {
+      centreHz[i] = minHz * Math.pow(2.0, (i - 1) / (double) bandsPerOctave);
+    }
+    return new Filterbank(binCount, samplingRate, centreHz);
+  }
+
+  private static double toMel(double hz) {
+    return 2595.0 * Math.log10(1.0 + hz / 700.0);
+  }
+
+  private static double fromMel(double mel) {
+    return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+  }
+
+  /**
+   * Returns the number of bands.
+   */
+  public int getBandCount() {
+    return centres.length;
+  }
+
+  /**
+   * Returns the number of frequency indexes in the frames this filterbank applies to.
+   */
+  public int getBinCount() {
+    return binCount;
+  }
+
+  /**
+   * Computes the value of every band for one frame.
+   *
+   * @param spectrum All the frequency indexes of the frame.
+   * @param dest The array to put the band values in. Must be at least as long as the number of
+   *        bands.
+   */
+  public void apply(double[] spectrum, float[] dest) {
+    for (int b = 0; b < weights.length; b++) {
+      float[] w = weights[b];
+      int first = firstBins[b];
+      double sum = 0.0;
+      for (int k = 0; k < w.length; k++) {
+        sum += w[k] * Math.abs(spectrum[first + k]);
+      }
+      dest[b] = (float) sum;
+    }
+  }
+
+  /**
+   * Returns the range of bands whose weights include any of the given frequency indexes.
+   *
+   * @param firstBin The first frequency index.
+   * @param endBin One past the last frequency index.
+   * @return The first band and one past the last band, which are equal if no band is affected.
+   */
+  public int[] getBandRange(int firstBin, int endBin) {
+    int first = weights.length;
+    int end = 0;
+    for (int b = 0; b < weights.length; b++) {
+      if (firstBins[b] < endBin && firstBins[b] + weights[b].length > firstBin) {
+        first = Math.min(first, b);
+        end = b + 1;
+      }
+    }
+    return first < end ? new int[] { first, end } : new int[] { 0, 0 };
+  }
+
+  /**
+   * Converts a position on the band scale to a fractional frequency index. Band b is centred at
+   * position b; positions between bands are interpolated linearly, and positions beyond the ends
+   * carry on at the spacing of the nearest two bands.
+   */
+  public double toBin(double band) {
+    int n = centres.length;
+    if (n == 1) {
+      return centres[0];
+    }
+    int i = Math.max(0, Math.min(n - 2, (int) Math.floor(band)));
+    return centres[i] + (band - i) * (centres[i + 1] - centres[i]);
+  }
+
+  /**
+   * Converts a fractional frequency index to a position on the band scale. This is the inverse of
+   * {@link #toBin(double)}.
+   */
+  public double toBand(double bin) {
+    int n = centres.length;
+    if (n == 1) {
+      return 0.0;
+    }
+    int lo = 0;
+    int hi = n - 1;
+    while (hi - lo > 1) {
+      int mid = (lo + hi) >>> 1;
+      if (centres[mid] <= bin) {
+        lo = mid;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo + (bin - centres[lo]) / (centres[lo + 1] - centres[lo]);
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.BitSet;
+
+/**
+ * The band values of every frame of a clip under a {@link Filterbank}, kept so a
+ * {@link SpectralPyramid} can draw the clip on a mel or constant-Q scale without applying the
+ * filterbank to every frame each time it's drawn. The view is a fraction of the size of the clip,
+ * since there are far fewer bands than frequency indexes.
+ * <p>
+ * Frames are computed by {@link #build()}, which is meant to be called on a background thread, or
+ * on demand the first time they're read. Changes to the clip data must be reported through
+ * {@link #invalidate(Rectangle)}, which marks the affected frames to be computed again the next
+ * time they're read.
+ */
+class FilterbankView {
+
+  /**
+   * The number of frames handed to a worker thread at a time while building.
+   */
+  private static final int BUILD_GRAIN = 256;
+
+  private final Clip clip;
+
+  private final Filterbank filterbank;
+
+  private final int bands;
+
+  /**
+   * The band values, in column-major order (all bands of frame 0, then all of frame 1, ...).
+   */
+  private final float[] data;
+
+  /**
+   * The frames whose band values need computing. Guarded by itself.
+   */
+  private final BitSet stale = new BitSet();
+
+  /**
+   * The number of calls to {@link #invalidate(Rectangle)} so far. Guarded by {@link #stale}.
+   */
+  private long invalidations;
+
+  FilterbankView(Clip clip, Filterbank filterbank) {
+    if (filterbank.getBinCount() != clip.getFrameFreqSamples()) {
+      throw new IllegalArgumentException("Filterbank is for " + filterbank.getBinCount()
+          + " frequency indexes, but the clip has " + clip.getFrameFreqSamples());
+    }
+    this.clip = clip;
+    this.filterbank = filterbank;
+    bands = filterbank.getBandCount();
+    data = new float[clip.getFrameCount() * bands];
+    stale.set(0, clip.getFrameCount());
+  }
+
+  Filterbank getFilterbank() {
+    return filterbank;
+  }
+
+  int getBandCount() {
+    return bands;
+  }
+
+  /**
+   * Computes every frame that isn't up to date yet, in parallel.
+   */
+  void build() {
+    Parallel.forRange(0, clip.getFrameCount(), BUILD_GRAIN, new Parallel.RangeTask() {
+      @Override
+      public void run(int start, int end) {
+        double[] spectrum = new double[clip.getFrameFreqSamples()];
+        float[] values = new float[bands];
+        for (int frame = start; frame < end; frame++) {
+          refresh(frame, spectrum, values);
+        }
+      }
+    });
+  }
+
+  /**
+   * Marks the frames of the given region, in clip co-ordinates, as needing to be computed again.
+   */
+  void invalidate(Rectangle region) {
+    int start = Math.max(0, region.x);
+    int end = Math.min(clip.getFrameCount(), region.x + region.width);
+    if (start < end) {
+      synchronized (stale) {
+        stale.set(start, end);
+        invalidations++;
+      }
+    }
+  }
+
+  /**
+   * Copies a run of band values of one frame into the given array, computing them first if the
+   * frame isn't up to date.
+   *
+   * @param frame The frame number.
+   * @param firstBand The first band to copy.
+   * @param dest The array to copy into, starting at position 0.
+   * @param length The number of bands to copy.
+   */
+  void getColumn(int frame, int firstBand, double[] dest, int length) {
+    boolean isStale;
+    synchronized (stale) {
+      isStale = stale.get(frame);
+    }
+    if (isStale) {
+      float[] values = new float[bands];
+      if (refresh(frame, new double[clip.getFrameFreqSamples()], values)) {
+        for (int i = 0; i < length; i++) {
+          dest[i] = values[firstBand + i];
+        }
+        return;
+      }
+    }
+    int base = frame * bands + firstBand;
+    for (int i = 0; i < length; i++) {
+      dest[i] = data[base + i];
+    }
+  }
+
+  /**
+   * Computes the band values of the given frame into values if the frame is stale, and stores them
+   * in the view. The frame is only marked up to date if nothing was invalidated while it was being
+   * computed, so a change made in the meantime is never lost.
+   *
+   * @return true if the frame was computed; false if it was already up to date, in which case
+   *         values is left as it was.
+   */
+  private boolean refresh(int frame, double[] spectrum, float[] values) {
+    long before;
+    synchronized (stale) {
+      if (!stale.get(frame)) {
+        return false;
+      }
+      before = invalidations;
+    }
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(frame, 1);
+    try {
+      clip.getFrame(frame).getReal(0, spectrum, 0, spectrum.length);
+    } finally {
+      locks.unlockRead(frame, 1);
+    }
+    filterbank.apply(spectrum, values);
+    synchronized (stale) {
+      if (invalidations == before) {
+        System.arraycopy(values, 0, data, frame * bands, bands);
+        stale.clear(frame);
+      }
+    }
+    return true;
+  }
+}
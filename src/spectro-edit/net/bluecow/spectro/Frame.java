@@ -24,15 +24,23 @@ import edu.emory.mathcs.jtransforms.dct.DoubleDCT_1D;
 /**
  * A frame of audio data, represented in the frequency domain. The specific frequency components of
  * this frame are modifiable.
+ * <p>
+ * The components are stored in copy-on-write {@link FrameBlock}s of {@link FrameBlock#SIZE}
+ * values, so undo snapshots can share blocks with the frame rather than copying them.
  */
 public class Frame {
 
   private static final Logger logger = Logger.getLogger(Frame.class.getName());
 
   /**
-   * Array of spectral data.
+   * The spectral data, in blocks of {@link FrameBlock#SIZE} values.
    */
-  private double[] data;
+  private final FrameBlock[] blocks;
+
+  /**
+   * The number of spectral values in this frame.
+   */
+  private final int length;
 
   /**
    * Maps frame size to the DCT instance that handles that size.
@@ -55,11 +63,17 @@ public class Frame {
     double min = Double.POSITIVE_INFINITY;
     double max = Double.NEGATIVE_INFINITY;
 
-    data = new double[frameSize];
-    for (int i = 0; i < data.length; i++) {
-      data[i] = timeData[i];
-      min = Math.min(data[i], min);
-      max = Math.max(data[i], max);
+    length = frameSize;
+    blocks = new FrameBlock[(frameSize + FrameBlock.MASK) >> FrameBlock.SHIFT];
+    for (int b = 0; b < blocks.length; b++) {
+      int start = b << FrameBlock.SHIFT;
+      double[] data = new double[Math.min(FrameBlock.SIZE, frameSize - start)];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = timeData[start + i];
+        min = Math.min(data[i], min);
+        max = Math.max(data[i], max);
+      }
+      blocks[b] = new FrameBlock(data);
     }
 
     if (logger.isLoggable(Level.FINER)) {
@@ -67,6 +81,29 @@ public class Frame {
     }
   }
 
+  /**
+   * Creates a frame holding the given spectral data, with the same length and window function as
+   * the given frame.
+   *
+   * @param template The frame to take the length and window function from.
+   * @param spectrum The spectral data. Must be exactly as long as the template.
+   */
+  Frame(Frame template, double[] spectrum) {
+    if (spectrum.length != template.length) {
+      throw new IllegalArgumentException(
+          "Spectrum has " + spectrum.length + " values; expected " + template.length);
+    }
+    windowFunc = template.windowFunc;
+    length = template.length;
+    blocks = new FrameBlock[template.blocks.length];
+    for (int b = 0; b < blocks.length; b++) {
+      int start = b << FrameBlock.SHIFT;
+      double[] data = new double[Math.min(FrameBlock.SIZE, length - start)];
+      System.arraycopy(spectrum, start, data, 0, data.length);
+      blocks[b] = new FrameBlock(data);
+    }
+  }
+
   private static DoubleDCT_1D getDctInstance(int frameSize) {
     DoubleDCT_1D dct = dctInstances.get(frameSize);
     if (dct == null) {
@@ -82,14 +119,33 @@ public class Frame {
    * @return
    */
   public int getLength() {
-    return data.length;
+    return length;
   }
 
   /**
    * Returns the idx'th real component of this frame's spectrum.
    */
   public double getReal(int idx) {
-    return data[idx];
+    return blocks[idx >> FrameBlock.SHIFT].data[idx & FrameBlock.MASK];
+  }
+
+  /**
+   * Copies a run of real components of this frame's spectrum into the given array.
+   * 
+   * @param idx The index of the first component to copy.
+   * @param dest The array to copy into.
+   * @param destPos The position in dest that the idx'th component goes to.
+   * @param length The number of components to copy.
+   */
+  public void getReal(int idx, double[] dest, int destPos, int length) {
+    int end = idx + length;
+    while (idx < end) {
+      int offset = idx & FrameBlock.MASK;
+      int n = Math.min(end - idx, FrameBlock.SIZE - offset);
+      System.arraycopy(blocks[idx >> FrameBlock.SHIFT].data, offset, dest, destPos, n);
+      idx += n;
+      destPos += n;
+    }
   }
 
   /**
@@ -107,7 +163,94 @@ public class Frame {
    * @param d The new value
    */
   public void setReal(int idx, double d) {
-    data[idx] = d;
+    int b = idx >> FrameBlock.SHIFT;
+    FrameBlock block = blocks[b];
+    if (block.getRefCount() > 1) {
+      // somebody else (an undo snapshot) needs the old values
+      FrameBlock copy = block.copy();
+      blocks[b] = copy;
+      block.release();
+      block = copy;
+    }
+    block.data[idx & FrameBlock.MASK] = d;
+  }
+
+  /**
+   * Sets a run of real components of this frame's spectrum from the given array.
+   * 
+   * @param idx The index of the first component to set.
+   * @param src The array to copy from.
+   * @param srcPos The position in src of the new value for the idx'th component.
+   * @param length The number of components to set.
+   */
+  public void setReal(int idx, double[] src, int srcPos, int length) {
+    int end = idx + length;
+    while (idx < end) {
+      int b = idx >> FrameBlock.SHIFT;
+      int offset = idx & FrameBlock.MASK;
+      int n = Math.min(end - idx, FrameBlock.SIZE - offset);
+      FrameBlock block = blocks[b];
+      if (block.getRefCount() > 1) {
+        FrameBlock copy = block.copy();
+        blocks[b] = copy;
+        block.release();
+        block = copy;
+      }
+      System.arraycopy(src, srcPos, block.data, offset, n);
+      idx += n;
+      srcPos += n;
+    }
+  }
+
+  /**
+   * Returns the number of blocks this frame's data is stored in.
+   */
+  int getBlockCount() {
+    return blocks.length;
+  }
+
+  /**
+   * Returns new references to a run of this frame's blocks. The caller must
+   * {@link FrameBlock#release() release} them when it no longer needs them. While the references
+   * are held, the blocks' contents won't change.
+   *
+   * @param firstBlock The index of the first block.
+   * @param dest The array to put the blocks into. Its length is the number of blocks returned.
+   */
+  void shareBlocks(int firstBlock, FrameBlock[] dest) {
+    for (int i = 0; i < dest.length; i++) {
+      dest[i] = blocks[firstBlock + i].acquire();
+    }
+  }
+
+  /**
+   * Copies the values of the frequency indexes in [from, to) from a run of blocks that were
+   * previously obtained from {@link #shareBlocks(int, FrameBlock[])}. Blocks that lie entirely
+   * within the range are put back by reference, which costs nothing; the rest are copied value by
+   * value.
+   *
+   * @param firstBlock The index of the block that src[0] corresponds to.
+   * @param src The blocks to restore from.
+   * @param from The first frequency index to restore.
+   * @param to One past the last frequency index to restore.
+   */
+  void restoreBlocks(int firstBlock, FrameBlock[] src, int from, int to) {
+    for (int i = 0; i < src.length; i++) {
+      int b = firstBlock + i;
+      int blockStart = b << FrameBlock.SHIFT;
+      int blockEnd = blockStart + src[i].data.length;
+      if (from <= blockStart && blockEnd <= to) {
+        if (blocks[b] != src[i]) {
+          FrameBlock old = blocks[b];
+          blocks[b] = src[i].acquire();
+          old.release();
+        }
+      } else if (blocks[b] != src[i]) {
+        for (int idx = Math.max(from, blockStart); idx < Math.min(to, blockEnd); idx++) {
+          setReal(idx, src[i].data[idx - blockStart]);
+        }
+      }
+    }
   }
 
   /**
@@ -117,9 +260,9 @@ public class Frame {
    * have the same length as the original array given in the constructor.
    */
   public double[] asTimeData() {
-    double[] timeData = new double[data.length];
-    System.arraycopy(data, 0, timeData, 0, data.length);
-    DoubleDCT_1D dct = getDctInstance(data.length);
+    double[] timeData = new double[length];
+    getReal(0, timeData, 0, length);
+    DoubleDCT_1D dct = getDctInstance(length);
     dct.inverse(timeData, true);
     windowFunc.applyWindow(timeData);
     return timeData;
@@ -132,7 +275,9 @@ public class Frame {
     double[] orig = new double[] {1, 2, 3, 4, 5, 0, 9, 8, 7, 6, 5, 4, 3, 2, 1, 7};
     System.out.println(Arrays.toString(orig));
     Frame f = new Frame(orig, new NullWindowFunction());
-    System.out.println(Arrays.toString(f.data));
+    double[] freqData = new double[f.getLength()];
+    f.getReal(0, freqData, 0, freqData.length);
+    System.out.println(Arrays.toString(freqData));
     System.out.println(Arrays.toString(f.asTimeData()));
   }
 
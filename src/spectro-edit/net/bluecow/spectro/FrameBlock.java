@@ -0,0 +1,82 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A block of consecutive spectral values belonging to one {@link Frame}. Blocks are shared between
+ * a frame and any undo snapshots of it, and are reference counted: a frame only modifies a block
+ * in place while nobody else holds a reference to it, and copies it first otherwise. Once a block
+ * is shared its contents never change, so a snapshot can hang on to it instead of copying the
+ * data.
+ */
+final class FrameBlock {
+
+  /**
+   * log2 of {@link #SIZE}.
+   */
+  static final int SHIFT = 6;
+
+  /**
+   * The number of values in a full block. The last block of a frame may be shorter.
+   */
+  static final int SIZE = 1 << SHIFT;
+
+  /**
+   * Masks a frequency index down to its position within its block.
+   */
+  static final int MASK = SIZE - 1;
+
+  final double[] data;
+
+  private final AtomicInteger refs = new AtomicInteger(1);
+
+  /**
+   * Creates a block holding the given array, with one reference (the caller's).
+   */
+  FrameBlock(double[] data) {
+    this.data = data;
+  }
+
+  /**
+   * Adds a reference to this block and returns it.
+   */
+  FrameBlock acquire() {
+    refs.incrementAndGet();
+    return this;
+  }
+
+  /**
+   * Drops a reference to this block.
+   */
+  void release() {
+    refs.decrementAndGet();
+  }
+
+  /**
+   * Returns the number of holders of this block.
+   */
+  int getRefCount() {
+    return refs.get();
+  }
+
+  /**
+   * Returns a new, unshared block with the same contents as this one.
+   */
+  FrameBlock copy() {
+    return new FrameBlock(data.clone());
+  }
+}
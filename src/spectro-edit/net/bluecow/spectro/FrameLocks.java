@@ -0,0 +1,140 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read/write locks for the frames of a clip. The frames are divided into stripes of
+ * {@link #STRIPE_FRAMES} consecutive frames, and each stripe has its own lock, so playback,
+ * rendering and analysis only ever wait for edits to the same part of the clip, and only for as
+ * long as the edit takes to write its data.
+ * <p>
+ * Code that reads frame data from a thread other than the one doing the editing should hold a read
+ * lock on the frames it reads while it reads them, and code that modifies frame data should hold a
+ * write lock on the frames it modifies while it modifies them. Locks should be held for short bulk
+ * operations (copying a frame, applying a tool to a region), never across user interaction.
+ * <p>
+ * A range of stripes is always locked in ascending order, so two threads locking overlapping ranges
+ * can't deadlock. To keep it that way, don't lock a second range while holding the first; lock the
+ * union instead. As with {@link ReentrantReadWriteLock}, a thread holding a write lock may also
+ * take a read lock on the same frames, but not the other way around.
+ */
+public class FrameLocks {
+
+  /**
+   * The number of consecutive frames covered by each lock.
+   */
+  public static final int STRIPE_FRAMES = 64;
+
+  private final ReentrantReadWriteLock[] stripes;
+
+  /**
+   * The frame number in the clip that owns the stripes of frame 0 as numbered by this object.
+   */
+  private final int offset;
+
+  FrameLocks(int frameCount) {
+    stripes = new ReentrantReadWriteLock[Math.max(1, (frameCount + STRIPE_FRAMES - 1)
+        / STRIPE_FRAMES)];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new ReentrantReadWriteLock();
+    }
+    offset = 0;
+  }
+
+  /**
+   * Creates locks for a window onto the frames guarded by the given locks, for a
+   * {@link ClipView}. The locks are shared, so locking frame <i>i</i> here locks frame
+   * <i>firstFrame + i</i> there.
+   */
+  FrameLocks(FrameLocks parent, int firstFrame) {
+    stripes = parent.stripes;
+    offset = parent.offset + firstFrame;
+  }
+
+  /**
+   * Blocks until the calling thread holds a read lock on the given frames. Frame numbers outside the
+   * clip are ignored.
+   *
+   * @param firstFrame The first frame to lock.
+   * @param nFrames The number of frames to lock.
+   */
+  public void lockRead(int firstFrame, int nFrames) {
+    int last = lastStripe(firstFrame, nFrames);
+    for (int i = firstStripe(firstFrame); i <= last; i++) {
+      stripes[i].readLock().lock();
+    }
+  }
+
+  /**
+   * Releases a read lock taken by {@link #lockRead(int, int)} with the same arguments.
+   */
+  public void unlockRead(int firstFrame, int nFrames) {
+    int first = firstStripe(firstFrame);
+    for (int i = lastStripe(firstFrame, nFrames); i >= first; i--) {
+      stripes[i].readLock().unlock();
+    }
+  }
+
+  /**
+   * Blocks until the calling thread holds a write lock on the given frames. Frame numbers outside
+   * the clip are ignored.
+   *
+   * @param firstFrame The first frame to lock.
+   * @param nFrames The number of frames to lock.
+   */
+  public void lockWrite(int firstFrame, int nFrames) {
+    int last = lastStripe(firstFrame, nFrames);
+    for (int i = firstStripe(firstFrame); i <= last; i++) {
+      stripes[i].writeLock().lock();
+    }
+  }
+
+  /**
+   * Releases a write lock taken by {@link #lockWrite(int, int)} with the same arguments.
+   */
+  public void unlockWrite(int firstFrame, int nFrames) {
+    int first = firstStripe(firstFrame);
+    for (int i = lastStripe(firstFrame, nFrames); i >= first; i--) {
+      stripes[i].writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the first frame covered by the same lock as the given frame. Work that write-locks
+   * frames on several threads should be divided along these boundaries, so the threads never
+   * queue for the same lock.
+   */
+  public int getStripeStart(int frame) {
+    return Math.floorDiv(frame + offset, STRIPE_FRAMES) * STRIPE_FRAMES - offset;
+  }
+
+  private int firstStripe(int firstFrame) {
+    return Math.min(stripes.length - 1, (Math.max(0, firstFrame) + offset) / STRIPE_FRAMES);
+  }
+
+  /**
+   * Returns the last stripe of the given range, or one less than the first stripe if the range
+   * doesn't include any frames.
+   */
+  private int lastStripe(int firstFrame, int nFrames) {
+    if (nFrames <= 0) {
+      return firstStripe(firstFrame) - 1;
+    }
+    long lastFrame = Math.max(0L, (long) firstFrame + nFrames - 1) + offset;
+    return (int) Math.min(stripes.length - 1, lastFrame / STRIPE_FRAMES);
+  }
+}
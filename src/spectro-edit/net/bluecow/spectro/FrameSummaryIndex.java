@@ -0,0 +1,266 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+
+/**
+ * A few numbers describing each frame of a clip, kept in primitive arrays so features that look at
+ * the clip frame by frame (silence skipping, finding loud events, auto-zoom) can scan thousands of
+ * frames in microseconds instead of reading every cell. For each frame it holds:
+ * <ul>
+ * <li>the energy, the sum of the squares of the frame's cells
+ * <li>the peak: the frequency index of the cell with the largest magnitude, and that magnitude
+ * <li>the spectral centroid, the magnitude-weighted mean frequency index
+ * <li>the spectral flatness, the geometric mean of the cells' power divided by its arithmetic
+ * mean, which is near 1 for noise and near 0 for tones and silence
+ * </ul>
+ * The index is computed on all processors when the clip is created, and recomputed for the frames
+ * touched by every change to the clip on a background thread. Each recomputation is published when
+ * it finishes (see {@link #getAppliedSequence()}), and every query sees all the ones published
+ * before it started, so answers are behind the clip by at most the changes whose recomputation is
+ * still in flight. Frames being recomputed during a query may be seen partly updated.
+ *
+ * @see Clip#getFrameSummaries()
+ */
+public class FrameSummaryIndex {
+
+  /**
+   * The number of frames handed to a worker thread at a time.
+   */
+  private static final int FRAME_GRAIN = 64;
+
+  /**
+   * Added to each cell's power before taking its logarithm for the flatness, so a single zeroed
+   * cell doesn't make the whole frame perfectly tonal.
+   */
+  private static final double POWER_FLOOR = 1e-12;
+
+  private final Clip clip;
+
+  private final float[] energy;
+
+  private final int[] peakBin;
+
+  private final float[] peakMagnitude;
+
+  private final float[] centroid;
+
+  private final float[] flatness;
+
+  /**
+   * The sequence number of the last change whose summaries have been written. Written after the
+   * arrays, and read by every query before it looks at them, which makes the writes visible to
+   * the querying thread.
+   */
+  private volatile long appliedSequence;
+
+  /**
+   * Computes the summaries of all the clip's frames, and starts keeping them up to date.
+   */
+  FrameSummaryIndex(Clip clip) {
+    this.clip = clip;
+    int n = clip.getFrameCount();
+    energy = new float[n];
+    peakBin = new int[n];
+    peakMagnitude = new float[n];
+    centroid = new float[n];
+    flatness = new float[n];
+    long sequence = clip.getLastChangeSequence();
+    update(0, n);
+    appliedSequence = sequence;
+    clip.addClipDataChangeListener(new ClipDataChangeListener() {
+      @Override
+      public void clipDataChanged(ClipDataChangeEvent e) {
+        Rectangle r = e.getRegion();
+        int start = Math.max(0, r.x);
+        update(start, Math.min(energy.length, r.x + r.width) - start);
+        appliedSequence = e.getLastSequence();
+      }
+    }, ClipDataChangeBus.BACKGROUND);
+  }
+
+  /**
+   * Returns the sequence number of the last change to the clip that the summaries reflect (see
+   * {@link Clip#getLastChangeSequence()}). Changes with higher numbers are still being summarized.
+   */
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  /**
+   * Reads {@link #appliedSequence}, which makes the summaries published so far visible to the
+   * calling thread. Every query calls this before it looks at the arrays.
+   */
+  private long acquire() {
+    return appliedSequence;
+  }
+
+  /**
+   * Recomputes the summaries of the given frames in parallel.
+   */
+  private void update(int firstFrame, int nFrames) {
+    Parallel.forRange(firstFrame, firstFrame + nFrames, FRAME_GRAIN, new Parallel.RangeTask() {
+      @Override
+      public void run(int start, int end) {
+        double[] data = new double[clip.getFrameFreqSamples()];
+        for (int i = start; i < end; i++) {
+          FrameLocks locks = clip.getFrameLocks();
+          locks.lockRead(i, 1);
+          try {
+            clip.getFrame(i).getReal(0, data, 0, data.length);
+          } finally {
+            locks.unlockRead(i, 1);
+          }
+          summarize(i, data);
+        }
+      }
+    });
+  }
+
+  private void summarize(int frame, double[] data) {
+    double sumSquares = 0.0;
+    double sumMagnitudes = 0.0;
+    double weightedBins = 0.0;
+    double sumLogPower = 0.0;
+    int peak = 0;
+    double peakValue = 0.0;
+    for (int j = 0; j < data.length; j++) {
+      double m = Math.abs(data[j]);
+      double p = m * m;
+      sumSquares += p;
+      sumMagnitudes += m;
+      weightedBins += m * j;
+      sumLogPower += Math.log(p + POWER_FLOOR);
+      if (m > peakValue) {
+        peakValue = m;
+        peak = j;
+      }
+    }
+    energy[frame] = (float) sumSquares;
+    peakBin[frame] = peak;
+    peakMagnitude[frame] = (float) peakValue;
+    centroid[frame] = sumMagnitudes == 0.0 ? 0.0f : (float) (weightedBins / sumMagnitudes);
+    double meanPower = sumSquares / data.length;
+    if (meanPower < POWER_FLOOR) {
+      // silence; the floor would otherwise make every cell equal and the frame perfectly flat
+      flatness[frame] = 0.0f;
+    } else {
+      flatness[frame] = (float) Math.min(1.0,
+          Math.exp(sumLogPower / data.length) / (meanPower + POWER_FLOOR));
+    }
+  }
+
+  /**
+   * Returns the number of frames in the index, which is the number of frames in the clip.
+   */
+  public int getFrameCount() {
+    return energy.length;
+  }
+
+  /**
+   * Returns the sum of the squares of the given frame's cells.
+   */
+  public double getEnergy(int frame) {
+    acquire();
+    return energy[frame];
+  }
+
+  /**
+   * Returns the level of the given frame in decibels: the mean power of its cells relative to a
+   * cell value of 1.0.
+   */
+  public double getLevel(int frame) {
+    acquire();
+    return 10.0 * Math.log10(energy[frame] / clip.getFrameFreqSamples() + POWER_FLOOR);
+  }
+
+  /**
+   * Returns the frequency index of the given frame's cell with the largest magnitude.
+   */
+  public int getPeakBin(int frame) {
+    acquire();
+    return peakBin[frame];
+  }
+
+  /**
+   * Returns the largest magnitude of any cell in the given frame.
+   */
+  public double getPeakMagnitude(int frame) {
+    acquire();
+    return peakMagnitude[frame];
+  }
+
+  /**
+   * Returns the magnitude-weighted mean frequency index of the given frame, or 0 for a silent
+   * frame.
+   */
+  public double getCentroid(int frame) {
+    acquire();
+    return centroid[frame];
+  }
+
+  /**
+   * Returns the spectral flatness of the given frame, between 0 (a pure tone, or silence) and 1
+   * (white noise).
+   */
+  public double getFlatness(int frame) {
+    acquire();
+    return flatness[frame];
+  }
+
+  /**
+   * Returns the first frame at or after the given one whose level is above the given level, or -1
+   * if there isn't one.
+   *
+   * @param startFrame The frame to start looking at.
+   * @param levelDb The level in decibels, as returned by {@link #getLevel(int)}.
+   */
+  public int findNextFrameAbove(int startFrame, double levelDb) {
+    acquire();
+    float threshold = toEnergy(levelDb);
+    for (int i = Math.max(0, startFrame); i < energy.length; i++) {
+      if (energy[i] > threshold) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the first frame at or after the given one whose level is at or below the given level,
+   * or -1 if there isn't one.
+   *
+   * @param startFrame The frame to start looking at.
+   * @param levelDb The level in decibels, as returned by {@link #getLevel(int)}.
+   */
+  public int findNextFrameBelow(int startFrame, double levelDb) {
+    acquire();
+    float threshold = toEnergy(levelDb);
+    for (int i = Math.max(0, startFrame); i < energy.length; i++) {
+      if (energy[i] <= threshold) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Converts a level in decibels to the frame energy it corresponds to.
+   */
+  private float toEnergy(double levelDb) {
+    return (float) ((Math.pow(10.0, levelDb / 10.0) - POWER_FLOOR) * clip.getFrameFreqSamples());
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * The ways a {@link ClipPanel} can lay out frequencies from bottom to top.
+ *
+ * @see ClipPanel#setFrequencyScale(FrequencyScale)
+ */
+public enum FrequencyScale {
+
+  /**
+   * One row per frequency index of the clip's frames, evenly spaced in Hz.
+   */
+  LINEAR("Linear"),
+
+  /**
+   * 256 bands evenly spaced on the mel scale, from 0Hz to the top of the clip's range.
+   */
+  MEL("Mel"),
+
+  /**
+   * 24 bands per octave (quarter tones), from A1 (55Hz) to the top of the clip's range.
+   */
+  CONSTANT_Q("Constant-Q");
+
+  private final String label;
+
+  private FrequencyScale(String label) {
+    this.label = label;
+  }
+
+  /**
+   * Returns the filterbank that maps the given clip's frames onto this scale, or null for
+   * {@link #LINEAR}, which shows the frames as they are.
+   */
+  public Filterbank createFilterbank(Clip clip) {
+    int bins = clip.getFrameFreqSamples();
+    double nyquist = clip.getSamplingRate() / 2.0;
+    switch (this) {
+    case MEL:
+      return Filterbank.mel(bins, clip.getSamplingRate(), 256, 0.0, nyquist);
+    case CONSTANT_Q:
+      return Filterbank.constantQ(bins, clip.getSamplingRate(), 24, 55.0, nyquist * 0.95);
+    default:
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return label;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * Splits a clip into a harmonic layer (steady tones, which are horizontal lines in the spectrogram)
+ * and a percussive layer (clicks and hits, which are vertical lines) by median filtering. A median
+ * across time of each frequency keeps the tones and suppresses the hits; a median across frequency
+ * of each frame does the opposite. Each cell is then shared between the layers in proportion to the
+ * squares of the two medians, so the layers add up to the original clip.
+ * <p>
+ * The medians are kept with {@link SlidingMedian}s rather than by sorting every window, and the
+ * clip is processed in runs of frames on all available processors. Each run reads the frames it
+ * needs once, as a stream, so the only large allocation is the layer being made: a clip hours long
+ * can be separated with a single extra copy of its spectral data.
+ */
+public class HarmonicPercussiveSeparator {
+
+  /**
+   * The layers a clip can be separated into.
+   */
+  public enum Layer {
+    HARMONIC, PERCUSSIVE
+  }
+
+  /**
+   * The number of frames handed to a worker thread at a time. Each run re-reads the frames within
+   * half a window of its ends, so this should be large compared to the window.
+   */
+  private static final int FRAME_GRAIN = 256;
+
+  /**
+   * The default width of the median across time, in frames.
+   */
+  public static final int DEFAULT_TIME_WINDOW = 17;
+
+  /**
+   * The default height of the median across frequency, in frequency indexes.
+   */
+  public static final int DEFAULT_FREQ_WINDOW = 17;
+
+  private final int timeWindow;
+
+  private final int freqWindow;
+
+  /**
+   * Creates a separator with the default window sizes.
+   */
+  public HarmonicPercussiveSeparator() {
+    this(DEFAULT_TIME_WINDOW, DEFAULT_FREQ_WINDOW);
+  }
+
+  /**
+   * @param timeWindow The number of frames in the median across time. Wider windows put more of
+   *        a tone's attack into the percussive layer. Must be odd.
+   * @param freqWindow The number of frequency indexes in the median across frequency. Taller
+   *        windows put more of a wide-band sound into the percussive layer. Must be odd.
+   */
+  public HarmonicPercussiveSeparator(int timeWindow, int freqWindow) {
+    if (timeWindow < 1 || timeWindow % 2 == 0 || freqWindow < 1 || freqWindow % 2 == 0) {
+      throw new IllegalArgumentException(
+          "Window sizes must be odd and positive: " + timeWindow + ", " + freqWindow);
+    }
+    this.timeWindow = timeWindow;
+    this.freqWindow = freqWindow;
+  }
+
+  /**
+   * Returns a new clip holding the given layer of the given clip. The clip isn't modified.
+   */
+  public Clip separate(final Clip clip, final Layer layer) {
+    final int frameCount = clip.getFrameCount();
+    final Frame[] layerFrames = new Frame[frameCount];
+    Parallel.forRange(0, frameCount, FRAME_GRAIN, new Parallel.RangeTask() {
+      @Override
+      public void run(int start, int end) {
+        separate(clip, layer, start, end, layerFrames);
+      }
+    });
+    String name = (layer == Layer.HARMONIC ? "Harmonic part of " : "Percussive part of ")
+        + clip.getName();
+    return new Clip(name, layerFrames, clip.getFrameTimeSamples(), clip.getOverlap());
+  }
+
+  /**
+   * Computes the given layer of frames [start, end) of the clip into the corresponding elements of
+   * layerFrames.
+   */
+  private void separate(Clip clip, Layer layer, int start, int end, Frame[] layerFrames) {
+    int frameCount = clip.getFrameCount();
+    int bins = clip.getFrameFreqSamples();
+    int halfTime = timeWindow / 2;
+    int halfFreq = freqWindow / 2;
+
+    // the last few frames read, so each frame is still at hand when the window reaches past it
+    double[][] recent = new double[halfTime + 1][bins];
+    SlidingMedian[] acrossTime = new SlidingMedian[bins];
+    for (int j = 0; j < bins; j++) {
+      acrossTime[j] = new SlidingMedian(timeWindow);
+    }
+    SlidingMedian acrossFreq = new SlidingMedian(freqWindow);
+    double[] magnitudes = new double[bins];
+    double[] spectrum = new double[bins];
+
+    // frames before the start fill the window up to one short of the first frame's window
+    for (int t = start - halfTime; t < start + halfTime; t++) {
+      readFrame(clip, clamp(t, frameCount), recent[Math.floorMod(t, recent.length)]);
+      double[] data = recent[Math.floorMod(t, recent.length)];
+      for (int j = 0; j < bins; j++) {
+        acrossTime[j].push(Math.abs(data[j]));
+      }
+    }
+
+    for (int i = start; i < end; i++) {
+      int t = i + halfTime;
+      double[] ahead = recent[Math.floorMod(t, recent.length)];
+      readFrame(clip, clamp(t, frameCount), ahead);
+      for (int j = 0; j < bins; j++) {
+        acrossTime[j].push(Math.abs(ahead[j]));
+      }
+
+      double[] data = recent[Math.floorMod(i, recent.length)];
+      for (int j = 0; j < bins; j++) {
+        magnitudes[j] = Math.abs(data[j]);
+      }
+      for (int j = -halfFreq; j < halfFreq; j++) {
+        acrossFreq.push(magnitudes[clamp(j, bins)]);
+      }
+      for (int j = 0; j < bins; j++) {
+        acrossFreq.push(magnitudes[clamp(j + halfFreq, bins)]);
+        double h = acrossTime[j].median();
+        double p = acrossFreq.median();
+        double h2 = h * h;
+        double p2 = p * p;
+        double mask = h2 + p2 == 0.0 ? 0.5 : (layer == Layer.HARMONIC ? h2 : p2) / (h2 + p2);
+        spectrum[j] = data[j] * mask;
+      }
+      layerFrames[i] = new Frame(clip.getFrame(i), spectrum);
+    }
+  }
+
+  private static void readFrame(Clip clip, int frame, double[] dest) {
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(frame, 1);
+    try {
+      clip.getFrame(frame).getReal(0, dest, 0, dest.length);
+    } finally {
+      locks.unlockRead(frame, 1);
+    }
+  }
+
+  private static int clamp(int i, int n) {
+    return Math.max(0, Math.min(n - 1, i));
+  }
+}
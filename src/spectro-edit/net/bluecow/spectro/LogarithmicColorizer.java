@@ -27,11 +27,44 @@ import net.bluecow.spectro.tool.CurvedSlider;
 
 public class LogarithmicColorizer implements ValueColorizer {
 
+  /**
+   * The number of mantissa bits used to quantize a magnitude into a lookup table index. Each octave
+   * of magnitude gets 2^MANTISSA_BITS table entries, so neighbouring entries differ by less than
+   * 1.1%.
+   */
+  private static final int MANTISSA_BITS = 6;
+
+  /**
+   * The amount to shift the raw bits of a double right by in order to get its exponent and the top
+   * {@link #MANTISSA_BITS} bits of its mantissa.
+   */
+  private static final int INDEX_SHIFT = 52 - MANTISSA_BITS;
+
+  /**
+   * The number of octaves below the loudest value in the clip that the lookup table covers.
+   * Anything quieter than that maps to the same colour as 0.
+   */
+  private static final int OCTAVES = 40;
+
   private double preMult = 0;
   private double brightness = 0;
   private double contrast = 0;
   private boolean useRed = false;
 
+  /**
+   * The largest absolute value in the clip, as of the first time the lookup table was built. Values
+   * found later on which are larger than this (for example, after scaling a region up) are coloured
+   * by {@link #colorForExact(double)}.
+   */
+  private double maxMagnitude = -1.0;
+
+  /**
+   * Precomputed colours for the current settings, or null if the settings have changed since the
+   * table was last built. Settings changes and table builds synchronize on this colorizer, so a
+   * table can never be built from a mix of old and new settings.
+   */
+  private volatile ColorTable table;
+
   private final ClipPanel clipPanel;
 
   private final JComponent settingsPanel;
@@ -86,8 +119,49 @@ public class LogarithmicColorizer implements ValueColorizer {
     contrastSlider.setValue(50);
   }
 
+  /**
+   * Returns the colour for the given value using the precomputed lookup table for the current
+   * settings. The result is the same as {@link #colorForExact(double)} evaluated at the middle of
+   * the quantization step that val falls into.
+   */
   @Override
   public int colorFor(double val) {
+    return getTable().colorFor(val);
+  }
+
+  /**
+   * Colours a whole array of values in one go.
+   *
+   * @param in The values to colour.
+   * @param out The array to put the colour for in[i] into at out[i]. Must be at least as long as
+   *        in.
+   */
+  public void colorFor(double[] in, int[] out) {
+    colorFor(in, 0, out, 0, 1, in.length);
+  }
+
+  @Override
+  public void colorFor(double[] in, int inOffset, int[] out, int outOffset, int outStride,
+      int length) {
+    ColorTable t = getTable();
+    int o = outOffset;
+    for (int i = inOffset; i < inOffset + length; i++) {
+      out[o] = t.colorFor(in[i]);
+      o += outStride;
+    }
+  }
+
+  /**
+   * Computes the colour for the given value directly from the current settings, without going
+   * through the lookup table. This is the original per-pixel algorithm, which is kept around as the
+   * reference (and benchmark baseline) for the table-driven {@link #colorFor(double)}.
+   */
+  public int colorForExact(double val) {
+    return colorFor(val, preMult, brightness, contrast, useRed);
+  }
+
+  private static int colorFor(double val, double preMult, double brightness, double contrast,
+      boolean useRed) {
     int greyVal = (int) (brightness + (contrast * Math.log1p(Math.abs(preMult * val))));
 
     if (useRed) {
@@ -109,29 +183,143 @@ public class LogarithmicColorizer implements ValueColorizer {
 
   }
 
+  /**
+   * Returns the lookup table for the current settings, building it first if necessary.
+   */
+  private ColorTable getTable() {
+    ColorTable t = table;
+    if (t == null) {
+      synchronized (this) {
+        t = table;
+        if (t == null) {
+          if (maxMagnitude < 0.0) {
+            maxMagnitude = findMaxMagnitude();
+          }
+          t = new ColorTable(maxMagnitude, preMult, brightness, contrast, useRed);
+          table = t;
+        }
+      }
+    }
+    return t;
+  }
+
+  /**
+   * Scans the clip for its largest absolute value. Returns 1.0 if there is no clip to scan yet.
+   */
+  private double findMaxMagnitude() {
+    Clip clip = clipPanel.getClip();
+    if (clip == null) {
+      return 1.0;
+    }
+    double max = 0.0;
+    FrameLocks locks = clip.getFrameLocks();
+    for (int i = 0; i < clip.getFrameCount(); i++) {
+      locks.lockRead(i, 1);
+      try {
+        Frame f = clip.getFrame(i);
+        for (int j = 0; j < f.getLength(); j++) {
+          max = Math.max(max, Math.abs(f.getReal(j)));
+        }
+      } finally {
+        locks.unlockRead(i, 1);
+      }
+    }
+    return max > 0.0 ? max : 1.0;
+  }
+
+  /**
+   * An immutable table of colours for one combination of colorizer settings. Values are quantized
+   * logarithmically by taking the exponent and the top few mantissa bits of their absolute value,
+   * which costs a couple of bit operations instead of a call to log1p.
+   */
+  private static class ColorTable {
+
+    private final double preMult;
+    private final double brightness;
+    private final double contrast;
+    private final boolean useRed;
+
+    /**
+     * The quantized index of the smallest magnitude that has an entry in {@link #colors}.
+     */
+    private final long baseIndex;
+
+    private final int[] colors;
+
+    /**
+     * The colour for values quieter than the smallest magnitude in the table.
+     */
+    private final int zeroColor;
+
+    ColorTable(double maxMagnitude, double preMult, double brightness, double contrast,
+        boolean useRed) {
+      this.preMult = preMult;
+      this.brightness = brightness;
+      this.contrast = contrast;
+      this.useRed = useRed;
+
+      long topIndex = index(maxMagnitude);
+      baseIndex = Math.max(0L, topIndex - ((long) OCTAVES << MANTISSA_BITS));
+      colors = new int[(int) (topIndex - baseIndex + 1)];
+      long halfStep = 1L << (INDEX_SHIFT - 1);
+      for (int i = 0; i < colors.length; i++) {
+        double mid = Double.longBitsToDouble(((baseIndex + i) << INDEX_SHIFT) | halfStep);
+        colors[i] = LogarithmicColorizer.colorFor(mid, preMult, brightness, contrast, useRed);
+      }
+      zeroColor = LogarithmicColorizer.colorFor(0.0, preMult, brightness, contrast, useRed);
+    }
+
+    private static long index(double val) {
+      return Double.doubleToRawLongBits(Math.abs(val)) >>> INDEX_SHIFT;
+    }
+
+    int colorFor(double val) {
+      long i = index(val) - baseIndex;
+      if (i < 0) {
+        return zeroColor;
+      } else if (i < colors.length) {
+        return colors[(int) i];
+      } else {
+        return LogarithmicColorizer.colorFor(val, preMult, brightness, contrast, useRed);
+      }
+    }
+  }
+
   public void setPreMult(double multiplier) {
     System.out.println("multiplier: " + multiplier);
-    this.preMult = multiplier;
+    synchronized (this) {
+      this.preMult = multiplier;
+      table = null;
+    }
     clipPanel.updateImage(null);
     clipPanel.repaint();
   }
 
   public void setBrightness(double brightness) {
     System.out.println("brightness: " + brightness);
-    this.brightness = brightness;
+    synchronized (this) {
+      this.brightness = brightness;
+      table = null;
+    }
     clipPanel.updateImage(null);
     clipPanel.repaint();
   }
 
   public void setContrast(double contrast) {
     System.out.println("contrast: " + contrast);
-    this.contrast = contrast;
+    synchronized (this) {
+      this.contrast = contrast;
+      table = null;
+    }
     clipPanel.updateImage(null);
     clipPanel.repaint();
   }
 
   public void setUseRed(boolean useRed) {
-    this.useRed = useRed;
+    synchronized (this) {
+      this.useRed = useRed;
+      table = null;
+    }
     clipPanel.updateImage(null);
     clipPanel.repaint();
   }
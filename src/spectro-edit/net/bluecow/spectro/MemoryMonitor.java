@@ -24,6 +24,11 @@ public class MemoryMonitor {
   private Timer timer;
   private JLabel label = new JLabel();
 
+  /**
+   * The undo manager whose memory use is shown along with the heap's, or null if there isn't one.
+   */
+  private final UndoManager undoManager;
+
   private ActionListener timerAction = new ActionListener() {
     @Override
     public void actionPerformed(ActionEvent e) {
@@ -31,11 +36,27 @@ public class MemoryMonitor {
       long totalMemory = Runtime.getRuntime().totalMemory() / megabyte;
       long freeMemory = Runtime.getRuntime().freeMemory() / megabyte;
       long usedMemory = totalMemory - freeMemory;
-      label.setText(usedMemory + "M/" + totalMemory + "M");
+      if (undoManager == null) {
+        label.setText(usedMemory + "M/" + totalMemory + "M");
+      } else {
+        long undoMemory = undoManager.getMemoryUsage() / megabyte;
+        long undoDisk = undoManager.getDiskUsage() / megabyte;
+        label.setText(usedMemory + "M/" + totalMemory + "M (undo " + undoMemory + "M + "
+            + undoDisk + "M on disk)");
+      }
     }
   };
 
   public MemoryMonitor() {
+    this(null);
+  }
+
+  /**
+   * Creates a memory monitor that also shows how much memory and disk the given undo manager's
+   * history is using.
+   */
+  public MemoryMonitor(UndoManager undoManager) {
+    this.undoManager = undoManager;
     timer = new Timer(1000, timerAction);
   }
 
@@ -0,0 +1,92 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+
+/**
+ * The typical level of each frequency in a stretch of background noise, learned from a region of a
+ * clip that contains nothing but the noise. {@link SpectralOps#subtractNoise(NoiseProfile, double,
+ * double)} uses it to take that noise out of the rest of the clip.
+ */
+public class NoiseProfile {
+
+  private final double[] levels;
+
+  private final int frameCount;
+
+  private NoiseProfile(double[] levels, int frameCount) {
+    this.levels = levels;
+    this.frameCount = frameCount;
+  }
+
+  /**
+   * Learns a profile from the given region, in a single pass over its frames. The level of each
+   * frequency in the region's range is the mean magnitude of that frequency over the region's
+   * frames; frequencies outside the range get a level of 0, so noise reduction leaves them alone.
+   *
+   * @param clip The clip to read.
+   * @param region The region holding the noise, in clip co-ordinates. Parts of it outside the clip
+   *        are ignored.
+   * @throws IllegalArgumentException if the region doesn't overlap the clip.
+   */
+  public static NoiseProfile capture(Clip clip, Rectangle region) {
+    Rectangle r = region.intersection(clip.getBounds());
+    if (r.isEmpty()) {
+      throw new IllegalArgumentException("Region " + region + " doesn't overlap the clip");
+    }
+    double[] sums = new double[r.height];
+    double[] data = new double[r.height];
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(r.x, r.width);
+    try {
+      for (int i = r.x; i < r.x + r.width; i++) {
+        clip.getFrame(i).getReal(r.y, data, 0, r.height);
+        for (int j = 0; j < r.height; j++) {
+          sums[j] += Math.abs(data[j]);
+        }
+      }
+    } finally {
+      locks.unlockRead(r.x, r.width);
+    }
+    double[] levels = new double[clip.getFrameFreqSamples()];
+    for (int j = 0; j < r.height; j++) {
+      levels[r.y + j] = sums[j] / r.width;
+    }
+    return new NoiseProfile(levels, r.width);
+  }
+
+  /**
+   * Returns the noise level of the given frequency index.
+   */
+  public double getLevel(int freqIndex) {
+    return levels[freqIndex];
+  }
+
+  /**
+   * Returns the number of frequency indexes in this profile, which is the frame size of the clip
+   * it was captured from.
+   */
+  public int getLength() {
+    return levels.length;
+  }
+
+  /**
+   * Returns the number of frames the profile was learned from.
+   */
+  public int getFrameCount() {
+    return frameCount;
+  }
+}
@@ -0,0 +1,319 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * Finds note onsets in a stream of frames, one frame at a time. For each frame it computes the
+ * spectral flux: how much louder each frequency got since the previous frame, on a logarithmic
+ * scale, summed over the increases only and divided by the number of frequencies. An onset is a
+ * frame whose flux is the largest of its neighbours and stands out by at least the threshold from
+ * the average flux around it: that of the {@link #MEAN_BEFORE} frames before it, itself and the
+ * {@link #LOOKAHEAD} frames after it.
+ * <p>
+ * Frames can come from anywhere: a clip that's already loaded ({@link #detect(Clip)}), a clip
+ * that's being read, or live input. The detector keeps only the previous frame and a short
+ * window of flux values, so its memory use doesn't grow with the length of the input (apart from
+ * the list of onsets it has found). Deciding whether a frame is an onset needs
+ * {@link #LOOKAHEAD} more frames, so onsets are reported that many frames late; call
+ * {@link #finish()} at the end of the input to decide the last few.
+ * <p>
+ * When part of a clip changes, {@link #update(Clip, int[], int, int)} brings its onsets up to date
+ * by looking again at just the frames around the change.
+ * <p>
+ * This class is not thread safe.
+ */
+public class OnsetDetector {
+
+  /**
+   * The number of frames after an onset that have to be seen before it's reported.
+   */
+  public static final int LOOKAHEAD = 2;
+
+  /**
+   * An onset's flux must be at least as big as that of this many frames before it.
+   */
+  private static final int PEAK_BEFORE = 3;
+
+  /**
+   * The number of frames before a candidate that are included in the average flux it's compared
+   * with. The average also includes the candidate and the {@link #LOOKAHEAD} frames after it.
+   */
+  private static final int MEAN_BEFORE = 16;
+
+  private final int binCount;
+
+  /**
+   * The log magnitudes of the previous frame.
+   */
+  private final double[] previous;
+
+  /**
+   * The most recent flux values, indexed by frame number modulo the length.
+   */
+  private final double[] flux = new double[MEAN_BEFORE + LOOKAHEAD + 1];
+
+  private double threshold = 0.05;
+
+  private int minimumGap = 3;
+
+  /**
+   * The number of frames added so far.
+   */
+  private int frameCount;
+
+  private int lastOnset = Integer.MIN_VALUE / 2;
+
+  /**
+   * Frames before this one are never reported as onsets. Used when looking at part of a clip
+   * again, where the decisions about earlier frames have already been made.
+   */
+  private int pickFrom;
+
+  private int[] onsets = new int[64];
+
+  private int onsetCount;
+
+  private boolean finished;
+
+  /**
+   * @param binCount The number of frequency samples in each frame.
+   */
+  public OnsetDetector(int binCount) {
+    this.binCount = binCount;
+    previous = new double[binCount];
+  }
+
+  /**
+   * Finds the onsets in the given clip.
+   *
+   * @return The frame numbers of the onsets, in ascending order.
+   */
+  public static int[] detect(Clip clip) {
+    OnsetDetector detector = new OnsetDetector(clip.getFrameFreqSamples());
+    double[] data = new double[clip.getFrameFreqSamples()];
+    for (int i = 0; i < clip.getFrameCount(); i++) {
+      readFrame(clip, i, data);
+      detector.addFrame(data);
+    }
+    detector.finish();
+    return detector.getOnsets();
+  }
+
+  /**
+   * Brings the onsets found by {@link #detect(Clip)} up to date after some of the clip's frames
+   * have changed, giving the same answer as detecting them all again. Only the frames whose
+   * decisions the change can affect are looked at again: the changed frames, the
+   * {@link #LOOKAHEAD} before them and the {@link #MEAN_BEFORE} after them, plus any after that
+   * until the decisions are back in step with the old ones (a changed decision can move later
+   * ones through the minimum gap).
+   *
+   * @param clip The clip that changed.
+   * @param onsets The onsets of the clip before the change, in ascending order. Not modified.
+   * @param firstFrame The first frame that changed.
+   * @param endFrame One past the last frame that changed.
+   * @return The frame numbers of the onsets, in ascending order.
+   */
+  public static int[] update(Clip clip, int[] onsets, int firstFrame, int endFrame) {
+    int frameCount = clip.getFrameCount();
+    // the candidates whose flux window [c - MEAN_BEFORE, c + LOOKAHEAD] includes a changed flux
+    int from = Math.max(0, firstFrame - LOOKAHEAD);
+    int to = Math.min(frameCount, endFrame + MEAN_BEFORE + 1);
+    int start = Math.max(0, from - MEAN_BEFORE);
+
+    OnsetDetector detector = new OnsetDetector(clip.getFrameFreqSamples());
+    detector.pickFrom = from;
+    int kept = 0;
+    while (kept < onsets.length && onsets[kept] < from) {
+      kept++;
+    }
+    if (kept > 0) {
+      detector.lastOnset = onsets[kept - 1];
+    }
+    double[] data = new double[clip.getFrameFreqSamples()];
+    if (start > 0) {
+      // the flux of the first frame is measured from the one before it
+      readFrame(clip, start - 1, data);
+      detector.rise(data);
+    }
+    detector.frameCount = start;
+
+    int next = kept;
+    int stop = frameCount - 1;
+    for (int frame = start; frame < frameCount; frame++) {
+      readFrame(clip, frame, data);
+      detector.addFrame(data);
+      int decided = frame - LOOKAHEAD;
+      if (decided >= to - 1) {
+        // later decisions only depend on the last onset, so stop once it agrees with the old one
+        while (next < onsets.length && onsets[next] <= decided) {
+          next++;
+        }
+        int oldLastOnset = next > 0 ? onsets[next - 1] : Integer.MIN_VALUE / 2;
+        if (detector.lastOnset == oldLastOnset) {
+          stop = decided;
+          break;
+        }
+      }
+    }
+    if (stop == frameCount - 1) {
+      detector.finish();
+      next = onsets.length;
+    }
+
+    int[] found = detector.getOnsets();
+    int[] result = new int[kept + found.length + onsets.length - next];
+    System.arraycopy(onsets, 0, result, 0, kept);
+    System.arraycopy(found, 0, result, kept, found.length);
+    System.arraycopy(onsets, next, result, kept + found.length, onsets.length - next);
+    return result;
+  }
+
+  private static void readFrame(Clip clip, int frame, double[] data) {
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(frame, 1);
+    try {
+      clip.getFrame(frame).getReal(0, data, 0, data.length);
+    } finally {
+      locks.unlockRead(frame, 1);
+    }
+  }
+
+  /**
+   * Sets how far above the average flux of the frames around it a frame's flux has to be to count
+   * as an onset. The flux is in natural log units per frequency; the default is 0.05. Larger values
+   * find fewer, stronger onsets.
+   */
+  public void setThreshold(double threshold) {
+    this.threshold = threshold;
+  }
+
+  public double getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Sets the smallest number of frames between two onsets. The default is 3.
+   */
+  public void setMinimumGap(int frames) {
+    this.minimumGap = frames;
+  }
+
+  public int getMinimumGap() {
+    return minimumGap;
+  }
+
+  /**
+   * Adds the next frame of the input.
+   *
+   * @param data The frame's frequency samples. Only the first binCount are used.
+   */
+  public void addFrame(double[] data) {
+    if (finished) {
+      throw new IllegalStateException("Already finished");
+    }
+    double sum = rise(data);
+    int n = frameCount++;
+    flux[n % flux.length] = n == 0 ? 0.0 : sum / binCount;
+    if (n >= LOOKAHEAD) {
+      pick(n - LOOKAHEAD, n);
+    }
+  }
+
+  /**
+   * Returns the summed rise in log magnitude from the previous frame to the given one, which
+   * becomes the previous frame.
+   */
+  private double rise(double[] data) {
+    double sum = 0.0;
+    for (int j = 0; j < binCount; j++) {
+      double level = Math.log(1.0 + Math.abs(data[j]));
+      double rise = level - previous[j];
+      if (rise > 0.0) {
+        sum += rise;
+      }
+      previous[j] = level;
+    }
+    return sum;
+  }
+
+  /**
+   * Decides whether the last few frames (which haven't had enough frames after them yet) are
+   * onsets, treating the input as having ended. No frames can be added afterwards.
+   */
+  public void finish() {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    for (int c = Math.max(0, frameCount - LOOKAHEAD); c < frameCount; c++) {
+      pick(c, frameCount - 1);
+    }
+  }
+
+  /**
+   * Decides whether the given frame is an onset.
+   *
+   * @param c The candidate frame.
+   * @param last The last frame whose flux is known.
+   */
+  private void pick(int c, int last) {
+    double value = flux[c % flux.length];
+    if (c < pickFrom || c - lastOnset < minimumGap) {
+      return;
+    }
+    for (int i = Math.max(0, c - PEAK_BEFORE); i <= last; i++) {
+      if (flux[i % flux.length] > value) {
+        return;
+      }
+    }
+    int first = Math.max(0, c - MEAN_BEFORE);
+    double sum = 0.0;
+    for (int i = first; i <= last; i++) {
+      sum += flux[i % flux.length];
+    }
+    if (value >= sum / (last - first + 1) + threshold) {
+      lastOnset = c;
+      if (onsetCount == onsets.length) {
+        int[] bigger = new int[onsets.length * 2];
+        System.arraycopy(onsets, 0, bigger, 0, onsetCount);
+        onsets = bigger;
+      }
+      onsets[onsetCount++] = c;
+    }
+  }
+
+  /**
+   * Returns the number of frames added so far.
+   */
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Returns the number of onsets found so far.
+   */
+  public int getOnsetCount() {
+    return onsetCount;
+  }
+
+  /**
+   * Returns the frame numbers of the onsets found so far, in ascending order.
+   */
+  public int[] getOnsets() {
+    int[] result = new int[onsetCount];
+    System.arraycopy(onsets, 0, result, 0, onsetCount);
+    return result;
+  }
+}
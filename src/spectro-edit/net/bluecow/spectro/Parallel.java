@@ -0,0 +1,83 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs loops over ranges of indexes (typically frame numbers) on all available processors. The
+ * range is split in halves recursively until the pieces are no bigger than a given grain size, and
+ * the pieces are run on the common fork/join pool. The calling thread takes part in the work and
+ * doesn't return until all of it is done.
+ */
+public class Parallel {
+
+  /**
+   * The body of a parallel loop. It is given a contiguous piece of the overall range, and must be
+   * safe to call on several threads at once for different pieces.
+   */
+  public interface RangeTask {
+    void run(int start, int end);
+  }
+
+  private Parallel() {
+    // static utility class
+  }
+
+  /**
+   * Runs the given task over the range [start, end), in pieces of at most grain indexes.
+   *
+   * @param start The first index of the range.
+   * @param end One past the last index of the range.
+   * @param grain The largest piece of the range that will be handed to a single call of the task.
+   *        Pick this so that one piece is at least a few hundred microseconds of work.
+   * @param task The loop body.
+   */
+  public static void forRange(int start, int end, int grain, RangeTask task) {
+    if (end - start <= grain) {
+      if (end > start) {
+        task.run(start, end);
+      }
+    } else {
+      ForkJoinPool.commonPool().invoke(new RangeAction(start, end, Math.max(1, grain), task));
+    }
+  }
+
+  private static class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int start;
+    private final int end;
+    private final int grain;
+    private final RangeTask task;
+
+    RangeAction(int start, int end, int grain, RangeTask task) {
+      this.start = start;
+      this.end = end;
+      this.grain = grain;
+      this.task = task;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= grain) {
+        task.run(start, end);
+      } else {
+        int mid = (start + end) >>> 1;
+        invokeAll(new RangeAction(start, mid, grain, task), new RangeAction(mid, end, grain, task));
+      }
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The fundamental frequency and note of every frame of a clip, found with the harmonic product
+ * spectrum: for each candidate fundamental within {@link #MIN_FREQUENCY}..{@link #MAX_FREQUENCY},
+ * the log magnitudes at its first {@link #HARMONICS} harmonics are added up, and the candidate with
+ * the biggest total wins. Its frequency is refined by fitting a parabola through the magnitudes
+ * around the winning frequency index. A frame is unvoiced (frequency 0) when the winner doesn't
+ * stand out from the average candidate by at least {@link #VOICING_THRESHOLD}.
+ * <p>
+ * Frames are independent of each other, so the track is computed on all processors. Notes use the
+ * same mapping as the {@link PositionReadout}, rounded to the nearest note.
+ * <p>
+ * The track starts out with every frame unvoiced and out of date. It listens for changes to the
+ * clip and marks the frames they touch as out of date too; only those frames are tracked, by
+ * {@link #refresh()}. {@link Clip#getPitchTrack()} refreshes the track before returning it, while
+ * {@link Clip#getCachedPitchTrack()} returns it as it stands, for callers such as painting code
+ * that can't wait and leave the refreshing to a background thread. Each refresh is published when
+ * it finishes, so a reader sees every refresh that finished before it started reading.
+ */
+public class PitchTrack {
+
+  /**
+   * The lowest fundamental frequency that's looked for, in Hz.
+   */
+  public static final double MIN_FREQUENCY = 50.0;
+
+  /**
+   * The highest fundamental frequency that's looked for, in Hz.
+   */
+  public static final double MAX_FREQUENCY = 2000.0;
+
+  /**
+   * The number of harmonics (including the fundamental) whose magnitudes are combined.
+   */
+  public static final int HARMONICS = 4;
+
+  /**
+   * How far above the average candidate, in natural log units summed over the harmonics, the best
+   * candidate has to be for the frame to count as voiced.
+   */
+  public static final double VOICING_THRESHOLD = 4.0;
+
+  /**
+   * Keeps silent frequency indexes from dominating the sum of logs.
+   */
+  private static final double MAGNITUDE_FLOOR = 1e-3;
+
+  /**
+   * The number of frames handed to a worker thread at a time.
+   */
+  private static final int FRAME_GRAIN = 64;
+
+  private static final double HALF_SEMITONE = Math.pow(2.0, 1.0 / 24.0);
+
+  private final Clip clip;
+
+  private final int minBin;
+
+  private final int maxBin;
+
+  private final double binWidth;
+
+  private final float[] frequencies;
+
+  /**
+   * Semitones above A0, or -1 for unvoiced frames.
+   */
+  private final short[] notes;
+
+  /**
+   * The frames that have changed since they were last tracked. Guarded by itself.
+   */
+  private final BitSet dirty = new BitSet();
+
+  /**
+   * The number of refreshes that have finished. Written after the arrays, and read by every query
+   * before it looks at them, which makes the writes visible to the querying thread.
+   */
+  private volatile int refreshCount;
+
+  /**
+   * Creates a track of the given clip with every frame out of date, and starts listening for
+   * changes to it. Nothing is tracked until the first {@link #refresh()}.
+   */
+  PitchTrack(Clip clip) {
+    this.clip = clip;
+    int n = clip.getFrameCount();
+    frequencies = new float[n];
+    notes = new short[n];
+    int bins = clip.getFrameFreqSamples();
+    binWidth = clip.getSamplingRate() / 2.0 / bins;
+    minBin = Math.max(1, (int) Math.ceil(MIN_FREQUENCY / binWidth));
+    maxBin = Math.min((bins - 1) / HARMONICS, (int) (MAX_FREQUENCY / binWidth));
+    Arrays.fill(notes, (short) -1);
+    dirty.set(0, n);
+    clip.addClipDataChangeListener(new ClipDataChangeListener() {
+      @Override
+      public void clipDataChanged(ClipDataChangeEvent e) {
+        Rectangle r = e.getRegion();
+        int start = Math.max(0, r.x);
+        int end = Math.min(frequencies.length, r.x + r.width);
+        if (start < end) {
+          synchronized (dirty) {
+            dirty.set(start, end);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Tracks the frames that have changed since they were last tracked (the first time, all of
+   * them). This can take a while, so don't call it on the event dispatch thread.
+   *
+   * @return The frames that were tracked, which is empty if the track was already up to date.
+   */
+  public synchronized BitSet refresh() {
+    BitSet stale;
+    synchronized (dirty) {
+      stale = (BitSet) dirty.clone();
+      dirty.clear();
+    }
+    if (stale.isEmpty()) {
+      return stale;
+    }
+    for (int start = stale.nextSetBit(0); start >= 0; start = stale.nextSetBit(start)) {
+      int end = stale.nextClearBit(start);
+      update(start, end - start);
+      start = end;
+    }
+    refreshCount++;
+    return stale;
+  }
+
+  /**
+   * Reads {@link #refreshCount}, which makes the frames tracked so far visible to the calling
+   * thread. Every query calls this before it looks at the arrays.
+   */
+  private int acquire() {
+    return refreshCount;
+  }
+
+  /**
+   * Tracks the given frames in parallel.
+   */
+  private void update(int firstFrame, int nFrames) {
+    Parallel.forRange(firstFrame, firstFrame + nFrames, FRAME_GRAIN, new Parallel.RangeTask() {
+      @Override
+      public void run(int start, int end) {
+        int bins = clip.getFrameFreqSamples();
+        double[] data = new double[bins];
+        double[] logs = new double[bins];
+        FrameLocks locks = clip.getFrameLocks();
+        for (int i = start; i < end; i++) {
+          locks.lockRead(i, 1);
+          try {
+            clip.getFrame(i).getReal(0, data, 0, bins);
+          } finally {
+            locks.unlockRead(i, 1);
+          }
+          double f0 = minBin <= maxBin ? track(data, logs, minBin, maxBin) * binWidth : 0.0;
+          frequencies[i] = (float) f0;
+
+          // half a semitone up turns toSemitones' rounding down into rounding to nearest
+          notes[i] = (short) (f0 > 0.0 ? PositionReadout.toSemitones(f0 * HALF_SEMITONE) : -1);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the fundamental of one frame as a fractional frequency index, or 0 if it's unvoiced.
+   */
+  private static double track(double[] data, double[] logs, int minBin, int maxBin) {
+    int lastBin = maxBin * HARMONICS;
+    for (int j = 0; j <= lastBin; j++) {
+      logs[j] = Math.log(Math.abs(data[j]) + MAGNITUDE_FLOOR);
+    }
+    int best = -1;
+    double bestSum = Double.NEGATIVE_INFINITY;
+    double total = 0.0;
+    for (int k = minBin; k <= maxBin; k++) {
+      double sum = 0.0;
+      for (int h = 1; h <= HARMONICS; h++) {
+        sum += logs[k * h];
+      }
+      total += sum;
+      if (sum > bestSum) {
+        bestSum = sum;
+        best = k;
+      }
+    }
+    if (bestSum - total / (maxBin - minBin + 1) < VOICING_THRESHOLD) {
+      return 0.0;
+    }
+
+    // fit a parabola through the magnitudes around the peak
+    double a = Math.abs(data[best - 1]);
+    double b = Math.abs(data[best]);
+    double c = Math.abs(data[best + 1]);
+    double denominator = a - 2.0 * b + c;
+    double offset = denominator < 0.0 ? 0.5 * (a - c) / denominator : 0.0;
+    return best + Math.max(-0.5, Math.min(0.5, offset));
+  }
+
+  /**
+   * Returns the number of frames in the track.
+   */
+  public int getFrameCount() {
+    return frequencies.length;
+  }
+
+  /**
+   * Returns true if a fundamental was found for the given frame.
+   */
+  public boolean isVoiced(int frame) {
+    acquire();
+    return notes[frame] >= 0;
+  }
+
+  /**
+   * Returns the fundamental frequency of the given frame in Hz, or 0 if it's unvoiced.
+   */
+  public double getFrequency(int frame) {
+    acquire();
+    return frequencies[frame];
+  }
+
+  /**
+   * Returns the fundamental of the given frame as a (fractional) frequency index, or 0 if it's
+   * unvoiced.
+   */
+  public double getFrequencyIndex(int frame) {
+    acquire();
+    return frequencies[frame] / binWidth;
+  }
+
+  /**
+   * Returns the note of the given frame in semitones above A0, or -1 if it's unvoiced.
+   */
+  public int getNote(int frame) {
+    acquire();
+    return notes[frame];
+  }
+
+  /**
+   * Returns the name of the note of the given frame, such as "A4", or null if it's unvoiced.
+   */
+  public String getNoteName(int frame) {
+    acquire();
+    return notes[frame] >= 0 ? PositionReadout.toNoteName((int) notes[frame]) : null;
+  }
+}
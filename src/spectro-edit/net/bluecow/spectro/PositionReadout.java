@@ -82,9 +82,22 @@ public class PositionReadout {
    * @param freq
    * @return
    */
-  private static String toNoteName(double freq) {
+  static String toNoteName(double freq) {
+    return toNoteName(toSemitones(freq));
+  }
+
+  /**
+   * Returns the number of semitones above A0 of the note the given frequency falls in.
+   */
+  static int toSemitones(double freq) {
     // Semitones is offset by 4*12 so that 440Hz == A4
-    int semitones = (int) ((4 * 12) + 12.0 * log2(freq / 440.0));
+    return (int) ((4 * 12) + 12.0 * log2(freq / 440.0));
+  }
+
+  /**
+   * Returns the name of the note the given number of semitones above A0, for example "C#4".
+   */
+  static String toNoteName(int semitones) {
     String[] notes = {"A", "A#", "B", "C", "C#", "D", "D#", "E", "F", "F#", "G", "G#"};
     String note = notes[semitones % 12];
     String octave = String.valueOf(semitones / 12);
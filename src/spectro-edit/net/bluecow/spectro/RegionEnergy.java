@@ -0,0 +1,75 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * Aggregate statistics of the cells in a region of a clip's spectral data.
+ *
+ * @see Clip#getEnergy(java.awt.Rectangle)
+ */
+public class RegionEnergy {
+
+  private final long cellCount;
+
+  private final double sumOfMagnitudes;
+
+  private final double sumOfSquares;
+
+  public RegionEnergy(long cellCount, double sumOfMagnitudes, double sumOfSquares) {
+    this.cellCount = cellCount;
+    this.sumOfMagnitudes = sumOfMagnitudes;
+    this.sumOfSquares = sumOfSquares;
+  }
+
+  /**
+   * Returns the number of cells in the region.
+   */
+  public long getCellCount() {
+    return cellCount;
+  }
+
+  /**
+   * Returns the sum of the absolute values of the cells.
+   */
+  public double getSumOfMagnitudes() {
+    return sumOfMagnitudes;
+  }
+
+  /**
+   * Returns the sum of the squares of the cells, which is the region's energy.
+   */
+  public double getSumOfSquares() {
+    return sumOfSquares;
+  }
+
+  /**
+   * Returns the mean absolute value of the cells, or 0 for an empty region.
+   */
+  public double getMeanMagnitude() {
+    return cellCount == 0 ? 0.0 : sumOfMagnitudes / cellCount;
+  }
+
+  /**
+   * Returns the root mean square of the cells, or 0 for an empty region.
+   */
+  public double getRms() {
+    return cellCount == 0 ? 0.0 : Math.sqrt(Math.max(0.0, sumOfSquares) / cellCount);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d cells, mean %.4f, rms %.4f", cellCount, getMeanMagnitude(), getRms());
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.logging.Logger;
+
+/**
+ * An operation on a rectangular region of a clip's spectral data, computed one frame at a time.
+ * Subclasses supply the kernel in {@link #processFrame(int, Source, double[])}; this class takes
+ * care of the rest: it clips the region to the clip, starts and ends the undoable edit (which also
+ * notifies the clip's listeners), takes the frame locks, and runs the kernel on all available
+ * processors, a run of frames per task.
+ * <p>
+ * Kernels always read from an unchanging snapshot of the region, never from the frames being
+ * written, so the order in which frames are processed doesn't matter and a kernel may look at any
+ * frame of the region (a horizontal flip, for example). By default the snapshot is taken just
+ * before the operation runs; tools that re-apply an operation with different settings as a slider
+ * moves can pass in the snapshot they took when the region was selected instead, and can use
+ * {@link #preview(Clip, Rectangle, ClipDataEdit)} to show each setting without creating an edit
+ * for it.
+ * <p>
+ * Kernels are called on several threads at once and must not modify shared state.
+ *
+ * @see CellOp
+ * @see SpectralPipeline
+ */
+public abstract class RegionOp {
+
+  private static final Logger logger = Logger.getLogger(RegionOp.class.getName());
+
+  /**
+   * Read-only access to the data of the region as it was before the operation.
+   */
+  public interface Source {
+
+    /**
+     * Copies the region's frequency range of the given frame into dest, which must be exactly as
+     * long as the region is high.
+     *
+     * @param frame The frame number. Must be within the region.
+     */
+    void getColumn(int frame, double[] dest);
+
+    /**
+     * Returns the region the operation is being applied to, in clip co-ordinates, after clipping
+     * it to the clip.
+     */
+    Rectangle getRegion();
+  }
+
+  private final String name;
+
+  /**
+   * @param name The user-visible description of this operation, used as the edit's name.
+   */
+  protected RegionOp(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Computes the new values for one frame of the region.
+   *
+   * @param frame The frame number.
+   * @param source The region's data from before the operation.
+   * @param data On entry, the region's frequency range of this frame from the source. On return,
+   *        the new values for that range. data[0] corresponds to the region's first frequency
+   *        index.
+   */
+  protected abstract void processFrame(int frame, Source source, double[] data);
+
+  /**
+   * Applies this operation to the given region of the clip, reading the current data.
+   *
+   * @param clip The clip to modify.
+   * @param region The region to modify, in clip co-ordinates. Parts of it outside the clip are
+   *        ignored.
+   */
+  public void apply(Clip clip, Rectangle region) {
+    apply(clip, region, null);
+  }
+
+  /**
+   * Applies this operation to the given region of the clip, computing the new values from the
+   * given snapshot instead of the clip's current data.
+   *
+   * @param clip The clip to modify.
+   * @param region The region to modify, in clip co-ordinates. Parts of it outside the clip are
+   *        ignored.
+   * @param snapshot An edit whose old data covers the region, or null to use the clip's current
+   *        data.
+   */
+  public void apply(Clip clip, Rectangle region, ClipDataEdit snapshot) {
+    Rectangle r = clipRegion(clip, region, snapshot);
+    if (r.isEmpty()) {
+      return;
+    }
+    ClipDataEdit before = snapshot != null ? snapshot : new ClipDataEdit(clip, r);
+    long start = System.nanoTime();
+    clip.beginEdit(r, name);
+    try {
+      run(clip, r, before);
+    } finally {
+      clip.endEdit();
+      if (snapshot == null) {
+        before.die();
+      }
+    }
+    logger.fine(String.format("%s on %dx%d took %.3fms", name, r.width, r.height,
+        (System.nanoTime() - start) / 1e6));
+  }
+
+  /**
+   * Applies this operation to the given region of the clip and notifies the clip's listeners,
+   * without starting an undoable edit. This is meant for previews: the caller is responsible for
+   * the undo state, typically by wrapping a series of previews in
+   * {@link Clip#beginEdit(Rectangle, String)} and {@link Clip#endEdit()}.
+   *
+   * @param clip The clip to modify.
+   * @param region The region to modify, in clip co-ordinates. Parts of it outside the clip are
+   *        ignored.
+   * @param snapshot An edit whose old data covers the region, or null to use the clip's current
+   *        data.
+   */
+  public void preview(Clip clip, Rectangle region, ClipDataEdit snapshot) {
+    Rectangle r = clipRegion(clip, region, snapshot);
+    if (r.isEmpty()) {
+      return;
+    }
+    ClipDataEdit before = snapshot != null ? snapshot : new ClipDataEdit(clip, r);
+    try {
+      run(clip, r, before);
+    } finally {
+      if (snapshot == null) {
+        before.die();
+      }
+    }
+    clip.regionChanged(r);
+  }
+
+  /**
+   * Returns the part of the region that lies within the clip, checking that the snapshot (if any)
+   * covers it.
+   */
+  private static Rectangle clipRegion(Clip clip, Rectangle region, ClipDataEdit snapshot) {
+    Rectangle r = region.intersection(clip.getBounds());
+    if (!r.isEmpty() && snapshot != null && !snapshot.getRegion().contains(r)) {
+      throw new IllegalArgumentException(
+          "Snapshot " + snapshot.getRegion() + " doesn't cover region " + r);
+    }
+    return r;
+  }
+
+  /**
+   * Runs the kernel over every frame of the region in parallel, reading from the given snapshot.
+   */
+  private void run(final Clip clip, final Rectangle r, final ClipDataEdit before) {
+    // a spilled snapshot can only be decoded as a whole, so do that once rather than per frame
+    final double[][] decoded = before.getSpilledSize() > 0 ? before.getOldData() : null;
+    final Rectangle snapshotRegion = before.getRegion();
+    final Source source = new Source() {
+      @Override
+      public void getColumn(int frame, double[] dest) {
+        if (decoded == null) {
+          before.getOldData(frame, r.y, dest, r.height);
+        } else {
+          System.arraycopy(decoded[frame - snapshotRegion.x], r.y - snapshotRegion.y, dest, 0,
+              r.height);
+        }
+      }
+
+      @Override
+      public Rectangle getRegion() {
+        return new Rectangle(r);
+      }
+    };
+    // hand out whole lock stripes, so workers never wait for each other's write locks
+    final FrameLocks locks = clip.getFrameLocks();
+    final int base = locks.getStripeStart(r.x);
+    int stripes = (r.x + r.width - base + FrameLocks.STRIPE_FRAMES - 1) / FrameLocks.STRIPE_FRAMES;
+    Parallel.forRange(0, stripes, 1, new Parallel.RangeTask() {
+      @Override
+      public void run(int firstStripe, int endStripe) {
+        int first = Math.max(r.x, base + firstStripe * FrameLocks.STRIPE_FRAMES);
+        int end = Math.min(r.x + r.width, base + endStripe * FrameLocks.STRIPE_FRAMES);
+        double[] data = new double[r.height];
+        locks.lockWrite(first, end - first);
+        try {
+          for (int frame = first; frame < end; frame++) {
+            source.getColumn(frame, data);
+            processFrame(frame, source, data);
+            clip.getFrame(frame).setReal(r.y, data, 0, r.height);
+          }
+        } finally {
+          locks.unlockWrite(first, end - first);
+        }
+      }
+    });
+  }
+}
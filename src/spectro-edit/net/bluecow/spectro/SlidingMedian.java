@@ -0,0 +1,209 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * The median of a window of the most recent values in a stream, updated in O(log n) time as each
+ * new value pushes the oldest one out. The window is kept in two heaps that share one array of
+ * values: a max-heap of the smaller half, whose top is the median, and a min-heap of the larger
+ * half. Each slot of the window remembers where it is in the heaps, so the value leaving the window
+ * can be replaced where it sits rather than searched for.
+ */
+class SlidingMedian {
+
+  /**
+   * The values in the window, by slot. Slots are reused in order, so the oldest value is always
+   * in slot {@link #next}.
+   */
+  private final double[] values;
+
+  /**
+   * Max-heap of the slots holding the smaller half of the values, including the median.
+   */
+  private final int[] lo;
+
+  /**
+   * Min-heap of the slots holding the larger half of the values.
+   */
+  private final int[] hi;
+
+  /**
+   * The index of each slot within the heap it's in.
+   */
+  private final int[] heapIndex;
+
+  /**
+   * Whether each slot is in {@link #lo} (otherwise it's in {@link #hi}).
+   */
+  private final boolean[] inLo;
+
+  private int next;
+
+  /**
+   * Creates a window of the given size, filled with zeros.
+   *
+   * @param size The number of values in the window. Must be odd, so there's a middle value.
+   */
+  SlidingMedian(int size) {
+    if (size < 1 || size % 2 == 0) {
+      throw new IllegalArgumentException("Window size must be odd and positive: " + size);
+    }
+    values = new double[size];
+    lo = new int[size / 2 + 1];
+    hi = new int[size / 2];
+    heapIndex = new int[size];
+    inLo = new boolean[size];
+    fill(0.0);
+  }
+
+  /**
+   * Sets every value in the window to the given value.
+   */
+  void fill(double value) {
+    for (int slot = 0; slot < values.length; slot++) {
+      values[slot] = value;
+      if (slot < lo.length) {
+        lo[slot] = slot;
+        heapIndex[slot] = slot;
+        inLo[slot] = true;
+      } else {
+        hi[slot - lo.length] = slot;
+        heapIndex[slot] = slot - lo.length;
+        inLo[slot] = false;
+      }
+    }
+    next = 0;
+  }
+
+  /**
+   * Adds a value to the window, removing the oldest.
+   */
+  void push(double value) {
+    int slot = next;
+    next = next + 1 == values.length ? 0 : next + 1;
+    double old = values[slot];
+    values[slot] = value;
+    if (inLo[slot]) {
+      if (value > old) {
+        siftUpLo(heapIndex[slot]);
+      } else {
+        siftDownLo(heapIndex[slot]);
+      }
+    } else {
+      if (value < old) {
+        siftUpHi(heapIndex[slot]);
+      } else {
+        siftDownHi(heapIndex[slot]);
+      }
+    }
+
+    // the halves keep their sizes, but a value may now be on the wrong side
+    if (hi.length > 0 && values[lo[0]] > values[hi[0]]) {
+      int a = lo[0];
+      int b = hi[0];
+      lo[0] = b;
+      heapIndex[b] = 0;
+      inLo[b] = true;
+      hi[0] = a;
+      heapIndex[a] = 0;
+      inLo[a] = false;
+      siftDownLo(0);
+      siftDownHi(0);
+    }
+  }
+
+  /**
+   * Returns the median of the values in the window.
+   */
+  double median() {
+    return values[lo[0]];
+  }
+
+  private void siftUpLo(int i) {
+    int slot = lo[i];
+    double v = values[slot];
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      if (values[lo[parent]] >= v) {
+        break;
+      }
+      lo[i] = lo[parent];
+      heapIndex[lo[i]] = i;
+      i = parent;
+    }
+    lo[i] = slot;
+    heapIndex[slot] = i;
+  }
+
+  private void siftDownLo(int i) {
+    int slot = lo[i];
+    double v = values[slot];
+    for (;;) {
+      int child = 2 * i + 1;
+      if (child >= lo.length) {
+        break;
+      }
+      if (child + 1 < lo.length && values[lo[child + 1]] > values[lo[child]]) {
+        child++;
+      }
+      if (values[lo[child]] <= v) {
+        break;
+      }
+      lo[i] = lo[child];
+      heapIndex[lo[i]] = i;
+      i = child;
+    }
+    lo[i] = slot;
+    heapIndex[slot] = i;
+  }
+
+  private void siftUpHi(int i) {
+    int slot = hi[i];
+    double v = values[slot];
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      if (values[hi[parent]] <= v) {
+        break;
+      }
+      hi[i] = hi[parent];
+      heapIndex[hi[i]] = i;
+      i = parent;
+    }
+    hi[i] = slot;
+    heapIndex[slot] = i;
+  }
+
+  private void siftDownHi(int i) {
+    int slot = hi[i];
+    double v = values[slot];
+    for (;;) {
+      int child = 2 * i + 1;
+      if (child >= hi.length) {
+        break;
+      }
+      if (child + 1 < hi.length && values[hi[child + 1]] < values[hi[child]]) {
+        child++;
+      }
+      if (values[hi[child]] >= v) {
+        break;
+      }
+      hi[i] = hi[child];
+      heapIndex[hi[i]] = i;
+      i = child;
+    }
+    hi[i] = slot;
+    heapIndex[slot] = i;
+  }
+}
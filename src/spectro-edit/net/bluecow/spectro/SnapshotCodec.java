@@ -0,0 +1,390 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+/**
+ * Compresses snapshots of clip data for the undo system without losing any precision. There are
+ * two encodings.
+ * <p>
+ * {@link #encode(double[])} stores the cells on their own. Each cell is handled as the raw bits of
+ * its double value, laid out as two planes of ints: the high halves of all the cells, then the low
+ * halves. The ints are run-length encoded as alternating runs of zeros and literals:
+ *
+ * <pre>
+ *   zeroRun, literalCount, literal, literal, ..., zeroRun, literalCount, literal, ...
+ * </pre>
+ *
+ * Regions that were painted out are mostly zero, so they collapse to a handful of ints.
+ * <p>
+ * {@link #encodeDelta(double[], double[])} stores the cells relative to a reference snapshot of the
+ * same region (for the undo system, the before cells relative to the after cells), as a stream of
+ * bits. The cells are taken {@link #CHUNK} at a time. Each chunk can carry a ratio that predicts a
+ * cell from its reference cell by multiplying the two, which is what an edit that changed the gain
+ * of the region does. Each cell is then stored as the XOR of its bits with those of its reference
+ * cell or of the prediction, whichever leaves fewer significant bits, keeping only the bits between
+ * the leading and trailing zeros:
+ *
+ * <pre>
+ *   chunk:  0 value:64 value:64 ...               (stored as is)
+ *           1 hasRatio:1 [ratio:64] cell cell ...
+ *   cell:   0                                     (same as the reference)
+ *           1 [predicted:1] 0                     (same as the prediction)
+ *           1 [predicted:1] 1 lz:6 (len-1):6 xor:len
+ * </pre>
+ *
+ * A cell that's the same as its reference costs one bit, and one whose gain was changed a few
+ * bits: three for a power of two (or a ratio of 0, so a cell set to zero is cheap to store
+ * relative to what it was), and usually under twenty otherwise, where the prediction is off by a
+ * rounding error. Cells that can't be predicted from their reference, such as the old values of
+ * cells that were set to zero, cost their full 64 bits; a chunk of those is stored as is, at 8
+ * bytes a cell, which is the least any lossless scheme can do for arbitrary doubles.
+ */
+class SnapshotCodec {
+
+  /**
+   * A run of zeros shorter than this is stored inside the surrounding literal run, because ending
+   * the literal run would cost more than it saves.
+   */
+  private static final int MIN_ZERO_RUN = 3;
+
+  /**
+   * The number of cells that share a ratio in {@link #encodeDelta(double[], double[])}. This is
+   * the size of a {@link FrameBlock}, so on-heap blocks are encoded as one chunk each.
+   */
+  private static final int CHUNK = 1 << FrameBlock.SHIFT;
+
+  private SnapshotCodec() {
+    // static utility class
+  }
+
+  /**
+   * Encodes the given cells on their own. Negative zero (which is what scaling a negative value by
+   * 0 gives) is stored as positive zero, so it can be run-length encoded.
+   */
+  static int[] encode(double[] cells) {
+    int n = cells.length;
+    int[] bits = new int[2 * n];
+    for (int k = 0; k < n; k++) {
+      long value = Double.doubleToRawLongBits(cells[k] + 0.0);
+      bits[k] = (int) (value >>> 32);
+      bits[n + k] = (int) value;
+    }
+    return encodeRuns(bits);
+  }
+
+  /**
+   * Decodes cells encoded by {@link #encode(double[])} into the given array, which must be exactly
+   * as long as the original.
+   */
+  static void decode(int[] encoded, double[] cells) {
+    int n = cells.length;
+    int[] bits = new int[2 * n];
+    decodeRuns(encoded, bits);
+    for (int k = 0; k < n; k++) {
+      cells[k] = Double.longBitsToDouble(((long) bits[k] << 32) | (bits[n + k] & 0xffffffffL));
+    }
+  }
+
+  /**
+   * Encodes the given cells relative to the reference cells, which must be the same length and
+   * must be given again to decode them.
+   */
+  static int[] encodeDelta(double[] cells, double[] reference) {
+    BitWriter out = new BitWriter();
+    BitWriter trial = new BitWriter();
+    for (int start = 0; start < cells.length; start += CHUNK) {
+      int end = Math.min(cells.length, start + CHUNK);
+      trial.clear();
+      writeDeltaChunk(trial, cells, reference, start, end);
+      if (trial.bitCount() < 64L * (end - start)) {
+        out.write(1, 1);
+        writeDeltaChunk(out, cells, reference, start, end);
+      } else {
+        // unrelated to the reference, so the cells themselves are the best we can do
+        out.write(0, 1);
+        for (int k = start; k < end; k++) {
+          out.write(Double.doubleToRawLongBits(cells[k]), 64);
+        }
+      }
+    }
+    return out.toArray();
+  }
+
+  private static void writeDeltaChunk(BitWriter out, double[] cells, double[] reference,
+      int start, int end) {
+    double ratio = ratio(cells, reference, start, end);
+    boolean hasRatio = !Double.isNaN(ratio);
+    out.write(hasRatio ? 1 : 0, 1);
+    if (hasRatio) {
+      out.write(Double.doubleToRawLongBits(ratio), 64);
+    }
+    for (int k = start; k < end; k++) {
+      long value = Double.doubleToRawLongBits(cells[k]);
+      long xor = value ^ Double.doubleToRawLongBits(reference[k]);
+      if (xor == 0L) {
+        out.write(0, 1);
+        continue;
+      }
+      out.write(1, 1);
+      if (hasRatio) {
+        long predicted = value ^ Double.doubleToRawLongBits(predict(reference[k], ratio));
+        boolean usePrediction = significantBits(predicted) < significantBits(xor);
+        out.write(usePrediction ? 1 : 0, 1);
+        if (usePrediction) {
+          xor = predicted;
+        }
+      }
+      if (xor == 0L) {
+        out.write(0, 1);
+      } else {
+        int lz = Long.numberOfLeadingZeros(xor);
+        int tz = Long.numberOfTrailingZeros(xor);
+        int len = 64 - lz - tz;
+        out.write(1, 1);
+        out.write(lz, 6);
+        out.write(len - 1, 6);
+        out.write(xor >>> tz, len);
+      }
+    }
+  }
+
+  /**
+   * Decodes cells encoded by {@link #encodeDelta(double[], double[])} into the given array.
+   *
+   * @param encoded The encoded cells.
+   * @param reference The reference cells they were encoded against.
+   * @param cells The array to decode into, which must be as long as the reference.
+   */
+  static void decodeDelta(int[] encoded, double[] reference, double[] cells) {
+    BitReader in = new BitReader(encoded);
+    for (int start = 0; start < cells.length; start += CHUNK) {
+      int end = Math.min(cells.length, start + CHUNK);
+      if (in.read(1) == 0) {
+        for (int k = start; k < end; k++) {
+          cells[k] = Double.longBitsToDouble(in.read(64));
+        }
+        continue;
+      }
+      boolean hasRatio = in.read(1) != 0;
+      double ratio = hasRatio ? Double.longBitsToDouble(in.read(64)) : Double.NaN;
+      for (int k = start; k < end; k++) {
+        long base = Double.doubleToRawLongBits(reference[k]);
+        if (in.read(1) == 0) {
+          cells[k] = reference[k];
+          continue;
+        }
+        if (hasRatio && in.read(1) != 0) {
+          base = Double.doubleToRawLongBits(predict(reference[k], ratio));
+        }
+        long xor = 0L;
+        if (in.read(1) != 0) {
+          int lz = (int) in.read(6);
+          int len = (int) in.read(6) + 1;
+          xor = in.read(len) << (64 - lz - len);
+        }
+        cells[k] = Double.longBitsToDouble(base ^ xor);
+      }
+    }
+  }
+
+  /**
+   * Returns the ratio of cells to reference cells in the given chunk, measured at the changed cell
+   * with the largest reference value, or NaN if no changed cell has a usable ratio. A ratio of 0
+   * is usable: it predicts the cells that were set to zero.
+   */
+  private static double ratio(double[] cells, double[] reference, int start, int end) {
+    int best = -1;
+    for (int k = start; k < end; k++) {
+      if (cells[k] != reference[k] && reference[k] != 0.0
+          && (best < 0 || Math.abs(reference[k]) > Math.abs(reference[best]))) {
+        best = k;
+      }
+    }
+    if (best < 0) {
+      return Double.NaN;
+    }
+    double ratio = cells[best] / reference[best];
+    return Double.isInfinite(ratio) ? Double.NaN : ratio;
+  }
+
+  /**
+   * Predicts a cell from its reference cell. Adding 0 turns the -0 that a ratio of 0 gives for a
+   * negative reference into the +0 that edits write.
+   */
+  private static double predict(double reference, double ratio) {
+    return reference * ratio + 0.0;
+  }
+
+  /**
+   * Returns the number of bits between the leading and trailing zeros of the given value.
+   */
+  private static int significantBits(long xor) {
+    return xor == 0L ? 0 : 64 - Long.numberOfLeadingZeros(xor) - Long.numberOfTrailingZeros(xor);
+  }
+
+  /**
+   * Run-length encodes the given ints.
+   */
+  private static int[] encodeRuns(int[] bits) {
+    int[] out = new int[16];
+    int outLen = 0;
+    int i = 0;
+    while (i < bits.length) {
+      int zeroStart = i;
+      while (i < bits.length && bits[i] == 0) {
+        i++;
+      }
+      int zeroRun = i - zeroStart;
+
+      // the literal run ends at the end of the input or at a long enough run of zeros
+      int litStart = i;
+      int zeros = 0;
+      while (i < bits.length && zeros < MIN_ZERO_RUN) {
+        zeros = bits[i] == 0 ? zeros + 1 : 0;
+        i++;
+      }
+      if (zeros == MIN_ZERO_RUN) {
+        i -= zeros;
+      }
+      int litCount = i - litStart;
+
+      if (outLen + 2 + litCount > out.length) {
+        int[] bigger = new int[Math.max(out.length * 2, outLen + 2 + litCount)];
+        System.arraycopy(out, 0, bigger, 0, outLen);
+        out = bigger;
+      }
+      out[outLen++] = zeroRun;
+      out[outLen++] = litCount;
+      System.arraycopy(bits, litStart, out, outLen, litCount);
+      outLen += litCount;
+    }
+    int[] trimmed = new int[outLen];
+    System.arraycopy(out, 0, trimmed, 0, outLen);
+    return trimmed;
+  }
+
+  /**
+   * Decodes ints encoded by {@link #encodeRuns(int[])} into the given array, which must be exactly
+   * as long as the original.
+   */
+  private static void decodeRuns(int[] encoded, int[] bits) {
+    int pos = 0;
+    int i = 0;
+    while (i < encoded.length) {
+      int zeroRun = encoded[i++];
+      for (int end = pos + zeroRun; pos < end; pos++) {
+        bits[pos] = 0;
+      }
+      int litCount = encoded[i++];
+      System.arraycopy(encoded, i, bits, pos, litCount);
+      i += litCount;
+      pos += litCount;
+    }
+    if (pos != bits.length) {
+      throw new IllegalStateException("Decoded " + pos + " cells, expected " + bits.length);
+    }
+  }
+
+  /**
+   * Packs values of up to 64 bits into a growing array of ints, most significant bit first.
+   */
+  private static class BitWriter {
+    private int[] out = new int[16];
+    private int length;
+
+    /**
+     * Bits that haven't filled an int yet; always fewer than 32 between calls.
+     */
+    private long pending;
+    private int pendingBits;
+
+    void write(long value, int nBits) {
+      if (nBits > 32) {
+        write(value >>> 32, nBits - 32);
+        write(value, 32);
+        return;
+      }
+      pending = (pending << nBits) | (value & ((1L << nBits) - 1));
+      pendingBits += nBits;
+      if (pendingBits >= 32) {
+        pendingBits -= 32;
+        add((int) (pending >>> pendingBits));
+        pending &= (1L << pendingBits) - 1;
+      }
+    }
+
+    private void add(int bits) {
+      if (length == out.length) {
+        int[] bigger = new int[out.length * 2];
+        System.arraycopy(out, 0, bigger, 0, length);
+        out = bigger;
+      }
+      out[length++] = bits;
+    }
+
+    long bitCount() {
+      return 32L * length + pendingBits;
+    }
+
+    void clear() {
+      length = 0;
+      pending = 0;
+      pendingBits = 0;
+    }
+
+    int[] toArray() {
+      if (pendingBits > 0) {
+        add((int) (pending << (32 - pendingBits)));
+        pending = 0;
+        pendingBits = 0;
+      }
+      int[] trimmed = new int[length];
+      System.arraycopy(out, 0, trimmed, 0, length);
+      return trimmed;
+    }
+  }
+
+  /**
+   * Reads back the values written by a {@link BitWriter}.
+   */
+  private static class BitReader {
+    private final int[] in;
+    private int pos;
+    private long pending;
+    private int pendingBits;
+
+    BitReader(int[] in) {
+      this.in = in;
+    }
+
+    long read(int nBits) {
+      if (nBits > 32) {
+        long high = read(nBits - 32);
+        return (high << 32) | read(32);
+      }
+      if (pendingBits < nBits) {
+        if (pos == in.length) {
+          throw new IllegalStateException("Ran out of encoded data after " + pos + " ints");
+        }
+        pending = (pending << 32) | (in[pos++] & 0xffffffffL);
+        pendingBits += 32;
+      }
+      pendingBits -= nBits;
+      long value = (pending >>> pendingBits) & ((1L << nBits) - 1);
+      pending &= (1L << pendingBits) - 1;
+      return value;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * A temporary file that undo snapshots are moved into when the undo history gets too big for the
+ * heap. Snapshots are appended as blocks of ints and read back by memory-mapping just the block
+ * that's needed, so reloading one snapshot never touches the rest of the file.
+ * <p>
+ * The file only ever grows. Its owner should close it (which deletes it) once none of the
+ * snapshots in it are needed any more, and reclaim the space of dead snapshots by moving the live
+ * ones to a new file (see {@link SpillableEdit#moveSpilledData(SnapshotSpillFile)}) and closing
+ * this one.
+ */
+public class SnapshotSpillFile {
+
+  private static final Logger logger = Logger.getLogger(SnapshotSpillFile.class.getName());
+
+  private final File file;
+
+  private final RandomAccessFile raf;
+
+  private final FileChannel channel;
+
+  /**
+   * The number of bytes written so far. Guarded by this.
+   */
+  private long length;
+
+  SnapshotSpillFile() throws IOException {
+    file = File.createTempFile("spectro-undo", ".snapshots");
+    file.deleteOnExit();
+    raf = new RandomAccessFile(file, "rw");
+    channel = raf.getChannel();
+    logger.fine("Created undo spill file " + file);
+  }
+
+  /**
+   * Appends the given data to this file.
+   *
+   * @return The position of the data in this file, to be passed to {@link #read(long, int)}.
+   */
+  public synchronized long write(int[] data) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(data.length * 4);
+    buf.asIntBuffer().put(data);
+    long offset = length;
+    long pos = offset;
+    while (buf.hasRemaining()) {
+      pos += channel.write(buf, pos);
+    }
+    length = pos;
+    return offset;
+  }
+
+  /**
+   * Reads back data that was written by {@link #write(int[])}.
+   *
+   * @param offset The position returned by {@link #write(int[])}.
+   * @param count The number of ints that were written.
+   */
+  public int[] read(long offset, int count) throws IOException {
+    int[] data = new int[count];
+    if (count > 0) {
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, offset, count * 4L);
+      map.asIntBuffer().get(data);
+    }
+    return data;
+  }
+
+  /**
+   * Returns the number of bytes written to this file.
+   */
+  public synchronized long getLength() {
+    return length;
+  }
+
+  /**
+   * Closes and deletes this file. Snapshots in it can't be read after this.
+   */
+  public synchronized void close() {
+    try {
+      raf.close();
+    } catch (IOException ex) {
+      logger.warning("Couldn't close undo spill file " + file + ": " + ex);
+    }
+    if (!file.delete()) {
+      logger.fine("Couldn't delete undo spill file " + file + " yet; will try again on exit");
+    }
+  }
+}
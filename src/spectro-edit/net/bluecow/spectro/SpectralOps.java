@@ -0,0 +1,163 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+
+/**
+ * The operations behind the region tools, for use on their own, in a {@link SpectralPipeline}, or
+ * without a GUI.
+ */
+public class SpectralOps {
+
+  private SpectralOps() {
+    // static factory class
+  }
+
+  /**
+   * Returns an operation that multiplies every cell by the given amount. 1.0 means no change;
+   * between 0.0 and 1.0 means to reduce intensity, and &gt;1.0 means to increase intensity.
+   */
+  public static CellOp scale(final double amount) {
+    return new CellOp("Scale Region") {
+      @Override
+      protected double processCell(double value) {
+        return value * amount;
+      }
+    };
+  }
+
+  /**
+   * Returns an operation that sets cells on one side of a threshold to 0, leaving the others as
+   * they were.
+   *
+   * @param threshold The cutoff, compared with the magnitude of each cell.
+   * @param upper If true, cells louder than the threshold are removed; if false, cells quieter
+   *        than it are.
+   */
+  public static CellOp threshold(final double threshold, final boolean upper) {
+    return new CellOp("Region Threshold") {
+      @Override
+      protected double processCell(double value) {
+        if (upper && Math.abs(value) > threshold) {
+          return 0.0;
+        } else if ((!upper) && Math.abs(value) < threshold) {
+          return 0.0;
+        } else {
+          return value;
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns an operation that reverses the order of the frequencies in each frame of the region.
+   */
+  public static RegionOp flipVertically() {
+    return new RegionOp("Flip Region Vertically") {
+      @Override
+      protected void processFrame(int frame, Source source, double[] data) {
+        for (int j = 0; j < data.length / 2; j++) {
+          int top = data.length - 1 - j;
+          double tmp = data[top];
+          data[top] = data[j];
+          data[j] = tmp;
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns an operation that reverses the order of the frames in the given region. The operation
+   * must be applied to exactly that region, after clipping it to the clip.
+   *
+   * @param region The region to flip, in clip co-ordinates.
+   */
+  public static RegionOp flipHorizontally(Rectangle region) {
+    final int mirror = 2 * region.x + region.width - 1;
+    return new RegionOp("Flip Region Horizontally") {
+      @Override
+      protected void processFrame(int frame, Source source, double[] data) {
+        source.getColumn(mirror - frame, data);
+      }
+    };
+  }
+
+  /**
+   * Returns an operation that removes the noise described by the given profile by spectral
+   * subtraction. Each cell is scaled by a gain of 1 - amount * noise / magnitude, limited to
+   * [floor, 1], where the magnitude is smoothed over the cell's neighbours in time and frequency
+   * so the gain doesn't flicker from cell to cell (which is heard as "musical noise").
+   *
+   * @param profile The noise to remove. Must come from a clip with the same frame size.
+   * @param amount How much of the noise level to subtract; 1.0 subtracts the profile as measured,
+   *        and a bit more than that catches the noise's peaks as well.
+   * @param floor The smallest gain applied to any cell, between 0.0 and 1.0. A small floor leaves
+   *        a little of the noise in, which sounds more natural than silence.
+   */
+  public static RegionOp subtractNoise(final NoiseProfile profile, final double amount,
+      final double floor) {
+    return new RegionOp("Noise Reduction") {
+      @Override
+      protected void processFrame(int frame, Source source, double[] data) {
+        Rectangle r = source.getRegion();
+        double[] before = frame > r.x ? new double[data.length] : null;
+        double[] after = frame < r.x + r.width - 1 ? new double[data.length] : null;
+        if (before != null) {
+          source.getColumn(frame - 1, before);
+        }
+        if (after != null) {
+          source.getColumn(frame + 1, after);
+        }
+
+        // magnitudes smoothed over time, weighting this frame twice
+        double[] smoothed = new double[data.length];
+        for (int j = 0; j < data.length; j++) {
+          double sum = 2.0 * Math.abs(data[j]);
+          double weight = 2.0;
+          if (before != null) {
+            sum += Math.abs(before[j]);
+            weight += 1.0;
+          }
+          if (after != null) {
+            sum += Math.abs(after[j]);
+            weight += 1.0;
+          }
+          smoothed[j] = sum / weight;
+        }
+
+        // then over frequency, the same way, and turned into a gain
+        for (int j = 0; j < data.length; j++) {
+          double sum = 2.0 * smoothed[j];
+          double weight = 2.0;
+          if (j > 0) {
+            sum += smoothed[j - 1];
+            weight += 1.0;
+          }
+          if (j < data.length - 1) {
+            sum += smoothed[j + 1];
+            weight += 1.0;
+          }
+          double magnitude = sum / weight;
+          double noise = amount * profile.getLevel(r.y + j);
+          if (noise > 0.0) {
+            double gain = magnitude > noise ? 1.0 - noise / magnitude : 0.0;
+            data[j] *= Math.max(floor, gain);
+          }
+        }
+      }
+    };
+  }
+}
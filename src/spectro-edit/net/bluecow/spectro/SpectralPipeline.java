@@ -0,0 +1,160 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sequence of {@link RegionOp}s fused into a single operation. Applying a pipeline makes one
+ * pass over the region, running every stage on each frame while that frame's data is in cache, and
+ * produces one undoable edit and one change notification, where applying the stages one after the
+ * other would make a pass, an undo snapshot and a repaint for each. Consecutive {@link CellOp}s are
+ * fused further, into a single loop over the cells of each frame.
+ * <p>
+ * Pipelines are immutable; {@link #then(RegionOp)} returns a new, longer pipeline:
+ *
+ * <pre>
+ * new SpectralPipeline(&quot;Clean Up&quot;)
+ *     .then(SpectralOps.threshold(0.5, false))
+ *     .then(SpectralOps.scale(2.0))
+ *     .then(SpectralOps.flipVertically())
+ *     .apply(clip, region);
+ * </pre>
+ *
+ * Being a RegionOp itself, a pipeline can be previewed, applied from a snapshot, or used as a
+ * stage of another pipeline.
+ * <p>
+ * Each stage sees the output of the stage before it. A stage that reads other frames through its
+ * {@link RegionOp.Source} gets them with the earlier stages applied, computed on demand, so the
+ * result is the same as applying the stages one at a time.
+ */
+public class SpectralPipeline extends RegionOp {
+
+  private final RegionOp[] stages;
+
+  /**
+   * Creates an empty pipeline, which leaves the data as it is.
+   *
+   * @param name The user-visible description of the pipeline, used as the edit's name.
+   */
+  public SpectralPipeline(String name) {
+    this(name, new RegionOp[0]);
+  }
+
+  private SpectralPipeline(String name, RegionOp[] stages) {
+    super(name);
+    this.stages = stages;
+  }
+
+  /**
+   * Returns a pipeline that runs this pipeline's stages followed by the given operation. This
+   * pipeline is not modified.
+   */
+  public SpectralPipeline then(RegionOp op) {
+    List<RegionOp> result = new ArrayList<RegionOp>(Arrays.asList(stages));
+    if (op instanceof SpectralPipeline) {
+      for (RegionOp stage : ((SpectralPipeline) op).stages) {
+        append(result, stage);
+      }
+    } else {
+      append(result, op);
+    }
+    return new SpectralPipeline(getName(), result.toArray(new RegionOp[result.size()]));
+  }
+
+  /**
+   * Adds a stage to the list, merging it into the last stage if both are cell operations.
+   */
+  private static void append(List<RegionOp> stages, RegionOp op) {
+    int last = stages.size() - 1;
+    if (op instanceof CellOp && last >= 0 && stages.get(last) instanceof CellOp) {
+      stages.set(last, new FusedCellOp((CellOp) stages.get(last), (CellOp) op));
+    } else {
+      stages.add(op);
+    }
+  }
+
+  /**
+   * Returns the number of passes this pipeline makes over each frame, which is the number of
+   * operations it was built from, less those fused into a neighbouring cell operation.
+   */
+  public int getStageCount() {
+    return stages.length;
+  }
+
+  @Override
+  protected void processFrame(int frame, Source source, double[] data) {
+    Source stageSource = source;
+    for (RegionOp stage : stages) {
+      stage.processFrame(frame, stageSource, data);
+      stageSource = new StageSource(stageSource, stage);
+    }
+  }
+
+  /**
+   * The output of a stage, as seen by the stage after it.
+   */
+  private static class StageSource implements Source {
+    private final Source upstream;
+    private final RegionOp stage;
+
+    StageSource(Source upstream, RegionOp stage) {
+      this.upstream = upstream;
+      this.stage = stage;
+    }
+
+    @Override
+    public void getColumn(int frame, double[] dest) {
+      upstream.getColumn(frame, dest);
+      stage.processFrame(frame, upstream, dest);
+    }
+
+    @Override
+    public Rectangle getRegion() {
+      return upstream.getRegion();
+    }
+  }
+
+  /**
+   * Consecutive cell operations, applied one after the other to each cell.
+   */
+  private static class FusedCellOp extends CellOp {
+    private final CellOp[] ops;
+
+    FusedCellOp(CellOp first, CellOp second) {
+      super(first.getName());
+      List<CellOp> all = new ArrayList<CellOp>();
+      for (CellOp op : new CellOp[] { first, second }) {
+        if (op instanceof FusedCellOp) {
+          all.addAll(Arrays.asList(((FusedCellOp) op).ops));
+        } else {
+          all.add(op);
+        }
+      }
+      ops = all.toArray(new CellOp[all.size()]);
+    }
+
+    @Override
+    protected double processCell(double value) {
+      for (CellOp op : ops) {
+        value = op.processCell(value);
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.util.logging.Logger;
+
+/**
+ * A multi-resolution overview of a clip's spectral data, for drawing the clip zoomed out in time.
+ * Each column at level <i>n</i> covers 2<sup><i>n</i></sup> consecutive frames, and holds the
+ * largest absolute value of each frequency index over those frames (colorizers only care about
+ * magnitude, and taking the maximum keeps short loud events visible at any zoom level). Level 0 is
+ * the clip itself.
+ * <p>
+ * To keep memory use well below that of the clip, only levels from {@link #FIRST_STORED_LEVEL} up
+ * are stored, as floats. Columns of the levels in between are reduced on the fly from the clip,
+ * which still only costs a small constant number of reads per pixel.
+ * <p>
+ * The stored levels are built in parallel by {@link #build()}, which is meant to be called on a
+ * background thread. Until it finishes, every level is reduced directly from the clip. Changes to
+ * the clip data must be reported through {@link #update(Rectangle)}, which recomputes only the
+ * affected columns.
+ * <p>
+ * A pyramid can also be built over a {@link FilterbankView} instead of the clip's frequency
+ * indexes, in which case its rows are the filterbank's bands and level 0 is the view.
+ */
+class SpectralPyramid {
+
+  private static final Logger logger = Logger.getLogger(SpectralPyramid.class.getName());
+
+  /**
+   * The lowest level that is precomputed and stored.
+   */
+  static final int FIRST_STORED_LEVEL = 4;
+
+  /**
+   * Levels stop being added once a level has no more than this many columns.
+   */
+  private static final int MIN_COLUMNS = 64;
+
+  /**
+   * The number of columns handed to a worker thread at a time while building a level.
+   */
+  private static final int BUILD_GRAIN = 64;
+
+  private final Clip clip;
+
+  /**
+   * The bands to show instead of the frequency indexes, or null to show the frequency indexes.
+   */
+  private final FilterbankView view;
+
+  private final int height;
+
+  private final int maxLevel;
+
+  /**
+   * The stored levels, indexed by level number. Entries below {@link #FIRST_STORED_LEVEL} are
+   * always null. Each level is in column-major order (all frequency indexes of column 0, then all
+   * of column 1, ...). The whole array is null until {@link #build()} has finished.
+   */
+  private volatile float[][] levels;
+
+  /**
+   * The union of all regions reported to {@link #update(Rectangle)} while the pyramid was being
+   * built, or null if there were none. Guarded by this.
+   */
+  private Rectangle pendingUpdate;
+
+  SpectralPyramid(Clip clip) {
+    this(clip, null);
+  }
+
+  /**
+   * @param view The bands to show instead of the clip's frequency indexes, or null to show the
+   *        frequency indexes.
+   */
+  SpectralPyramid(Clip clip, FilterbankView view) {
+    this.clip = clip;
+    this.view = view;
+    this.height = view == null ? clip.getFrameFreqSamples() : view.getBandCount();
+    int level = 0;
+    while (getColumnCount(level) > MIN_COLUMNS) {
+      level++;
+    }
+    maxLevel = level;
+  }
+
+  /**
+   * Returns the highest (most zoomed out) level this pyramid can provide.
+   */
+  int getMaxLevel() {
+    return maxLevel;
+  }
+
+  /**
+   * Returns the number of rows in each column: the number of frequency indexes or bands.
+   */
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the rows that show any of the frequency indexes of the given region.
+   *
+   * @param region A region in clip co-ordinates.
+   * @return The first row and one past the last row.
+   */
+  int[] getRowRange(Rectangle region) {
+    if (view != null) {
+      return view.getFilterbank().getBandRange(region.y, region.y + region.height);
+    }
+    return new int[] { Math.max(0, region.y), Math.min(height, region.y + region.height) };
+  }
+
+  /**
+   * Returns the number of columns at the given level.
+   */
+  int getColumnCount(int level) {
+    int frames = clip.getFrameCount();
+    return (frames + (1 << level) - 1) >> level;
+  }
+
+  /**
+   * Returns true once the stored levels have been built.
+   */
+  boolean isBuilt() {
+    return levels != null;
+  }
+
+  /**
+   * Computes all the stored levels. Each level is computed in parallel from the one below it. This
+   * can take a while for long clips, so it should not be called on the event dispatch thread.
+   */
+  void build() {
+    long start = System.currentTimeMillis();
+    if (view != null) {
+      view.build();
+    }
+    final float[][] lv = new float[maxLevel + 1][];
+    for (int level = FIRST_STORED_LEVEL; level <= maxLevel; level++) {
+      final int l = level;
+      lv[l] = new float[getColumnCount(l) * height];
+      Parallel.forRange(0, getColumnCount(l), BUILD_GRAIN, new Parallel.RangeTask() {
+        @Override
+        public void run(int first, int end) {
+          for (int col = first; col < end; col++) {
+            reduce(lv, l, col, 0, height);
+          }
+        }
+      });
+    }
+
+    Rectangle missed;
+    synchronized (this) {
+      levels = lv;
+      missed = pendingUpdate;
+      pendingUpdate = null;
+    }
+    if (missed != null) {
+      update(missed);
+    }
+    logger.fine(String.format("Built %d pyramid levels in %dms",
+        Math.max(0, maxLevel - FIRST_STORED_LEVEL + 1), System.currentTimeMillis() - start));
+  }
+
+  /**
+   * Recomputes the parts of the stored levels that depend on the given region of clip data.
+   *
+   * @param region The region that changed, in clip co-ordinates (frames across, frequency indexes
+   *        up).
+   */
+  synchronized void update(Rectangle region) {
+    if (view != null) {
+      view.invalidate(region);
+    }
+    int[] rows = getRowRange(region);
+    final float[][] lv = levels;
+    if (lv == null) {
+      if (pendingUpdate == null) {
+        pendingUpdate = new Rectangle(region);
+      } else {
+        pendingUpdate.add(region);
+      }
+      return;
+    }
+    final int rowStart = rows[0];
+    final int rowEnd = rows[1];
+    for (int level = FIRST_STORED_LEVEL; level <= maxLevel; level++) {
+      final int l = level;
+      int firstCol = Math.max(0, region.x) >> l;
+      int endCol = Math.min(getColumnCount(l), ((region.x + region.width - 1) >> l) + 1);
+      Parallel.forRange(firstCol, endCol, BUILD_GRAIN, new Parallel.RangeTask() {
+        @Override
+        public void run(int first, int end) {
+          for (int col = first; col < end; col++) {
+            reduce(lv, l, col, rowStart, rowEnd);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Recomputes one column of a stored level from the nearest level below it.
+   */
+  private void reduce(float[][] lv, int level, int col, int firstRow, int endRow) {
+    float[] dest = lv[level];
+    int base = col * height;
+    if (level == FIRST_STORED_LEVEL) {
+      int firstFrame = col << level;
+      int endFrame = Math.min(clip.getFrameCount(), (col + 1) << level);
+      for (int row = firstRow; row < endRow; row++) {
+        dest[base + row] = 0f;
+      }
+      double[] column = new double[endRow - firstRow];
+      for (int frame = firstFrame; frame < endFrame; frame++) {
+        readFrame(frame, firstRow, column, column.length);
+        for (int row = firstRow; row < endRow; row++) {
+          float v = (float) Math.abs(column[row - firstRow]);
+          if (v > dest[base + row]) {
+            dest[base + row] = v;
+          }
+        }
+      }
+    } else {
+      float[] src = lv[level - 1];
+      int left = 2 * col * height;
+      boolean hasRight = 2 * col + 1 < getColumnCount(level - 1);
+      int right = hasRight ? left + height : left;
+      for (int row = firstRow; row < endRow; row++) {
+        dest[base + row] = Math.max(src[left + row], src[right + row]);
+      }
+    }
+  }
+
+  /**
+   * Copies the magnitudes of a run of frequency indexes (or bands) of one column into the given
+   * array. At level 0 the values are the clip data itself, signs included.
+   *
+   * @param level The pyramid level to read.
+   * @param col The column within that level.
+   * @param firstRow The first frequency index (or band) to copy.
+   * @param dest The array to copy into, starting at position 0.
+   * @param length The number of frequency indexes to copy.
+   */
+  void getColumn(int level, int col, int firstRow, double[] dest, int length) {
+    float[][] lv = levels;
+    if (level == 0) {
+      readFrame(col, firstRow, dest, length);
+    } else if (lv != null && level >= FIRST_STORED_LEVEL) {
+      float[] src = lv[level];
+      int base = col * height + firstRow;
+      for (int i = 0; i < length; i++) {
+        dest[i] = src[base + i];
+      }
+    } else {
+      // levels below the stored ones (or any level, if they're not built yet) come from the clip
+      int firstFrame = col << level;
+      int endFrame = Math.min(clip.getFrameCount(), (col + 1) << level);
+      for (int i = 0; i < length; i++) {
+        dest[i] = 0.0;
+      }
+      double[] column = new double[length];
+      for (int frame = firstFrame; frame < endFrame; frame++) {
+        readFrame(frame, firstRow, column, length);
+        for (int i = 0; i < length; i++) {
+          dest[i] = Math.max(dest[i], Math.abs(column[i]));
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies a run of rows of one frame into the given array: the frame's own data, or its band
+   * values if this pyramid is built over a filterbank view.
+   */
+  private void readFrame(int frame, int firstRow, double[] dest, int length) {
+    if (view != null) {
+      view.getColumn(frame, firstRow, dest, length);
+      return;
+    }
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockRead(frame, 1);
+    try {
+      clip.getFrame(frame).getReal(firstRow, dest, 0, length);
+    } finally {
+      locks.unlockRead(frame, 1);
+    }
+  }
+}
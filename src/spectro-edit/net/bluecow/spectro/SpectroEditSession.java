@@ -33,12 +33,16 @@ import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
 import javax.swing.SwingUtilities;
+import net.bluecow.spectro.action.NextOnsetAction;
+import net.bluecow.spectro.action.PitchOverlayAction;
 import net.bluecow.spectro.action.PlayPauseAction;
 import net.bluecow.spectro.action.RewindAction;
 import net.bluecow.spectro.action.SaveAction;
 import net.bluecow.spectro.action.UndoRedoAction;
+import net.bluecow.spectro.action.ZoomAction;
 import net.bluecow.spectro.tool.ToolboxPanel;
 
 /**
@@ -91,6 +95,11 @@ public class SpectroEditSession {
     toolbar.addSeparator();
     toolbar.add(new PlayPauseAction(playerThread));
     toolbar.add(new RewindAction(playerThread));
+    toolbar.add(new NextOnsetAction(clipPanel));
+    toolbar.addSeparator();
+    toolbar.add(ZoomAction.createZoomInInstance(clipPanel));
+    toolbar.add(ZoomAction.createZoomOutInstance(clipPanel));
+    toolbar.add(new JToggleButton(new PitchOverlayAction(clipPanel)));
     f.add(toolbar, BorderLayout.NORTH);
 
     if (prefs.get("frameBounds", null) != null) {
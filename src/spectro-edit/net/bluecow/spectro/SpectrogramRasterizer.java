@@ -0,0 +1,336 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Converts the spectral data of a clip into pixels for a {@link ClipPanel}. The spectrogram is
+ * divided into column tiles, and only the tiles that are visible in the panel's viewport (plus one
+ * on either side, to keep scrolling smooth) are ever rendered. Rendering happens on a shared pool
+ * of worker threads, and each finished tile is published to a bounded cache on the event dispatch
+ * thread, so memory use depends on the size of the screen rather than the length of the clip.
+ * <p>
+ * Every colorizer change starts a new render generation. Cached tiles are keyed by tile index and
+ * remember the generation they were rendered in; tiles from an older generation are still drawn
+ * until their replacement arrives, but they are re-requested every time they're painted. Pending
+ * renders from an older generation are cancelled if they haven't started yet, and abandon their
+ * work at the next column if they have, so dragging a colorizer slider never queues up a backlog of
+ * stale renders.
+ * <p>
+ * Apart from the worker tasks themselves, everything in this class must be accessed on the event
+ * dispatch thread.
+ */
+class SpectrogramRasterizer {
+
+  private static final Logger logger = Logger.getLogger(SpectrogramRasterizer.class.getName());
+
+  /**
+   * The number of pixel columns in one tile. At zoom level 0, that is also the number of frames.
+   */
+  static final int TILE_WIDTH = 256;
+
+  /**
+   * The amount of pixel memory the tile cache is allowed to use beyond what it takes to cover the
+   * visible part of the panel.
+   */
+  private static final long CACHE_BUDGET_BYTES = 32L * 1024 * 1024;
+
+  /**
+   * The worker pool shared by all clip panels. The threads are daemons so an open magnify dialog
+   * never keeps the VM alive.
+   */
+  private static final ExecutorService workers =
+      Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Spectrogram rasterizer " + count.incrementAndGet());
+          t.setDaemon(true);
+          t.setPriority(Thread.NORM_PRIORITY - 1);
+          return t;
+        }
+      });
+
+  private final ClipPanel panel;
+
+  /**
+   * The source of column data for zoomed-out levels.
+   */
+  private final SpectralPyramid pyramid;
+
+  /**
+   * The zoom level being rendered. Each tile column shows one column of this pyramid level.
+   */
+  private int level;
+
+  /**
+   * The generation of the most recent full render request. Tile tasks compare their own generation
+   * against this to find out if they've been superseded.
+   */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  /**
+   * The maximum number of tiles {@link #tiles} may hold. Recalculated on every paint so that it
+   * always covers the visible area.
+   */
+  private int maxTiles;
+
+  /**
+   * Rendered tiles by tile index, in least-recently-painted order.
+   */
+  private final LinkedHashMap<Integer, Tile> tiles = new LinkedHashMap<Integer, Tile>(16, 0.75f,
+      true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+      return size() > maxTiles;
+    }
+  };
+
+  /**
+   * Tile renders that have been requested but not published yet, by tile index.
+   */
+  private final Map<Integer, TileRequest> pending = new HashMap<Integer, TileRequest>();
+
+  SpectrogramRasterizer(ClipPanel panel, SpectralPyramid pyramid) {
+    this.panel = panel;
+    this.pyramid = pyramid;
+    long tileBytes = 4L * TILE_WIDTH * pyramid.getHeight();
+    maxTiles = (int) Math.max(4, CACHE_BUDGET_BYTES / tileBytes);
+  }
+
+  /**
+   * Starts a new render generation, which makes all cached tiles stale and cancels all pending
+   * renders. Tiles are re-rendered as they get painted.
+   */
+  void renderAll() {
+    int gen = generation.incrementAndGet();
+    for (TileRequest r : pending.values()) {
+      r.cancel();
+    }
+    pending.clear();
+    logger.finer("Started render generation " + gen);
+  }
+
+  /**
+   * Switches to rendering the given zoom level. All cached tiles are discarded, since their columns
+   * no longer line up with the panel's pixels.
+   */
+  void setLevel(int level) {
+    this.level = level;
+    renderAll();
+    tiles.clear();
+  }
+
+  /**
+   * Re-renders the given region of all cached tiles immediately on the calling thread. This is
+   * meant for the small regions affected by edits, where the overhead of a round trip through the
+   * worker pool isn't worth it. Pending renders that overlap the region are cancelled, since they
+   * might have read the data before it changed.
+   *
+   * @param region The region to render, in clip co-ordinates.
+   */
+  void renderNow(Rectangle region) {
+    int[] rows = pyramid.getRowRange(region);
+    if (rows[0] >= rows[1]) {
+      return;
+    }
+    int regionCol = Math.max(0, region.x) >> level;
+    int regionEndCol = Math.min(pyramid.getColumnCount(level),
+        ((region.x + region.width - 1) >> level) + 1);
+    int firstTile = regionCol / TILE_WIDTH;
+    int lastTile = (regionEndCol - 1) / TILE_WIDTH;
+    for (int idx = firstTile; idx <= lastTile; idx++) {
+      TileRequest r = pending.remove(idx);
+      if (r != null) {
+        r.cancel();
+      }
+      Tile t = tiles.get(idx);
+      if (t != null && t.level == level) {
+        int firstCol = Math.max(regionCol, t.firstCol);
+        int endCol = Math.min(regionEndCol, t.firstCol + t.pixels.length / t.height);
+        rasterize(-1, t, firstCol, endCol, rows[0], rows[1]);
+      }
+    }
+  }
+
+  /**
+   * Draws the tiles that intersect the given area, requesting renders for those that are missing or
+   * stale. Areas whose tiles haven't been rendered yet are left as they are (the panel's background
+   * colour).
+   *
+   * @param g The graphics to paint with. Its co-ordinate system must be the panel's.
+   * @param bounds The area to paint.
+   */
+  void paint(Graphics g, Rectangle bounds) {
+    Rectangle visible = panel.getVisibleRect();
+    int tileCount = (pyramid.getColumnCount(level) + TILE_WIDTH - 1) / TILE_WIDTH;
+    int firstVisible = Math.max(0, visible.x / TILE_WIDTH - 1);
+    int lastVisible = Math.min(tileCount - 1, (visible.x + visible.width) / TILE_WIDTH + 1);
+    maxTiles = Math.max(maxTiles, lastVisible - firstVisible + 1);
+
+    // forget about requests that have scrolled out of view
+    Iterator<Map.Entry<Integer, TileRequest>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Integer, TileRequest> e = it.next();
+      if (e.getKey() < firstVisible || e.getKey() > lastVisible) {
+        e.getValue().cancel();
+        it.remove();
+      }
+    }
+
+    int gen = generation.get();
+    for (int idx = firstVisible; idx <= lastVisible; idx++) {
+      Tile t = tiles.get(idx);
+      if ((t == null || t.generation != gen) && !pending.containsKey(idx)) {
+        request(idx, gen);
+      }
+    }
+
+    int firstTile = Math.max(0, bounds.x / TILE_WIDTH);
+    int lastTile = Math.min(tileCount - 1, (bounds.x + bounds.width) / TILE_WIDTH);
+    for (int idx = firstTile; idx <= lastTile; idx++) {
+      Tile t = tiles.get(idx);
+      if (t != null) {
+        g.drawImage(t.image, t.firstCol, 0, null);
+      }
+    }
+  }
+
+  private void request(int idx, int gen) {
+    TileRequest r = new TileRequest(idx, gen, level);
+    pending.put(idx, r);
+    r.future = workers.submit(r);
+  }
+
+  /**
+   * Puts a finished tile into the cache and repaints it, provided the request that rendered it is
+   * still the current one for its tile.
+   */
+  private void publish(TileRequest r, Tile t) {
+    if (pending.get(r.index) != r) {
+      return;
+    }
+    pending.remove(r.index);
+    tiles.put(r.index, t);
+    panel.repaint(t.firstCol, 0, t.pixels.length / t.height, t.height);
+  }
+
+  /**
+   * Colours the pixels for the given range of columns and frequency indexes into a tile. Higher
+   * frequencies go at the top of the tile, so it can be drawn without flipping.
+   *
+   * @param gen The render generation this work belongs to, or -1 if it can't be superseded.
+   * @return true if the whole range was rendered; false if it was abandoned because a newer
+   *         generation was requested.
+   */
+  private boolean rasterize(int gen, Tile t, int firstCol, int endCol, int firstRow, int endRow) {
+    final ValueColorizer colorizer = panel.getColorizer();
+    final int width = t.pixels.length / t.height;
+    final int height = endRow - firstRow;
+    final double[] column = new double[height];
+    for (int col = firstCol; col < endCol; col++) {
+      if (gen != -1 && gen != generation.get()) {
+        return false;
+      }
+      pyramid.getColumn(t.level, col, firstRow, column, height);
+      // one bulk call per column is a MUCH faster equivalent to img.setRGB(col, row, colour)
+      int bottom = (t.height - 1 - firstRow) * width + (col - t.firstCol);
+      colorizer.colorFor(column, 0, t.pixels, bottom, -width, height);
+    }
+    return true;
+  }
+
+  /**
+   * A rendered piece of the spectrogram.
+   */
+  private static class Tile {
+    final int firstCol;
+    final int height;
+    final int generation;
+    final int level;
+    final BufferedImage image;
+    final int[] pixels;
+
+    Tile(int firstCol, int width, int height, int generation, int level) {
+      this.firstCol = firstCol;
+      this.height = height;
+      this.generation = generation;
+      this.level = level;
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+  }
+
+  /**
+   * A background render of one tile.
+   */
+  private class TileRequest implements Runnable {
+    final int index;
+    final int gen;
+    final int level;
+    Future<?> future;
+    volatile boolean cancelled;
+
+    TileRequest(int index, int gen, int level) {
+      this.index = index;
+      this.gen = gen;
+      this.level = level;
+    }
+
+    void cancel() {
+      cancelled = true;
+      future.cancel(false);
+    }
+
+    @Override
+    public void run() {
+      if (cancelled) {
+        return;
+      }
+      int firstCol = index * TILE_WIDTH;
+      int width = Math.min(TILE_WIDTH, pyramid.getColumnCount(level) - firstCol);
+      int height = pyramid.getHeight();
+      final Tile t = new Tile(firstCol, width, height, gen, level);
+      if (!rasterize(gen, t, firstCol, firstCol + width, 0, height) || cancelled) {
+        logger.finest("Abandoned stale tile " + index);
+        return;
+      }
+      SwingUtilities.invokeLater(new Runnable() {
+        @Override
+        public void run() {
+          publish(TileRequest.this, t);
+        }
+      });
+    }
+  }
+}
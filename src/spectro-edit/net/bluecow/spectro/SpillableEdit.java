@@ -0,0 +1,54 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.io.IOException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An undoable edit that holds a significant amount of data and can move that data out of the heap
+ * into a {@link SnapshotSpillFile}. The {@link UndoManager} uses this to keep its history within a
+ * memory budget.
+ */
+public interface SpillableEdit extends UndoableEdit {
+
+  /**
+   * Returns the approximate number of bytes of heap this edit holds on to.
+   */
+  long getMemoryUsage();
+
+  /**
+   * Returns the number of bytes of this edit's data that are stored in spill files.
+   */
+  long getSpilledSize();
+
+  /**
+   * Moves as much of this edit's data as possible into the given file. The edit must still be able
+   * to undo and redo afterwards, reading its data back from the file as needed.
+   *
+   * @throws IOException If writing to the file fails. The edit must still be usable in that case.
+   */
+  void spill(SnapshotSpillFile file) throws IOException;
+
+  /**
+   * Copies whatever data this edit has spilled into the given file, and reads it from there from
+   * now on. This lets the undo manager leave the space of discarded edits behind by moving the
+   * live data to a fresh file. Edits with nothing spilled do nothing.
+   *
+   * @throws IOException If reading or writing fails. The edit must still read its data from the
+   *         file it was spilled to in that case.
+   */
+  void moveSpilledData(SnapshotSpillFile file) throws IOException;
+}
@@ -0,0 +1,422 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+
+/**
+ * An undoable edit for freehand changes such as paintbrush strokes, which touch a thin, irregular
+ * set of cells spread over a potentially large bounding box. Instead of snapshotting rectangles,
+ * it remembers the original value of each cell the first time the stroke touches it, in a
+ * primitive open-addressing hash map keyed by (frame, frequency index). When the stroke is
+ * finished, the new values of the same cells are captured and everything is packed into sorted
+ * arrays, so the edit costs memory in proportion to the painted area only.
+ * <p>
+ * Usage: create the edit when the stroke starts, call {@link #touch(int, int)} (or
+ * {@link #touch(Rectangle)}) for every cell <i>before</i> modifying it, then call
+ * {@link #finish()} when the stroke ends and post the edit with {@link Clip#postEdit}. Values are
+ * stored exactly, so undo and redo put back precisely the data that was there.
+ * <p>
+ * A finished stroke costs about 16 bytes per touched cell: the key and the old value. The new
+ * values are compressed by {@link SnapshotCodec} relative to the old ones; a brush that sets cells
+ * to zero or scales them leaves new values that take a few bits each.
+ */
+public class StrokeEdit extends AbstractUndoableEdit implements SpillableEdit {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger logger = Logger.getLogger(StrokeEdit.class.getName());
+
+  /**
+   * Marks an unused slot in the hash table. Real keys are never negative.
+   */
+  private static final long EMPTY = -1L;
+
+  private final Clip clip;
+
+  private final String presentationName;
+
+  /**
+   * The hash table of touched cells while the stroke is in progress; the sorted cell keys after
+   * {@link #finish()}. A key is the frame number in the upper 32 bits and the frequency index in the
+   * lower 32.
+   */
+  private long[] keys;
+
+  /**
+   * The original values of the cells, parallel to {@link #keys}.
+   */
+  private double[] oldValues;
+
+  /**
+   * The values after the stroke, parallel to {@link #keys} and encoded by
+   * {@link SnapshotCodec#encodeDelta(double[], double[])} relative to {@link #oldValues}. Null
+   * until {@link #finish()}.
+   */
+  private int[] newEncoded;
+
+  /**
+   * The length of {@link #newEncoded}, which is still known once it has been spilled.
+   */
+  private int newLength;
+
+  /**
+   * The number of touched cells.
+   */
+  private int size;
+
+  /**
+   * True once {@link #finish()} has been called.
+   */
+  private boolean finished;
+
+  /**
+   * The bounding box of all touched cells, or null if none have been touched.
+   */
+  private Rectangle bounds;
+
+  /**
+   * Where the arrays were spilled, or null if they're on the heap.
+   */
+  private SnapshotSpillFile spillFile;
+  private long spillOffset;
+
+  public StrokeEdit(Clip clip, String presentationName) {
+    this.clip = clip;
+    this.presentationName = presentationName;
+    keys = new long[64];
+    Arrays.fill(keys, EMPTY);
+    oldValues = new double[64];
+  }
+
+  @Override
+  public String getPresentationName() {
+    return presentationName;
+  }
+
+  /**
+   * Records the current value of the given cell, unless it has already been recorded. Cells
+   * outside the clip are ignored.
+   */
+  public void touch(int frame, int freqIndex) {
+    if (finished) {
+      throw new IllegalStateException("Stroke is already finished");
+    }
+    if (frame < 0 || frame >= clip.getFrameCount() || freqIndex < 0
+        || freqIndex >= clip.getFrameFreqSamples()) {
+      return;
+    }
+    long key = ((long) frame << 32) | freqIndex;
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (keys[slot] != EMPTY) {
+      if (keys[slot] == key) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    oldValues[slot] = clip.getFrame(frame).getReal(freqIndex);
+    size++;
+    if (bounds == null) {
+      bounds = new Rectangle(frame, freqIndex, 1, 1);
+    } else {
+      bounds.add(new Rectangle(frame, freqIndex, 1, 1));
+    }
+    if (size * 2 > keys.length) {
+      grow();
+    }
+  }
+
+  /**
+   * Records the current values of all the cells in the given region that haven't been recorded yet.
+   */
+  public void touch(Rectangle region) {
+    for (int frame = region.x; frame < region.x + region.width; frame++) {
+      for (int freq = region.y; freq < region.y + region.height; freq++) {
+        touch(frame, freq);
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Doubles the size of the hash table.
+   */
+  private void grow() {
+    long[] oldKeys = keys;
+    double[] oldVals = oldValues;
+    keys = new long[oldKeys.length * 2];
+    Arrays.fill(keys, EMPTY);
+    oldValues = new double[keys.length];
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (keys[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        oldValues[slot] = oldVals[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the bounding box of the cells touched so far, or null if there are none.
+   */
+  public Rectangle getBounds() {
+    return bounds == null ? null : new Rectangle(bounds);
+  }
+
+  /**
+   * Returns true if the stroke hasn't touched any cells.
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Captures the new values of all touched cells and packs the edit into its compact form. No more
+   * cells can be touched after this.
+   */
+  public void finish() {
+    if (finished) {
+      throw new IllegalStateException("Stroke is already finished");
+    }
+
+    // pack the table into arrays sorted by key, which is frame-major order
+    long[] packed = new long[size];
+    int n = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != EMPTY) {
+        packed[n++] = keys[i];
+      }
+    }
+    Arrays.sort(packed);
+    double[] packedOld = new double[size];
+    int mask = keys.length - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = hash(packed[i]) & mask;
+      while (keys[slot] != packed[i]) {
+        slot = (slot + 1) & mask;
+      }
+      packedOld[i] = oldValues[slot];
+    }
+    keys = packed;
+    oldValues = packedOld;
+
+    double[] newValues = new double[size];
+    finished = true;
+    if (size > 0) {
+      FrameLocks locks = clip.getFrameLocks();
+      locks.lockRead(bounds.x, bounds.width);
+      try {
+        for (int i = 0; i < size; i++) {
+          newValues[i] = clip.getFrame(frameOf(keys[i])).getReal(freqOf(keys[i]));
+        }
+      } finally {
+        locks.unlockRead(bounds.x, bounds.width);
+      }
+    }
+    newEncoded = SnapshotCodec.encodeDelta(newValues, oldValues);
+    newLength = newEncoded.length;
+    logger.fine(String.format("Finished stroke: %d cells in %d bytes", size, getMemoryUsage()));
+  }
+
+  private static int frameOf(long key) {
+    return (int) (key >>> 32);
+  }
+
+  private static int freqOf(long key) {
+    return (int) key;
+  }
+
+  @Override
+  public void undo() throws CannotUndoException {
+    if (!finished) {
+      throw new CannotUndoException();
+    }
+    long[] k;
+    double[] values;
+    try {
+      k = loadKeys();
+      values = loadValues(true);
+    } catch (IOException ex) {
+      logger.log(Level.SEVERE, "Couldn't reload undo data", ex);
+      throw new CannotUndoException();
+    }
+    super.undo();
+    apply(k, values);
+  }
+
+  @Override
+  public void redo() throws CannotRedoException {
+    long[] k;
+    double[] values;
+    try {
+      k = loadKeys();
+      values = loadValues(false);
+    } catch (IOException ex) {
+      logger.log(Level.SEVERE, "Couldn't reload redo data", ex);
+      throw new CannotRedoException();
+    }
+    super.redo();
+    apply(k, values);
+  }
+
+  /**
+   * Returns the sorted cell keys, reading them back from the spill file if necessary. The spilled
+   * layout is: keys as (high, low) int pairs, then the raw bits of the old values, also as (high,
+   * low) pairs, then the encoded new values.
+   */
+  private long[] loadKeys() throws IOException {
+    if (spillFile == null) {
+      return keys;
+    }
+    return joinHalves(spillFile.read(spillOffset, 2 * size));
+  }
+
+  /**
+   * Returns the old or new cell values, reading them back from the spill file if necessary.
+   */
+  private double[] loadValues(boolean old) throws IOException {
+    double[] oldVals = oldValues;
+    int[] encoded = newEncoded;
+    if (spillFile != null) {
+      long[] bits = joinHalves(spillFile.read(spillOffset + 8L * size, 2 * size));
+      oldVals = new double[size];
+      for (int i = 0; i < size; i++) {
+        oldVals[i] = Double.longBitsToDouble(bits[i]);
+      }
+      if (!old) {
+        encoded = spillFile.read(spillOffset + 16L * size, newLength);
+      }
+    }
+    if (old) {
+      return oldVals;
+    }
+    double[] values = new double[size];
+    SnapshotCodec.decodeDelta(encoded, oldVals, values);
+    return values;
+  }
+
+  private static void splitHalves(long value, int[] dest, int pos) {
+    dest[pos] = (int) (value >>> 32);
+    dest[pos + 1] = (int) value;
+  }
+
+  private static long[] joinHalves(int[] halves) {
+    long[] values = new long[halves.length / 2];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = ((long) halves[2 * i] << 32) | (halves[2 * i + 1] & 0xffffffffL);
+    }
+    return values;
+  }
+
+  /**
+   * Writes the given values into the given cells, then notifies the clip's listeners one lock
+   * stripe at a time, so a long stroke doesn't repaint its whole bounding box.
+   */
+  private void apply(long[] k, double[] values) {
+    if (size == 0) {
+      return;
+    }
+    Map<Integer, Rectangle> changed = new HashMap<Integer, Rectangle>();
+    FrameLocks locks = clip.getFrameLocks();
+    locks.lockWrite(bounds.x, bounds.width);
+    try {
+      for (int i = 0; i < size; i++) {
+        int frame = frameOf(k[i]);
+        int freq = freqOf(k[i]);
+        clip.getFrame(frame).setReal(freq, values[i]);
+        Integer stripe = frame / FrameLocks.STRIPE_FRAMES;
+        Rectangle r = changed.get(stripe);
+        if (r == null) {
+          changed.put(stripe, new Rectangle(frame, freq, 1, 1));
+        } else {
+          r.add(new Rectangle(frame, freq, 1, 1));
+        }
+      }
+    } finally {
+      locks.unlockWrite(bounds.x, bounds.width);
+    }
+    for (Rectangle r : changed.values()) {
+      clip.regionChanged(r);
+    }
+  }
+
+  @Override
+  public long getMemoryUsage() {
+    if (spillFile != null) {
+      return 0L;
+    }
+    return 8L * keys.length + 8L * oldValues.length + (newEncoded == null ? 0 : 4L * newLength);
+  }
+
+  @Override
+  public long getSpilledSize() {
+    return spillFile == null ? 0L : 16L * size + 4L * newLength;
+  }
+
+  /**
+   * Moves the cell keys and values into the given file. Strokes that haven't been finished stay on
+   * the heap.
+   */
+  @Override
+  public void spill(SnapshotSpillFile file) throws IOException {
+    if (spillFile != null || !finished) {
+      return;
+    }
+    int[] all = new int[size * 4 + newLength];
+    for (int i = 0; i < size; i++) {
+      splitHalves(keys[i], all, 2 * i);
+      splitHalves(Double.doubleToRawLongBits(oldValues[i]), all, 2 * (size + i));
+    }
+    System.arraycopy(newEncoded, 0, all, size * 4, newLength);
+    spillOffset = file.write(all);
+    spillFile = file;
+    keys = null;
+    oldValues = null;
+    newEncoded = null;
+  }
+
+  @Override
+  public void moveSpilledData(SnapshotSpillFile file) throws IOException {
+    if (spillFile == null) {
+      return;
+    }
+    spillOffset = file.write(spillFile.read(spillOffset, size * 4 + newLength));
+    spillFile = file;
+  }
+
+  @Override
+  public String toString() {
+    return "Stroke Edit (" + size + " cells) @ " + bounds;
+  }
+}
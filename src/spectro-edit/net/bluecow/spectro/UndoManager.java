@@ -14,8 +14,10 @@
  */
 package net.bluecow.spectro;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -24,6 +26,14 @@ import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEdit;
 
+/**
+ * The undo manager for a Spectro-Edit session. Besides the usual limit on the number of edits, it
+ * keeps the undo history within a heap budget: edits that implement {@link SpillableEdit} report
+ * how much memory they hold, and once the total exceeds the budget the oldest ones are spilled to a
+ * temporary file (see {@link SnapshotSpillFile}) until the history fits again. The most recent
+ * edit always stays on the heap. If the spilled data outgrows its own budget, the oldest edits are
+ * discarded.
+ */
 public class UndoManager extends javax.swing.undo.UndoManager {
 
   /**
@@ -32,9 +42,101 @@ public class UndoManager extends javax.swing.undo.UndoManager {
   private static final long serialVersionUID = 571305050790134000L;
   private static final Logger logger = Logger.getLogger(UndoManager.class.getName());
 
+  /**
+   * The default heap budget for undo data.
+   */
+  public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+  /**
+   * The default budget for undo data spilled to disk.
+   */
+  public static final long DEFAULT_DISK_BUDGET = 1024L * 1024 * 1024;
+
+  /**
+   * The spill file is compacted once the space taken by data no edit needs any more exceeds both
+   * this and the amount of data that's still needed.
+   */
+  private static final long COMPACT_THRESHOLD = 16L * 1024 * 1024;
+
+  private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+  private long diskBudget = DEFAULT_DISK_BUDGET;
+
+  /**
+   * The file that edits are spilled into, or null if nothing is spilled right now.
+   */
+  private SnapshotSpillFile spillFile;
+
+  /**
+   * Earlier spill files that some edits still read from, because compacting them into
+   * {@link #spillFile} failed part way.
+   */
+  private final List<SnapshotSpillFile> retiredSpillFiles = new ArrayList<SnapshotSpillFile>();
+
+  /**
+   * The heap used by the edits in the history as of the last time the budget was checked.
+   */
+  private volatile long memoryUsage;
+
+  /**
+   * The spilled data of the edits in the history as of the last time the budget was checked.
+   */
+  private volatile long diskUsage;
+
   public UndoManager() {
     super();
-    setLimit(1000);
+    // memory is kept in check by the budgets; this just stops the bookkeeping getting silly
+    setLimit(10000);
+  }
+
+  /**
+   * Returns the number of bytes of heap the undo history may use before edits are spilled to disk.
+   */
+  public long getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Sets the number of bytes of heap the undo history may use before edits are spilled to disk.
+   */
+  public synchronized void setMemoryBudget(long memoryBudget) {
+    this.memoryBudget = memoryBudget;
+    enforceBudgets();
+    fireStateChanged();
+  }
+
+  /**
+   * Returns the number of bytes of spilled undo data that may be kept before the oldest edits are
+   * discarded.
+   */
+  public long getDiskBudget() {
+    return diskBudget;
+  }
+
+  /**
+   * Sets the number of bytes of spilled undo data that may be kept before the oldest edits are
+   * discarded.
+   */
+  public synchronized void setDiskBudget(long diskBudget) {
+    this.diskBudget = diskBudget;
+    enforceBudgets();
+    fireStateChanged();
+  }
+
+  /**
+   * Returns the approximate number of bytes of heap held by the undo history. Safe to call from any
+   * thread.
+   */
+  public long getMemoryUsage() {
+    return memoryUsage;
+  }
+
+  /**
+   * Returns the number of bytes of undo data that have been spilled to disk and are still part of
+   * the undo history. Safe to call from any thread.
+   */
+  public long getDiskUsage() {
+    return diskUsage;
   }
 
   @Override
@@ -59,10 +161,132 @@ public class UndoManager extends javax.swing.undo.UndoManager {
   @Override
   public synchronized boolean addEdit(UndoableEdit anEdit) {
     boolean added = super.addEdit(anEdit);
+    enforceBudgets();
     fireStateChanged();
     return added;
   }
 
+  @Override
+  public synchronized void discardAllEdits() {
+    super.discardAllEdits();
+    enforceBudgets();
+    fireStateChanged();
+  }
+
+  /**
+   * Spills the oldest edits until the history fits in the memory budget, then discards the oldest
+   * edits until the spilled data fits in the disk budget.
+   */
+  private synchronized void enforceBudgets() {
+    long heap = 0;
+    long disk = 0;
+    for (UndoableEdit e : edits) {
+      if (e instanceof SpillableEdit) {
+        heap += ((SpillableEdit) e).getMemoryUsage();
+        disk += ((SpillableEdit) e).getSpilledSize();
+      }
+    }
+
+    for (int i = 0; heap > memoryBudget && i < edits.size() - 1; i++) {
+      UndoableEdit e = edits.get(i);
+      if (!(e instanceof SpillableEdit)) {
+        continue;
+      }
+      SpillableEdit se = (SpillableEdit) e;
+      long heapBefore = se.getMemoryUsage();
+      long diskBefore = se.getSpilledSize();
+      if (heapBefore == 0) {
+        continue;
+      }
+      try {
+        if (spillFile == null) {
+          spillFile = new SnapshotSpillFile();
+        }
+        se.spill(spillFile);
+      } catch (IOException ex) {
+        logger.log(Level.WARNING, "Couldn't spill undo data; keeping it in memory", ex);
+        break;
+      }
+      heap += se.getMemoryUsage() - heapBefore;
+      disk += se.getSpilledSize() - diskBefore;
+    }
+
+    // discard from the oldest end, but never the edit that would be undone next
+    int nextUndo = edits.indexOf(editToBeUndone());
+    int discard = 0;
+    while (disk > diskBudget && discard < nextUndo) {
+      UndoableEdit e = edits.get(discard++);
+      if (e instanceof SpillableEdit) {
+        heap -= ((SpillableEdit) e).getMemoryUsage();
+        disk -= ((SpillableEdit) e).getSpilledSize();
+      }
+    }
+    if (discard > 0) {
+      logger.fine("Discarding " + discard + " edits to stay within the disk budget");
+      trimEdits(0, discard - 1);
+    }
+
+    // nothing in the spill file is needed any more, so start afresh next time
+    if (disk == 0 && spillFile != null) {
+      closeSpillFiles();
+    } else if (spillFile != null) {
+      long length = spillFile.getLength();
+      for (SnapshotSpillFile f : retiredSpillFiles) {
+        length += f.getLength();
+      }
+      long dead = length - disk;
+      if (dead > COMPACT_THRESHOLD && dead > disk) {
+        compactSpillFile();
+      }
+    }
+
+    memoryUsage = heap;
+    diskUsage = disk;
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine(String.format("Undo history: %d edits, %dK on heap, %dK on disk", edits.size(),
+          heap / 1024, disk / 1024));
+    }
+  }
+
+  /**
+   * Moves the spilled data of every edit in the history to a new file and deletes the old one,
+   * which leaves behind the data of edits that have been discarded.
+   */
+  private void compactSpillFile() {
+    SnapshotSpillFile compacted;
+    try {
+      compacted = new SnapshotSpillFile();
+    } catch (IOException ex) {
+      logger.log(Level.WARNING, "Couldn't create a file to compact undo data into", ex);
+      return;
+    }
+    try {
+      for (UndoableEdit e : edits) {
+        if (e instanceof SpillableEdit) {
+          ((SpillableEdit) e).moveSpilledData(compacted);
+        }
+      }
+    } catch (IOException ex) {
+      // the edits that were moved read from the new file, the others still need the old ones
+      logger.log(Level.WARNING, "Couldn't compact the undo spill file", ex);
+      retiredSpillFiles.add(spillFile);
+      spillFile = compacted;
+      return;
+    }
+    logger.fine(String.format("Compacted undo spill file to %dK", compacted.getLength() / 1024));
+    closeSpillFiles();
+    spillFile = compacted;
+  }
+
+  private void closeSpillFiles() {
+    spillFile.close();
+    spillFile = null;
+    for (SnapshotSpillFile f : retiredSpillFiles) {
+      f.close();
+    }
+    retiredSpillFiles.clear();
+  }
+
   private final List<ChangeListener> changeListeners = new ArrayList<ChangeListener>();
 
   public void addChangeListener(ChangeListener l) {
@@ -18,8 +18,9 @@ import javax.swing.JComponent;
 
 /**
  * ValueColorizers provide a means for showing a single value as a 24-bit RGB colour. The interface
- * only defines the single method that converts a single value; implementations will provide
- * specific configuration parameters particular to their own approach.
+ * defines a method that converts a single value and a bulk version of it for colouring a whole run
+ * of values (typically one frame) at once; implementations will provide specific configuration
+ * parameters particular to their own approach.
  */
 public interface ValueColorizer {
 
@@ -30,6 +31,23 @@ public interface ValueColorizer {
    */
   public int colorFor(double val);
 
+  /**
+   * Colours a run of values in one call. This gives the same result as calling
+   * {@link #colorFor(double)} for each value, but lets the implementation hoist its setup out of
+   * the loop. Image renderers should prefer this method.
+   * 
+   * @param in The values to colour.
+   * @param inOffset The index of the first value in <code>in</code> to colour.
+   * @param out The pixel buffer to store the colours in.
+   * @param outOffset The index in <code>out</code> where the colour for
+   *        <code>in[inOffset]</code> goes.
+   * @param outStride The distance in <code>out</code> between the colours of consecutive values. Use
+   *        1 to fill a row, or the scanline width of the image to fill a column.
+   * @param length The number of values to colour.
+   */
+  public void colorFor(double[] in, int inOffset, int[] out, int outOffset, int outStride,
+      int length);
+
   public JComponent getSettingsPanel();
 
 }
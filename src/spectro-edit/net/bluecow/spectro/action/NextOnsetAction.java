@@ -0,0 +1,43 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.action;
+
+import java.awt.event.ActionEvent;
+import javax.swing.AbstractAction;
+import net.bluecow.spectro.ClipPanel;
+
+/**
+ * Moves a clip panel's playback position to the next note onset.
+ */
+public class NextOnsetAction extends AbstractAction {
+
+  /**
+   * 
+   */
+  private static final long serialVersionUID = 4820475915370212684L;
+
+  private final ClipPanel clipPanel;
+
+  public NextOnsetAction(ClipPanel clipPanel) {
+    super("Next Onset");
+    this.clipPanel = clipPanel;
+  }
+
+  @Override
+  public void actionPerformed(ActionEvent e) {
+    clipPanel.showNextOnset();
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.action;
+
+import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import net.bluecow.spectro.ClipPanel;
+
+/**
+ * Shows or hides the pitch track over a clip panel. Meant for a toggle button or check box menu
+ * item, which it keeps in step with the panel.
+ */
+public class PitchOverlayAction extends AbstractAction {
+
+  /**
+   * 
+   */
+  private static final long serialVersionUID = -6620358151853398114L;
+
+  private final ClipPanel clipPanel;
+
+  private PropertyChangeListener overlayChangeHandler = new PropertyChangeListener() {
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+      putValue(Action.SELECTED_KEY, clipPanel.isPitchOverlayVisible());
+    }
+  };
+
+  public PitchOverlayAction(ClipPanel clipPanel) {
+    super("Show Pitch");
+    this.clipPanel = clipPanel;
+    putValue(Action.SELECTED_KEY, clipPanel.isPitchOverlayVisible());
+    clipPanel.addPropertyChangeListener("pitchOverlayVisible", overlayChangeHandler);
+  }
+
+  @Override
+  public void actionPerformed(ActionEvent e) {
+    clipPanel.setPitchOverlayVisible(!clipPanel.isPitchOverlayVisible());
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.action;
+
+import java.awt.event.ActionEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import javax.swing.AbstractAction;
+import net.bluecow.spectro.ClipPanel;
+
+/**
+ * Zooms a clip panel in or out by one level (a factor of two in time).
+ */
+public class ZoomAction extends AbstractAction {
+
+  /**
+   * 
+   */
+  private static final long serialVersionUID = 2985172407441305853L;
+
+  public static ZoomAction createZoomInInstance(ClipPanel clipPanel) {
+    return new ZoomAction(clipPanel, true);
+  }
+
+  public static ZoomAction createZoomOutInstance(ClipPanel clipPanel) {
+    return new ZoomAction(clipPanel, false);
+  }
+
+  private final boolean zoomIn;
+  private final ClipPanel clipPanel;
+
+  private PropertyChangeListener zoomChangeHandler = new PropertyChangeListener() {
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+      updateEnabledness();
+    }
+  };
+
+  public ZoomAction(ClipPanel clipPanel, boolean zoomIn) {
+    super(zoomIn ? "Zoom In" : "Zoom Out");
+    this.clipPanel = clipPanel;
+    this.zoomIn = zoomIn;
+    clipPanel.addPropertyChangeListener("zoomLevel", zoomChangeHandler);
+    updateEnabledness();
+  }
+
+  @Override
+  public void actionPerformed(ActionEvent e) {
+    int level = clipPanel.getZoomLevel() + (zoomIn ? -1 : 1);
+    if (level >= 0 && level <= clipPanel.getMaxZoomLevel()) {
+      clipPanel.setZoomLevel(level);
+    }
+  }
+
+  /**
+   * Enables or disables this action based on whether the clip panel can zoom any further in this
+   * action's direction.
+   */
+  private void updateEnabledness() {
+    if (zoomIn) {
+      setEnabled(clipPanel.getZoomLevel() > 0);
+    } else {
+      setEnabled(clipPanel.getZoomLevel() < clipPanel.getMaxZoomLevel());
+    }
+  }
+
+}
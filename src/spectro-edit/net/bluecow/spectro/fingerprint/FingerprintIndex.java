@@ -0,0 +1,308 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.fingerprint;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import net.bluecow.spectro.Clip;
+
+/**
+ * An inverted index from fingerprint hashes to the places in a library of recordings where they
+ * occur, stored in a file and memory-mapped rather than read onto the heap, so opening even a huge
+ * index is immediate and only the parts a search touches are ever paged in.
+ * <p>
+ * Every entry of the index is a single long: the hash in the top {@link Fingerprinter#HASH_BITS}
+ * bits (below the sign bit), then the number of the recording, then the frame of the pair's
+ * anchor. The entries are sorted, so all the places a hash occurs are next to each other and are
+ * found with a binary search.
+ * <p>
+ * A search extracts the snippet's fingerprint, looks up each of its hashes, and counts, for every
+ * recording, how many hashes line up at each offset between the recording and the snippet. A real
+ * match shows up as many hashes at the same offset; chance collisions are spread over all offsets.
+ * <p>
+ * The file layout is a 64 byte header, the entries, then the paths of the recordings. Indexes are
+ * built by {@link FingerprintIndexBuilder}. This class is thread safe.
+ */
+public class FingerprintIndex implements Closeable {
+
+  static final int MAGIC = 0x53504649; // "SPFI"
+
+  static final int VERSION = 1;
+
+  static final int HEADER_BYTES = 64;
+
+  static final int FRAME_BITS = 22;
+
+  static final int FILE_BITS = 63 - Fingerprinter.HASH_BITS - FRAME_BITS;
+
+  /**
+   * The largest number of recordings an index can hold.
+   */
+  public static final int MAX_FILES = 1 << FILE_BITS;
+
+  /**
+   * The largest number of frames of a recording that can be indexed.
+   */
+  public static final int MAX_FRAMES = 1 << FRAME_BITS;
+
+  /**
+   * The number of entries in each mapped segment of the file. A single mapping can't be bigger
+   * than 2GB.
+   */
+  private static final int SEGMENT_SHIFT = 27;
+
+  /**
+   * Matches with fewer lined-up hashes than this are not reported.
+   */
+  public static final int MIN_SCORE = 5;
+
+  private final RandomAccessFile file;
+
+  private final int frameSize;
+
+  private final int overlap;
+
+  private final double samplingRate;
+
+  private final long entryCount;
+
+  private final LongBuffer[] segments;
+
+  private final String[] paths;
+
+  /**
+   * Opens the given index file.
+   *
+   * @throws IOException If the file can't be read or isn't a fingerprint index.
+   */
+  public FingerprintIndex(File indexFile) throws IOException {
+    file = new RandomAccessFile(indexFile, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException(indexFile + " is not a fingerprint index");
+      }
+      frameSize = header.getInt();
+      overlap = header.getInt();
+      samplingRate = header.getDouble();
+      int fileCount = header.getInt();
+      entryCount = header.getLong();
+      long pathsOffset = header.getLong();
+
+      int segmentCount = (int) ((entryCount + (1L << SEGMENT_SHIFT) - 1) >> SEGMENT_SHIFT);
+      segments = new LongBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long first = (long) i << SEGMENT_SHIFT;
+        long count = Math.min(1L << SEGMENT_SHIFT, entryCount - first);
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * 8,
+            count * 8).asLongBuffer();
+      }
+
+      channel.position(pathsOffset);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Channels.newInputStream(channel)));
+      paths = new String[fileCount];
+      for (int i = 0; i < fileCount; i++) {
+        paths[i] = in.readUTF();
+      }
+    } catch (IOException ex) {
+      file.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Packs an entry of the index.
+   */
+  static long entry(int hash, int fileNumber, int frame) {
+    return ((long) hash << (FILE_BITS + FRAME_BITS)) | ((long) fileNumber << FRAME_BITS) | frame;
+  }
+
+  /**
+   * Returns the number of recordings in the index.
+   */
+  public int getFileCount() {
+    return paths.length;
+  }
+
+  /**
+   * Returns the path of the given recording, as it was given to the builder.
+   */
+  public String getFile(int fileNumber) {
+    return paths[fileNumber];
+  }
+
+  /**
+   * Returns the number of hashes in the index.
+   */
+  public long getEntryCount() {
+    return entryCount;
+  }
+
+  private long get(long i) {
+    return segments[(int) (i >> SEGMENT_SHIFT)].get((int) (i & ((1 << SEGMENT_SHIFT) - 1)));
+  }
+
+  /**
+   * Returns the index of the first entry that is at least the given value.
+   */
+  private long lowerBound(long value) {
+    long lo = 0;
+    long hi = entryCount;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (get(mid) < value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Finds the recordings the given snippet occurs in.
+   *
+   * @param snippet The clip to look for. Must have the same frame size and overlap as the
+   *        recordings were indexed with.
+   * @param maxResults The most matches to return.
+   * @return The best match in each recording that has one, best first.
+   */
+  public List<FingerprintMatch> search(Clip snippet, int maxResults) {
+    if (snippet.getFrameFreqSamples() != frameSize || snippet.getOverlap() != overlap) {
+      throw new IllegalArgumentException("Snippet has frame size " + snippet.getFrameFreqSamples()
+          + " and overlap " + snippet.getOverlap() + ", but the index was built with "
+          + frameSize + " and " + overlap);
+    }
+    long[] pairs = Fingerprinter.extract(snippet);
+    VoteCounter votes = new VoteCounter(pairs.length * 4);
+    long shift = FILE_BITS + FRAME_BITS;
+    for (long pair : pairs) {
+      long hash = pair >>> 32;
+      int snippetFrame = (int) pair;
+      long end = (hash + 1) << shift;
+      for (long i = lowerBound(hash << shift); i < entryCount; i++) {
+        long e = get(i);
+        if (e >= end) {
+          break;
+        }
+        int fileNumber = (int) (e >>> FRAME_BITS) & (MAX_FILES - 1);
+        int frame = (int) e & (MAX_FRAMES - 1);
+        votes.add(((long) fileNumber << 32) | (frame - snippetFrame + MAX_FRAMES));
+      }
+    }
+
+    // the best offset in each recording
+    int[] bestScore = new int[paths.length];
+    int[] bestFrame = new int[paths.length];
+    for (int i = 0; i < votes.keys.length; i++) {
+      if (votes.counts[i] > 0) {
+        int fileNumber = (int) (votes.keys[i] >>> 32);
+        if (votes.counts[i] > bestScore[fileNumber]) {
+          bestScore[fileNumber] = votes.counts[i];
+          bestFrame[fileNumber] = (int) votes.keys[i] - MAX_FRAMES;
+        }
+      }
+    }
+    List<FingerprintMatch> matches = new ArrayList<FingerprintMatch>();
+    double secondsPerFrame = frameSize / (double) overlap / samplingRate;
+    for (int i = 0; i < paths.length; i++) {
+      if (bestScore[i] >= MIN_SCORE) {
+        matches.add(new FingerprintMatch(paths[i], bestFrame[i], bestFrame[i] * secondsPerFrame,
+            bestScore[i]));
+      }
+    }
+    Collections.sort(matches, new Comparator<FingerprintMatch>() {
+      @Override
+      public int compare(FingerprintMatch a, FingerprintMatch b) {
+        return b.getScore() - a.getScore();
+      }
+    });
+    return matches.subList(0, Math.min(maxResults, matches.size()));
+  }
+
+  /**
+   * Closes the file. The mapped entries stay valid until they're garbage collected, but this index
+   * must not be used afterwards.
+   */
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * Counts votes for (recording, offset) pairs, packed into longs. An open addressing hash table,
+   * so counting doesn't create an object per vote.
+   */
+  private static class VoteCounter {
+    long[] keys;
+    int[] counts;
+    private int size;
+
+    VoteCounter(int expected) {
+      int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+      keys = new long[capacity];
+      counts = new int[capacity];
+    }
+
+    void add(long key) {
+      int mask = keys.length - 1;
+      int i = (int) (key ^ (key >>> 29)) * 0x9E3779B9 & mask;
+      while (counts[i] != 0 && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      if (counts[i] == 0) {
+        keys[i] = key;
+        if (++size * 2 > keys.length) {
+          counts[i] = 1;
+          grow();
+          return;
+        }
+      }
+      counts[i]++;
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldCounts = counts;
+      keys = new long[oldKeys.length * 2];
+      counts = new int[oldKeys.length * 2];
+      int mask = keys.length - 1;
+      for (int j = 0; j < oldKeys.length; j++) {
+        if (oldCounts[j] != 0) {
+          int i = (int) (oldKeys[j] ^ (oldKeys[j] >>> 29)) * 0x9E3779B9 & mask;
+          while (counts[i] != 0) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          counts[i] = oldCounts[j];
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.fingerprint;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.Parallel;
+
+/**
+ * Builds a {@link FingerprintIndex} from a list of recordings. The recordings are read and
+ * fingerprinted on all processors at once, one recording per task; recordings that can't be read
+ * are logged and left out. The entries are then sorted (in parallel too) and written to the index
+ * file.
+ * <p>
+ * Building needs 8 bytes of heap per indexed peak pair, plus one decoded recording per processor;
+ * searching the finished index needs almost none.
+ */
+public class FingerprintIndexBuilder {
+
+  private static final Logger logger = Logger.getLogger(FingerprintIndexBuilder.class.getName());
+
+  /**
+   * The most entries an index can have: they are sorted in one array, and no array can be bigger
+   * than this.
+   */
+  private static final int MAX_ENTRIES = Integer.MAX_VALUE - 8;
+
+  private final List<File> files = new ArrayList<File>();
+
+  /**
+   * Adds a recording to the index. Currently, single-channel WAV and AIFF are supported.
+   */
+  public void addFile(File file) {
+    if (files.size() == FingerprintIndex.MAX_FILES) {
+      throw new IllegalStateException(
+          "An index can't hold more than " + FingerprintIndex.MAX_FILES + " recordings");
+    }
+    files.add(file);
+  }
+
+  /**
+   * Fingerprints all the recordings and writes the index to the given file, replacing it if it
+   * exists.
+   *
+   * @return The number of entries in the index.
+   * @throws IOException If the index file can't be written, or the recordings have more
+   *           fingerprints than one index can hold. The file is left alone in the second case.
+   */
+  public long build(File indexFile) throws IOException {
+    long start = System.nanoTime();
+    final long[][] runs = new long[files.size()][];
+    final int[] format = new int[3];
+    final double[] samplingRate = new double[1];
+    Parallel.forRange(0, files.size(), 1, new Parallel.RangeTask() {
+      @Override
+      public void run(int first, int end) {
+        for (int i = first; i < end; i++) {
+          runs[i] = fingerprint(i);
+        }
+      }
+
+      private long[] fingerprint(int fileNumber) {
+        File f = files.get(fileNumber);
+        Clip clip;
+        try {
+          clip = Clip.newInstance(f);
+        } catch (IOException ex) {
+          logger.log(Level.WARNING, "Couldn't read " + f + "; leaving it out of the index", ex);
+          return new long[0];
+        } catch (UnsupportedAudioFileException ex) {
+          logger.log(Level.WARNING, "Unsupported audio file " + f + "; leaving it out", ex);
+          return new long[0];
+        }
+        synchronized (format) {
+          if (format[0] == 0) {
+            format[0] = 1;
+            format[1] = clip.getFrameFreqSamples();
+            format[2] = clip.getOverlap();
+            samplingRate[0] = clip.getSamplingRate();
+          }
+        }
+        long[] pairs = Fingerprinter.extract(clip);
+        long[] entries = new long[pairs.length];
+        int n = 0;
+        for (long pair : pairs) {
+          int frame = (int) pair;
+          if (frame < FingerprintIndex.MAX_FRAMES) {
+            entries[n++] = FingerprintIndex.entry((int) (pair >>> 32), fileNumber, frame);
+          }
+        }
+        return n == entries.length ? entries : Arrays.copyOf(entries, n);
+      }
+    });
+
+    long total = 0;
+    for (long[] run : runs) {
+      total += run.length;
+    }
+    if (total > MAX_ENTRIES) {
+      throw new IOException("The recordings have " + total + " fingerprints, but an index can't "
+          + "hold more than " + MAX_ENTRIES + "; split them across several indexes");
+    }
+    long[] entries = new long[(int) total];
+    int pos = 0;
+    for (int i = 0; i < runs.length; i++) {
+      System.arraycopy(runs[i], 0, entries, pos, runs[i].length);
+      pos += runs[i].length;
+      runs[i] = null;
+    }
+    Arrays.parallelSort(entries);
+
+    FileOutputStream out = new FileOutputStream(indexFile);
+    try {
+      FileChannel channel = out.getChannel();
+      long pathsOffset = FingerprintIndex.HEADER_BYTES + total * 8;
+      ByteBuffer header = ByteBuffer.allocate(FingerprintIndex.HEADER_BYTES);
+      header.putInt(FingerprintIndex.MAGIC);
+      header.putInt(FingerprintIndex.VERSION);
+      header.putInt(format[1]);
+      header.putInt(format[2]);
+      header.putDouble(samplingRate[0]);
+      header.putInt(files.size());
+      header.putLong(total);
+      header.putLong(pathsOffset);
+      header.clear();
+      channel.write(header);
+
+      ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+      for (long e : entries) {
+        if (!buf.hasRemaining()) {
+          buf.flip();
+          channel.write(buf);
+          buf.clear();
+        }
+        buf.putLong(e);
+      }
+      buf.flip();
+      channel.write(buf);
+
+      DataOutputStream paths = new DataOutputStream(Channels.newOutputStream(channel));
+      for (File f : files) {
+        paths.writeUTF(f.getPath());
+      }
+      paths.flush();
+    } finally {
+      out.close();
+    }
+    logger.info(String.format("Indexed %d recordings (%d entries) in %.0fms", files.size(), total,
+        (System.nanoTime() - start) / 1e6));
+    return total;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.fingerprint;
+
+/**
+ * A place in an indexed recording where a snippet was found.
+ */
+public class FingerprintMatch {
+
+  private final String file;
+
+  private final int frame;
+
+  private final double seconds;
+
+  private final int score;
+
+  FingerprintMatch(String file, int frame, double seconds, int score) {
+    this.file = file;
+    this.frame = frame;
+    this.seconds = seconds;
+    this.score = score;
+  }
+
+  /**
+   * Returns the path of the recording the snippet was found in, as it was given to the
+   * {@link FingerprintIndexBuilder}.
+   */
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the frame of the recording that the snippet's first frame lines up with.
+   */
+  public int getFrame() {
+    return frame;
+  }
+
+  /**
+   * Returns the time in the recording that the start of the snippet lines up with, in seconds.
+   */
+  public double getSeconds() {
+    return seconds;
+  }
+
+  /**
+   * Returns the number of the snippet's peak pairs that were found at this offset. Matches with a
+   * higher score are more certain.
+   */
+  public int getScore() {
+    return score;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s at %.2fs (frame %d), score %d", file, seconds, frame, score);
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.fingerprint;
+
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.FrameLocks;
+
+/**
+ * Extracts the fingerprint of a clip: a list of hashes that survive noise, level changes and
+ * being cut out of a longer recording. First the clip's "constellation" is found: the cells that
+ * are the loudest within {@link #PEAK_FRAMES} frames and {@link #PEAK_BINS} frequency indexes
+ * either side of them, at most {@link #PEAKS_PER_FRAME} per frame. Then each peak (the anchor) is
+ * paired with up to {@link #FAN_OUT} of the peaks that follow it closely in time and frequency,
+ * and each pair is hashed from the two frequency indexes and the number of frames between them.
+ * Because the hash doesn't depend on where the pair is in the clip, the same pairs turn up in a
+ * snippet of a recording and in the whole recording, a fixed number of frames apart.
+ * <p>
+ * Peaks are found in a single pass over the frames, keeping only the frames within reach of the
+ * one being examined, so long clips don't need any more memory than short ones apart from the
+ * fingerprint itself.
+ */
+public class Fingerprinter {
+
+  /**
+   * A peak must be the loudest cell within this many frames either side.
+   */
+  public static final int PEAK_FRAMES = 6;
+
+  /**
+   * A peak must be the loudest cell within this many frequency indexes either side.
+   */
+  public static final int PEAK_BINS = 10;
+
+  /**
+   * The most peaks kept for any one frame; the loudest ones win.
+   */
+  public static final int PEAKS_PER_FRAME = 3;
+
+  /**
+   * Peaks quieter than this are ignored, so silence doesn't produce a fingerprint.
+   */
+  public static final double MIN_MAGNITUDE = 0.05;
+
+  /**
+   * The most pairs made with any one anchor.
+   */
+  public static final int FAN_OUT = 5;
+
+  /**
+   * The most frames between the two peaks of a pair. Must fit in {@link #DT_BITS} bits.
+   */
+  public static final int MAX_PAIR_FRAMES = 63;
+
+  /**
+   * The most frequency indexes between the two peaks of a pair.
+   */
+  public static final int MAX_PAIR_BINS = 128;
+
+  /**
+   * The number of bits used for each frequency index in a hash. Frequencies at or above
+   * 2<sup>FREQ_BITS</sup> are not used.
+   */
+  static final int FREQ_BITS = 10;
+
+  /**
+   * The number of bits used for the time between the peaks in a hash.
+   */
+  static final int DT_BITS = 6;
+
+  /**
+   * The number of bits in a hash.
+   */
+  public static final int HASH_BITS = 2 * FREQ_BITS + DT_BITS;
+
+  private Fingerprinter() {
+    // static utility class
+  }
+
+  /**
+   * Returns the hash of a pair of peaks.
+   */
+  static int hash(int anchorBin, int targetBin, int frames) {
+    return (anchorBin << (FREQ_BITS + DT_BITS)) | (targetBin << DT_BITS) | frames;
+  }
+
+  /**
+   * Extracts the fingerprint of the given clip.
+   *
+   * @return The hashes of the clip's peak pairs, each in the upper 32 bits of an element, with the
+   *         frame number of the pair's anchor in the lower 32 bits, in order of anchor frame.
+   */
+  public static long[] extract(Clip clip) {
+    int frameCount = clip.getFrameCount();
+    int bins = Math.min(clip.getFrameFreqSamples(), 1 << FREQ_BITS);
+    int window = 2 * PEAK_FRAMES + 1;
+
+    // the magnitudes of the frames within reach, and the loudest cell near each of their cells
+    float[][] magnitudes = new float[window][bins];
+    float[][] nearbyMax = new float[window][bins];
+    double[] data = new double[clip.getFrameFreqSamples()];
+    IntList peakFrames = new IntList();
+    IntList peakBins = new IntList();
+    int[] frameBins = new int[PEAKS_PER_FRAME];
+    float[] frameValues = new float[PEAKS_PER_FRAME];
+    FrameLocks locks = clip.getFrameLocks();
+
+    for (int f = 0; f < frameCount + PEAK_FRAMES; f++) {
+      if (f < frameCount) {
+        locks.lockRead(f, 1);
+        try {
+          clip.getFrame(f).getReal(0, data, 0, data.length);
+        } finally {
+          locks.unlockRead(f, 1);
+        }
+        float[] m = magnitudes[f % window];
+        float[] max = nearbyMax[f % window];
+        for (int j = 0; j < bins; j++) {
+          m[j] = (float) Math.abs(data[j]);
+        }
+        for (int j = 0; j < bins; j++) {
+          float best = 0.0f;
+          for (int k = Math.max(0, j - PEAK_BINS); k <= Math.min(bins - 1, j + PEAK_BINS); k++) {
+            best = Math.max(best, m[k]);
+          }
+          max[j] = best;
+        }
+      }
+
+      // the frame PEAK_FRAMES back now has all its neighbours
+      int c = f - PEAK_FRAMES;
+      if (c < 0) {
+        continue;
+      }
+      float[] m = magnitudes[c % window];
+      int found = 0;
+      for (int j = 1; j < bins; j++) {
+        float v = m[j];
+        if (v < MIN_MAGNITUDE || v < nearbyMax[c % window][j]) {
+          continue;
+        }
+        boolean peak = true;
+        for (int g = Math.max(0, c - PEAK_FRAMES); g <= Math.min(frameCount - 1, c + PEAK_FRAMES)
+            && peak; g++) {
+          peak = g == c || nearbyMax[g % window][j] <= v;
+        }
+        if (!peak) {
+          continue;
+        }
+        // keep the loudest few, sorted loudest first
+        int pos = Math.min(found, PEAKS_PER_FRAME - 1);
+        if (found == PEAKS_PER_FRAME && v <= frameValues[pos]) {
+          continue;
+        }
+        while (pos > 0 && frameValues[pos - 1] < v) {
+          frameValues[pos] = frameValues[pos - 1];
+          frameBins[pos] = frameBins[pos - 1];
+          pos--;
+        }
+        frameValues[pos] = v;
+        frameBins[pos] = j;
+        found = Math.min(found + 1, PEAKS_PER_FRAME);
+      }
+      for (int i = 0; i < found; i++) {
+        peakFrames.add(c);
+        peakBins.add(frameBins[i]);
+      }
+    }
+
+    LongList pairs = new LongList();
+    for (int i = 0; i < peakFrames.size(); i++) {
+      int anchorFrame = peakFrames.get(i);
+      int anchorBin = peakBins.get(i);
+      int made = 0;
+      for (int k = i + 1; k < peakFrames.size() && made < FAN_OUT; k++) {
+        int dt = peakFrames.get(k) - anchorFrame;
+        if (dt > MAX_PAIR_FRAMES) {
+          break;
+        }
+        if (dt == 0 || Math.abs(peakBins.get(k) - anchorBin) > MAX_PAIR_BINS) {
+          continue;
+        }
+        int hash = hash(anchorBin, peakBins.get(k), dt);
+        pairs.add(((long) hash << 32) | anchorFrame);
+        made++;
+      }
+    }
+    return pairs.toArray();
+  }
+
+  /**
+   * A growable array of ints.
+   */
+  private static class IntList {
+    private int[] values = new int[256];
+    private int size;
+
+    void add(int v) {
+      if (size == values.length) {
+        int[] bigger = new int[values.length * 2];
+        System.arraycopy(values, 0, bigger, 0, size);
+        values = bigger;
+      }
+      values[size++] = v;
+    }
+
+    int get(int i) {
+      return values[i];
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  /**
+   * A growable array of longs.
+   */
+  private static class LongList {
+    private long[] values = new long[256];
+    private int size;
+
+    void add(long v) {
+      if (size == values.length) {
+        long[] bigger = new long[values.length * 2];
+        System.arraycopy(values, 0, bigger, 0, size);
+        values = bigger;
+      }
+      values[size++] = v;
+    }
+
+    long[] toArray() {
+      long[] result = new long[size];
+      System.arraycopy(values, 0, result, 0, size);
+      return result;
+    }
+  }
+}
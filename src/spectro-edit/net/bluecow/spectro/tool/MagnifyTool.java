@@ -16,6 +16,8 @@ package net.bluecow.spectro.tool;
 
 import java.awt.Color;
 import java.awt.Rectangle;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.Box;
@@ -28,6 +30,7 @@ import javax.swing.JSpinner;
 import javax.swing.SpinnerNumberModel;
 import net.bluecow.spectro.Clip;
 import net.bluecow.spectro.ClipPanel;
+import net.bluecow.spectro.ClipView;
 import net.bluecow.spectro.Util;
 
 /**
@@ -35,6 +38,9 @@ import net.bluecow.spectro.Util;
  * analysis on the underlying audio data. This will eventually be turned into a first-class feature
  * of the app (it will just be a zoom operation), and the zoomed view will be modifiable just like
  * the overall view.
+ * <p>
+ * At the clip's own resolution, the close-up is a {@link ClipView} of the region rather than a
+ * re-analysis of it, so it's made without copying anything and stays in step with the clip.
  * 
  * @author fuerth
  */
@@ -114,10 +120,28 @@ public class MagnifyTool extends AbstractRegionalTool {
   private void showMagDialog() {
     int frameSize = (Integer) frequencyResolutionSpinner.getValue();
     int overlap = (Integer) timeMagnificationSpinner.getValue();
-    Clip magClip = clip.subClip(region.x, region.width, frameSize, overlap);
+    Rectangle frameRegion =
+        clipPanel.toClipCoords(new Rectangle(region)).intersection(clip.getBounds());
+    if (frameRegion.isEmpty()) {
+      return;
+    }
+    final Clip magClip;
+    if (frameSize == clip.getFrameFreqSamples() && overlap == clip.getOverlap()) {
+      magClip = clip.view(frameRegion);
+    } else {
+      magClip = clip.subClip(frameRegion.x, frameRegion.width, frameSize, overlap);
+    }
     ClipPanel magPanel = ClipPanel.newInstance(magClip);
     JDialog d = Util.makeOwnedDialog(clipPanel, "Magnification");
     d.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+    if (magClip instanceof ClipView) {
+      d.addWindowListener(new WindowAdapter() {
+        @Override
+        public void windowClosed(WindowEvent e) {
+          ((ClipView) magClip).dispose();
+        }
+      });
+    }
     d.setContentPane(new JScrollPane(magPanel));
     d.pack();
     d.setLocationRelativeTo(clipPanel);
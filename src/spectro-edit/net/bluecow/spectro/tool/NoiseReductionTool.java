@@ -0,0 +1,156 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.tool;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.Box;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JSlider;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipPanel;
+import net.bluecow.spectro.NoiseProfile;
+import net.bluecow.spectro.SpectralOps;
+import net.bluecow.spectro.SpectroEditSession;
+
+/**
+ * Tool that learns what the background noise sounds like from a selected region containing only
+ * noise, then removes that noise from the whole clip. This is the inverse of what
+ * {@link RegionThresholdTool} does with an upper threshold: it keeps the loud parts and takes out
+ * the background.
+ */
+public class NoiseReductionTool implements Tool {
+
+  /**
+   * The smallest gain noise reduction applies, so a trace of the background is left in.
+   */
+  private static final double FLOOR = 0.05;
+
+  private ClipPanel clipPanel;
+  private Clip clip;
+
+  /**
+   * The profile captured from the clip, or null if none has been captured yet. Kept across
+   * activations, so the profile can be captured once and the reduction tried several times.
+   */
+  private NoiseProfile profile;
+
+  /**
+   * The clip the profile was captured from.
+   */
+  private Clip profileClip;
+
+  private final Box settingsPanel;
+  private final JLabel profileLabel;
+  private final JSlider amountSlider;
+  private final JButton applyButton;
+
+  public NoiseReductionTool() {
+    settingsPanel = Box.createVerticalBox();
+
+    JButton captureButton = new JButton("Capture noise profile");
+    captureButton.setOpaque(false);
+    captureButton.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        captureProfile();
+      }
+    });
+    settingsPanel.add(captureButton);
+
+    profileLabel = new JLabel("Select a region of noise");
+    settingsPanel.add(profileLabel);
+
+    settingsPanel.add(new JLabel("Reduction amount"));
+    amountSlider = new JSlider(0, 300, 150);
+    amountSlider.setOpaque(false);
+    settingsPanel.add(amountSlider);
+
+    applyButton = new JButton("Remove noise from clip");
+    applyButton.setOpaque(false);
+    applyButton.setEnabled(false);
+    applyButton.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        reduceNoise(amountSlider.getValue() / 100.0);
+      }
+    });
+    settingsPanel.add(applyButton);
+
+    settingsPanel.add(Box.createGlue());
+  }
+
+  @Override
+  public String getName() {
+    return "Noise Reduction";
+  }
+
+  @Override
+  public void activate(SpectroEditSession session) {
+    this.clipPanel = session.getClipPanel();
+    clip = clipPanel.getClip();
+    clipPanel.setRegionMode(true);
+    if (profileClip != clip) {
+      profile = null;
+      profileClip = null;
+      profileLabel.setText("Select a region of noise");
+      applyButton.setEnabled(false);
+    }
+  }
+
+  @Override
+  public void deactivate() {
+    clip = null;
+    clipPanel = null;
+  }
+
+  @Override
+  public JComponent getSettingsPanel() {
+    return settingsPanel;
+  }
+
+  /**
+   * Learns the noise profile from the selected region.
+   */
+  private void captureProfile() {
+    Rectangle region = clipPanel.getRegion();
+    if (region == null || region.width == 0 || region.height == 0) {
+      return;
+    }
+    Rectangle frameRegion =
+        clipPanel.toClipCoords(new Rectangle(region)).intersection(clip.getBounds());
+    if (frameRegion.isEmpty()) {
+      return;
+    }
+    profile = NoiseProfile.capture(clip, frameRegion);
+    profileClip = clip;
+    profileLabel.setText("Profile of " + profile.getFrameCount() + " frames");
+    applyButton.setEnabled(true);
+  }
+
+  /**
+   * Removes the captured noise from every frame of the clip, as a single undoable edit.
+   */
+  private void reduceNoise(double amount) {
+    if (profile == null) {
+      return;
+    }
+    SpectralOps.subtractNoise(profile, amount, FLOOR).apply(clip, clip.getBounds());
+  }
+
+}
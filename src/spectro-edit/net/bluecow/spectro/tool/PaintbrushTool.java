@@ -29,10 +29,14 @@ import net.bluecow.spectro.Clip;
 import net.bluecow.spectro.ClipPanel;
 import net.bluecow.spectro.Frame;
 import net.bluecow.spectro.SpectroEditSession;
+import net.bluecow.spectro.StrokeEdit;
 
 /**
  * Tool for painting out a region of the spectral data based on mouse press-and-drag. This was the
  * original tool in Spectro-Edit.
+ * <p>
+ * Each press-drag-release is one {@link StrokeEdit}, which remembers only the cells the brush
+ * actually passed over.
  */
 public class PaintbrushTool implements Tool {
 
@@ -40,6 +44,11 @@ public class PaintbrushTool implements Tool {
   private Clip clip;
   private final PaintbrushMouseHandler mouseHandler = new PaintbrushMouseHandler();
 
+  /**
+   * The stroke in progress, or null if the mouse button isn't down.
+   */
+  private StrokeEdit stroke;
+
   // settings panel stuff
   private final Box settingsPanel;
   private final JSlider brushSlider;
@@ -81,6 +90,7 @@ public class PaintbrushTool implements Tool {
 
   @Override
   public void deactivate() {
+    finishStroke();
     clipPanel.removeMouseListener(mouseHandler);
     clipPanel.removeMouseMotionListener(mouseHandler);
     clip = null;
@@ -91,18 +101,30 @@ public class PaintbrushTool implements Tool {
 
     @Override
     public void mouseDragged(MouseEvent e) {
+      if (stroke == null) {
+        return;
+      }
       Point p = clipPanel.toClipCoords(e.getPoint());
       int radius = brushSlider.getValue();
       Rectangle updateRegion = new Rectangle(p.x - radius, p.y - radius, radius * 2, radius * 2);
+      updateRegion = updateRegion.intersection(clip.getBounds());
+      if (updateRegion.isEmpty()) {
+        return;
+      }
 
-      clip.beginEdit(updateRegion, "Brush stroke");
-      for (int x = p.x - radius; x < p.x + radius; x++) {
-        Frame f = clip.getFrame(x);
-        for (int y = p.y - radius; y < p.y + radius; y++) {
-          f.setReal(y, 0.0);
+      clip.getFrameLocks().lockWrite(updateRegion.x, updateRegion.width);
+      try {
+        stroke.touch(updateRegion);
+        for (int x = updateRegion.x; x < updateRegion.x + updateRegion.width; x++) {
+          Frame f = clip.getFrame(x);
+          for (int y = updateRegion.y; y < updateRegion.y + updateRegion.height; y++) {
+            f.setReal(y, 0.0);
+          }
         }
+      } finally {
+        clip.getFrameLocks().unlockWrite(updateRegion.x, updateRegion.width);
       }
-      clip.endEdit();
+      clip.regionChanged(updateRegion);
     }
 
     @Override
@@ -127,17 +149,33 @@ public class PaintbrushTool implements Tool {
 
     @Override
     public void mousePressed(MouseEvent e) {
-      clip.beginCompoundEdit("Painting");
+      finishStroke();
+      stroke = new StrokeEdit(clip, "Painting");
       mouseDragged(e);
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-      clip.endCompoundEdit();
+      finishStroke();
     }
 
   }
 
+  /**
+   * Captures the stroke in progress (if any) and posts it to the clip's undo listeners.
+   */
+  private void finishStroke() {
+    if (stroke == null) {
+      return;
+    }
+    StrokeEdit finished = stroke;
+    stroke = null;
+    if (!finished.isEmpty()) {
+      finished.finish();
+      clip.postEdit(finished);
+    }
+  }
+
   @Override
   public JComponent getSettingsPanel() {
     return settingsPanel;
@@ -22,7 +22,8 @@ import javax.swing.JButton;
 import javax.swing.JComponent;
 import net.bluecow.spectro.Clip;
 import net.bluecow.spectro.ClipPanel;
-import net.bluecow.spectro.Frame;
+import net.bluecow.spectro.SpectralOps;
+import net.bluecow.spectro.SpectralPipeline;
 import net.bluecow.spectro.SpectroEditSession;
 
 /**
@@ -36,6 +37,7 @@ public class RegionFlipTool implements Tool {
   private final Box settingsPanel;
   private final JButton vflipButton;
   private final JButton hflipButton;
+  private final JButton bothButton;
 
   public RegionFlipTool() {
     settingsPanel = Box.createVerticalBox();
@@ -60,6 +62,16 @@ public class RegionFlipTool implements Tool {
       }
     });
 
+    bothButton = new JButton("Flip both ways");
+    bothButton.setOpaque(false);
+    settingsPanel.add(bothButton);
+    bothButton.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        flipRegionBothWays();
+      }
+    });
+
     settingsPanel.add(Box.createGlue());
   }
 
@@ -92,18 +104,7 @@ public class RegionFlipTool implements Tool {
       return;
     }
     Rectangle frameRegion = clipPanel.toClipCoords(new Rectangle(region));
-    clip.beginEdit(frameRegion, "Flip Region Vertically");
-    for (int i = 0; i < frameRegion.width; i++) {
-      Frame frame = clip.getFrame(frameRegion.x + i);
-      for (int j = 0; j < frameRegion.height / 2; j++) {
-        int bottom = frameRegion.y + frameRegion.height - 1 - j;
-        int top = frameRegion.y + j;
-        double tmp = frame.getReal(bottom);
-        frame.setReal(bottom, frame.getReal(top));
-        frame.setReal(top, tmp);
-      }
-    }
-    clip.endEdit();
+    SpectralOps.flipVertically().apply(clip, frameRegion);
   }
 
   private void hflipRegion() {
@@ -111,18 +112,31 @@ public class RegionFlipTool implements Tool {
     if (region == null || region.width == 0 || region.height == 0) {
       return;
     }
-    Rectangle frameRegion = clipPanel.toClipCoords(new Rectangle(region));
-    clip.beginEdit(frameRegion, "Flip Region Horizontally");
-    for (int i = 0; i < frameRegion.width / 2; i++) {
-      Frame lframe = clip.getFrame(frameRegion.x + i);
-      Frame rframe = clip.getFrame(frameRegion.x + frameRegion.width - 1 - i);
-      for (int j = frameRegion.y; j < frameRegion.y + frameRegion.height; j++) {
-        double tmp = rframe.getReal(j);
-        rframe.setReal(j, lframe.getReal(j));
-        lframe.setReal(j, tmp);
-      }
+    Rectangle frameRegion =
+        clipPanel.toClipCoords(new Rectangle(region)).intersection(clip.getBounds());
+    if (frameRegion.isEmpty()) {
+      return;
+    }
+    SpectralOps.flipHorizontally(frameRegion).apply(clip, frameRegion);
+  }
+
+  /**
+   * Flips the region horizontally and vertically in one pass, as a single edit.
+   */
+  private void flipRegionBothWays() {
+    Rectangle region = clipPanel.getRegion();
+    if (region == null || region.width == 0 || region.height == 0) {
+      return;
+    }
+    Rectangle frameRegion =
+        clipPanel.toClipCoords(new Rectangle(region)).intersection(clip.getBounds());
+    if (frameRegion.isEmpty()) {
+      return;
     }
-    clip.endEdit();
+    new SpectralPipeline("Flip Region")
+        .then(SpectralOps.flipHorizontally(frameRegion))
+        .then(SpectralOps.flipVertically())
+        .apply(clip, frameRegion);
   }
 
 }
@@ -0,0 +1,221 @@
+/*
+ * Created on Oct 19, 2026
+ *
+ * Spectro-Edit is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Spectro-Edit is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If
+ * not, see <http://www.gnu.org/licenses/>.
+ */
+package net.bluecow.spectro.tool;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.bluecow.spectro.Clip;
+import net.bluecow.spectro.ClipDataEdit;
+import net.bluecow.spectro.ClipPanel;
+import net.bluecow.spectro.RegionOp;
+
+/**
+ * Shows the effect of a region operation while the user drags a slider, without holding up the
+ * event dispatch thread. Each slider value is handed to {@link #show(RegionOp)}, which only
+ * records it; a background worker applies the most recent one and skips any that were superseded
+ * in the meantime. The worker does the part of the region that's on screen first, so the user
+ * sees a result quickly, then the rest a chunk of frames at a time, abandoning the pass as soon as
+ * a newer value arrives.
+ * <p>
+ * The whole interaction is a single undoable edit: it's begun when the preview is created and
+ * ended by {@link #commit()}, which applies the final value to the whole region. Every method of
+ * this class must be called on the event dispatch thread.
+ */
+class RegionPreview {
+
+  private static final Logger logger = Logger.getLogger(RegionPreview.class.getName());
+
+  /**
+   * The number of frames the worker does between checks for a newer value.
+   */
+  private static final int CHUNK_FRAMES = 256;
+
+  /**
+   * The worker shared by all previews. There's only ever one slider being dragged, so one thread
+   * is enough (the operation itself runs on all processors).
+   */
+  private static final ExecutorService worker = Executors.newSingleThreadExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "Region preview");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+
+  private final ClipPanel clipPanel;
+
+  private final Clip clip;
+
+  /**
+   * The region being previewed, in clip co-ordinates.
+   */
+  private final Rectangle region;
+
+  /**
+   * The data the operation is computed from.
+   */
+  private final ClipDataEdit snapshot;
+
+  /**
+   * The operation the worker should apply next, or null if it's up to date.
+   */
+  private final AtomicReference<RegionOp> pending = new AtomicReference<RegionOp>();
+
+  /**
+   * The part of the region that was on screen when the latest operation was shown.
+   */
+  private volatile Rectangle visible;
+
+  private volatile boolean finished;
+
+  /**
+   * The most recent operation passed to {@link #show(RegionOp)}.
+   */
+  private RegionOp latest;
+
+  private Future<?> task;
+
+  /**
+   * Begins the edit for a preview of the given region.
+   *
+   * @param clipPanel The panel showing the clip.
+   * @param region The region to modify, in clip co-ordinates. Parts of it outside the clip are
+   *        ignored.
+   * @param snapshot An edit whose old data covers the region. Every operation is computed from
+   *        this data, not from the preview of the previous one.
+   * @param description The user-visible name of the edit.
+   */
+  RegionPreview(ClipPanel clipPanel, Rectangle region, ClipDataEdit snapshot, String description) {
+    this.clipPanel = clipPanel;
+    this.clip = clipPanel.getClip();
+    this.region = region.intersection(clip.getBounds());
+    this.snapshot = snapshot;
+    if (!this.region.isEmpty()) {
+      clip.beginEdit(this.region, description);
+    }
+  }
+
+  /**
+   * Returns true if this preview is for the given region.
+   */
+  boolean isFor(Rectangle r) {
+    return snapshot.isSameRegion(r);
+  }
+
+  /**
+   * Schedules the given operation to be previewed, replacing any that hasn't been started yet.
+   */
+  void show(RegionOp op) {
+    if (finished) {
+      throw new IllegalStateException("Preview already committed");
+    }
+    latest = op;
+    if (region.isEmpty()) {
+      return;
+    }
+    visible = clipPanel.toClipCoords(new Rectangle(clipPanel.getVisibleRect()));
+    pending.set(op);
+    if (task == null || task.isDone()) {
+      task = worker.submit(new Runnable() {
+        @Override
+        public void run() {
+          RegionOp op;
+          while (!finished && (op = pending.getAndSet(null)) != null) {
+            render(op);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Waits for the worker, applies the most recently shown operation to the whole region, and ends
+   * the edit. Does nothing but end the edit if no operation was shown.
+   */
+  void commit() {
+    finished = true;
+    if (task != null) {
+      try {
+        task.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException ex) {
+        logger.log(Level.WARNING, "Preview failed", ex.getCause());
+      }
+    }
+    if (region.isEmpty()) {
+      return;
+    }
+    try {
+      if (latest != null) {
+        latest.preview(clip, region, snapshot);
+      }
+    } finally {
+      clip.endEdit();
+    }
+  }
+
+  /**
+   * Applies the operation to the visible part of the region, then the rest, giving up if another
+   * operation is scheduled or the preview is committed.
+   */
+  private void render(RegionOp op) {
+    long start = System.nanoTime();
+    for (Rectangle chunk : chunks()) {
+      if (finished || pending.get() != null) {
+        logger.finer(String.format("Abandoned preview of %s", op.getName()));
+        return;
+      }
+      op.preview(clip, chunk, snapshot);
+    }
+    logger.finer(String.format("Previewed %s on %dx%d in %.3fms", op.getName(), region.width,
+        region.height, (System.nanoTime() - start) / 1e6));
+  }
+
+  /**
+   * Splits the region into the part that's visible followed by the rest, in order of frame.
+   */
+  private List<Rectangle> chunks() {
+    List<Rectangle> chunks = new ArrayList<Rectangle>();
+    int visibleStart = region.x;
+    int visibleEnd = region.x;
+    Rectangle v = visible.intersection(region);
+    if (!v.isEmpty()) {
+      visibleStart = v.x;
+      visibleEnd = v.x + v.width;
+      addChunks(chunks, visibleStart, visibleEnd);
+    }
+    addChunks(chunks, region.x, visibleStart);
+    addChunks(chunks, visibleEnd, region.x + region.width);
+    return chunks;
+  }
+
+  private void addChunks(List<Rectangle> chunks, int start, int end) {
+    for (int x = start; x < end; x += CHUNK_FRAMES) {
+      chunks.add(new Rectangle(x, region.y, Math.min(CHUNK_FRAMES, end - x), region.height));
+    }
+  }
+}
@@ -26,7 +26,7 @@ import javax.swing.event.ChangeListener;
 import net.bluecow.spectro.Clip;
 import net.bluecow.spectro.ClipDataEdit;
 import net.bluecow.spectro.ClipPanel;
-import net.bluecow.spectro.Frame;
+import net.bluecow.spectro.SpectralOps;
 import net.bluecow.spectro.SpectroEditSession;
 
 public class RegionScaleTool implements Tool {
@@ -39,10 +39,7 @@ public class RegionScaleTool implements Tool {
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
       if ("region".equals(evt.getPropertyName())) {
-        // if (origData != null) {
-        // clip.endEdit();
-        // origData = null;
-        // }
+        commitPreview();
         scaleSlider.setValue(initialScale);
       }
     }
@@ -56,6 +53,11 @@ public class RegionScaleTool implements Tool {
    */
   private ClipDataEdit origData;
 
+  /**
+   * The preview in progress while the slider is being dragged, or null.
+   */
+  private RegionPreview preview;
+
   private final Box settingsPanel;
   private final JSlider scaleSlider;
   private final int initialScale = 100;
@@ -71,9 +73,10 @@ public class RegionScaleTool implements Tool {
       @Override
       public void stateChanged(ChangeEvent e) {
         if (scaleSlider.getValueIsAdjusting()) {
-          scaleRegion(scaleSlider.getValue() / 100.0);
+          previewScale(scaleSlider.getValue() / 100.0);
+        } else {
+          commitPreview();
         }
-        // TODO fire undo event for slider position
       }
 
     });
@@ -97,8 +100,9 @@ public class RegionScaleTool implements Tool {
 
   @Override
   public void deactivate() {
+    commitPreview();
     if (origData != null) {
-      // clip.endEdit();
+      origData.die();
       origData = null;
     }
     clipPanel.removePropertyChangeListener("region", clipEventHandler);
@@ -121,26 +125,61 @@ public class RegionScaleTool implements Tool {
    * between 0.0 and 1.0 means to reduce intensity, and &gt;1.0 means to increase intensity.
    */
   public void scaleRegion(double amount) {
+    commitPreview();
+    Rectangle frameRegion = captureRegion();
+    if (frameRegion != null) {
+      SpectralOps.scale(amount).apply(clip, frameRegion, origData);
+    }
+  }
+
+  /**
+   * Shows the effect of scaling the selected region by the given amount without blocking the
+   * slider. The change becomes undoable when the slider is released.
+   */
+  private void previewScale(double amount) {
+    Rectangle frameRegion = captureRegion();
+    if (frameRegion == null) {
+      return;
+    }
+    if (preview == null || !preview.isFor(frameRegion)) {
+      commitPreview();
+      preview = new RegionPreview(clipPanel, frameRegion, origData, "Scale Region");
+    }
+    preview.show(SpectralOps.scale(amount));
+  }
+
+  /**
+   * Applies the final slider value of the preview in progress, if any, as one undoable edit.
+   */
+  private void commitPreview() {
+    if (preview != null) {
+      RegionPreview p = preview;
+      preview = null;
+      p.commit();
+    }
+  }
+
+  /**
+   * Makes sure {@link #origData} holds the data of the selected region, and returns that region in
+   * clip co-ordinates, or null if nothing is selected.
+   */
+  private Rectangle captureRegion() {
     Rectangle region = clipPanel.getRegion();
     if (region == null || region.width == 0 || region.height == 0) {
-      origData = null;
-      return;
+      if (origData != null) {
+        origData.die();
+        origData = null;
+      }
+      return null;
     }
     Rectangle frameRegion = clipPanel.toClipCoords(new Rectangle(region));
     if (origData == null || !origData.isSameRegion(frameRegion)) {
-      origData = new ClipDataEdit(clip, frameRegion);
-      // clip.beginEdit(frameRegion, "Scale Region");
-    }
-    clip.beginEdit(frameRegion, "Scale Region");
-    double[][] orig = origData.getOldData();
-    for (int i = frameRegion.x; i < frameRegion.x + frameRegion.width; i++) {
-      Frame frame = clip.getFrame(i);
-      for (int j = frameRegion.y; j < frameRegion.y + frameRegion.height; j++) {
-        frame.setReal(j, orig[i - frameRegion.x][j - frameRegion.y] * amount);
+      if (origData != null) {
+        origData.die();
       }
+      origData = new ClipDataEdit(clip, frameRegion);
     }
-    // clip.regionChanged(frameRegion);
-    clip.endEdit();
+    return frameRegion;
   }
 
 }
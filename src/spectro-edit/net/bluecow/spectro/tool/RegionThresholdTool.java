@@ -28,13 +28,15 @@ import javax.swing.event.ChangeListener;
 import net.bluecow.spectro.Clip;
 import net.bluecow.spectro.ClipDataEdit;
 import net.bluecow.spectro.ClipPanel;
-import net.bluecow.spectro.Frame;
+import net.bluecow.spectro.RegionEnergy;
+import net.bluecow.spectro.SpectralOps;
 import net.bluecow.spectro.SpectroEditSession;
 
 /**
  * Tool that sets any data point that was over a threshold amount to 0, leaving all other data
  * points at their original values. This is a nice way to remove some sound that is significantly
- * louder than the background noise, leaving only what was in the background.
+ * louder than the background noise, leaving only what was in the background. To do the opposite,
+ * see {@link NoiseReductionTool}.
  */
 public class RegionThresholdTool implements Tool {
 
@@ -46,7 +48,9 @@ public class RegionThresholdTool implements Tool {
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
       if ("region".equals(evt.getPropertyName())) {
+        commitPreview();
         thresholdSlider.setValue(initialThreshold);
+        updateRegionLevel();
       }
     }
 
@@ -59,6 +63,11 @@ public class RegionThresholdTool implements Tool {
    */
   private ClipDataEdit origData;
 
+  /**
+   * The preview in progress while the slider is being dragged, or null.
+   */
+  private RegionPreview preview;
+
   private final Box settingsPanel;
   private final CurvedSlider thresholdSlider;
   private final int initialThreshold = 100;
@@ -69,6 +78,11 @@ public class RegionThresholdTool implements Tool {
    */
   private final JCheckBox upper;
 
+  /**
+   * Shows the level of the selected region, as a guide for where to put the threshold.
+   */
+  private final JLabel regionLevel;
+
 
 
   public RegionThresholdTool() {
@@ -82,9 +96,11 @@ public class RegionThresholdTool implements Tool {
       @Override
       public void stateChanged(ChangeEvent e) {
         if (thresholdSlider.getValueIsAdjusting()) {
-          applyRegionThreshold(thresholdSlider.getCurvedValue());
+          previewRegionThreshold(thresholdSlider.getCurvedValue());
+        } else {
+          commitPreview();
+          updateRegionLevel();
         }
-        // TODO fire undo event for slider position
       }
 
     });
@@ -101,6 +117,9 @@ public class RegionThresholdTool implements Tool {
     });
     settingsPanel.add(upper);
 
+    regionLevel = new JLabel(" ");
+    settingsPanel.add(regionLevel);
+
     settingsPanel.add(Box.createGlue());
   }
 
@@ -115,11 +134,16 @@ public class RegionThresholdTool implements Tool {
     clip = clipPanel.getClip();
     clipPanel.setRegionMode(true);
     clipPanel.addPropertyChangeListener("region", clipEventHandler);
+    updateRegionLevel();
   }
 
   @Override
   public void deactivate() {
-    origData = null;
+    commitPreview();
+    if (origData != null) {
+      origData.die();
+      origData = null;
+    }
     clipPanel.removePropertyChangeListener("region", clipEventHandler);
     clip = null;
     clipPanel = null;
@@ -132,31 +156,75 @@ public class RegionThresholdTool implements Tool {
 
 
   private void applyRegionThreshold(double threshold) {
+    commitPreview();
+    Rectangle frameRegion = captureRegion();
+    if (frameRegion != null) {
+      SpectralOps.threshold(threshold, upper.isSelected()).apply(clip, frameRegion, origData);
+    }
+  }
+
+  /**
+   * Shows the effect of the given threshold on the selected region without blocking the slider.
+   * The change becomes undoable when the slider is released.
+   */
+  private void previewRegionThreshold(double threshold) {
+    Rectangle frameRegion = captureRegion();
+    if (frameRegion == null) {
+      return;
+    }
+    if (preview == null || !preview.isFor(frameRegion)) {
+      commitPreview();
+      preview = new RegionPreview(clipPanel, frameRegion, origData, "Region Threshold");
+    }
+    preview.show(SpectralOps.threshold(threshold, upper.isSelected()));
+  }
+
+  /**
+   * Applies the final slider value of the preview in progress, if any, as one undoable edit.
+   */
+  private void commitPreview() {
+    if (preview != null) {
+      RegionPreview p = preview;
+      preview = null;
+      p.commit();
+    }
+  }
+
+  private void updateRegionLevel() {
+    if (clipPanel == null) {
+      return;
+    }
     Rectangle region = clipPanel.getRegion();
     if (region == null || region.width == 0 || region.height == 0) {
-      origData = null;
+      regionLevel.setText(" ");
       return;
     }
+    RegionEnergy energy = clip.getEnergy(clipPanel.toClipCoords(new Rectangle(region)));
+    regionLevel.setText(String.format("Mean %.2f, RMS %.2f", energy.getMeanMagnitude(),
+        energy.getRms()));
+  }
+
+  /**
+   * Makes sure {@link #origData} holds the data of the selected region, and returns that region in
+   * clip co-ordinates, or null if nothing is selected.
+   */
+  private Rectangle captureRegion() {
+    Rectangle region = clipPanel.getRegion();
+    if (region == null || region.width == 0 || region.height == 0) {
+      if (origData != null) {
+        origData.die();
+        origData = null;
+      }
+      return null;
+    }
     Rectangle frameRegion = clipPanel.toClipCoords(new Rectangle(region));
     if (origData == null || !origData.isSameRegion(frameRegion)) {
-      origData = new ClipDataEdit(clip, frameRegion);
-    }
-    clip.beginEdit(frameRegion, "Region Threshold");
-    double[][] orig = origData.getOldData();
-    for (int i = frameRegion.x; i < frameRegion.x + frameRegion.width; i++) {
-      Frame frame = clip.getFrame(i);
-      for (int j = frameRegion.y; j < frameRegion.y + frameRegion.height; j++) {
-        double origVal = orig[i - frameRegion.x][j - frameRegion.y];
-        if (upper.isSelected() && Math.abs(origVal) > threshold) {
-          frame.setReal(j, 0.0);
-        } else if ((!upper.isSelected()) && Math.abs(origVal) < threshold) {
-          frame.setReal(j, 0.0);
-        } else {
-          frame.setReal(j, origVal);
-        }
+      if (origData != null) {
+        origData.die();
       }
+      origData = new ClipDataEdit(clip, frameRegion);
     }
-    clip.endEdit();
+    return frameRegion;
   }
 
 }
@@ -25,9 +25,13 @@ import java.awt.event.ActionListener;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.ButtonGroup;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import net.bluecow.spectro.ClipPanel;
+import net.bluecow.spectro.FrequencyScale;
 import net.bluecow.spectro.MemoryMonitor;
 import net.bluecow.spectro.PositionReadout;
 import net.bluecow.spectro.SpectroEditSession;
@@ -77,8 +81,9 @@ public class ToolboxPanel {
     viewSettingsPanel.setBorder(new TitleBorder("View Settings"));
     gbc.gridx = 0;
     viewSettingsPanel.add(clipPanel.getColorizer().getSettingsPanel(), gbc);
+    viewSettingsPanel.add(createFrequencyScaleChooser(), gbc);
     viewSettingsPanel.add(new PositionReadout(clipPanel).getLabel(), gbc);
-    MemoryMonitor memoryMonitor = new MemoryMonitor();
+    MemoryMonitor memoryMonitor = new MemoryMonitor(session.getUndoManager());
     memoryMonitor.start();
     gbc.fill = GridBagConstraints.BOTH;
     gbc.weighty = 1f;
@@ -128,6 +133,11 @@ public class ToolboxPanel {
     toolButtonPanel.add(regionThresholdToolButton);
     regionThresholdToolButton.addActionListener(actionHandler);
 
+    JRadioButton noiseReductionToolButton =
+        new ToolButton(new NoiseReductionTool(), "threshold", toolButtonGroup); // TODO better icon
+    toolButtonPanel.add(noiseReductionToolButton);
+    noiseReductionToolButton.addActionListener(actionHandler);
+
     JRadioButton flipToolButton =
         new ToolButton(new RegionFlipTool(), "shape_flip_vertical", toolButtonGroup); // TODO better
                                                                                       // icon
@@ -153,4 +163,23 @@ public class ToolboxPanel {
   public JPanel getPanel() {
     return panel;
   }
+
+  /**
+   * Creates the control for choosing the clip panel's frequency scale.
+   */
+  private JComponent createFrequencyScaleChooser() {
+    JPanel p = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    p.setOpaque(false);
+    p.add(new JLabel("Frequency scale"));
+    final JComboBox<FrequencyScale> scales = new JComboBox<FrequencyScale>(FrequencyScale.values());
+    scales.setSelectedItem(clipPanel.getFrequencyScale());
+    scales.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        clipPanel.setFrequencyScale((FrequencyScale) scales.getSelectedItem());
+      }
+    });
+    p.add(scales);
+    return p;
+  }
 }